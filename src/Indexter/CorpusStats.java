@@ -0,0 +1,180 @@
+package Indexter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Statistics of a whole index, written next to "docs.map" so Retriever loads them once: the number of docs,
+ * the document frequency of each term, and the length norm of each doc for length normalized scoring
+ * (BM25 divides by it). For an index split by ShardSplitter, or pruned by IndexPruner, they are the ones
+ * of the full index, so every part weighs a term the same.
+ *
+ * corpus.stats (DataOutputStream): [int MAGIC] [int VERSION] [int docCount] [long bodyTokens] [long titleTokens]
+ *                                  [int termCount] ([UTF term] [int docFreq]) * termCount, in increasing term order
+ *                                  [float norm] * docCount, in doc ID order
+ * The norm of a doc is its body and title length over the average length of a doc.
+ */
+public class CorpusStats {
+    public static final String FILE = "corpus.stats";
+    private static final int MAGIC = 0x57534543;    // "WSEC"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private int docCount;
+    private long bodyTokens;
+    private long titleTokens;
+    private String[] terms;     // sorted, docFreqs[i] is the document frequency of terms[i]
+    private int[] docFreqs;
+    private float[] norms;
+
+    private CorpusStats() {
+    }
+
+    /*
+     * stats of docCount docs with lengths (null if they are unknown), terms must be sorted
+     */
+    CorpusStats(int docCount, String[] terms, int[] docFreqs, DocLengths lengths) {
+        this.docCount = docCount;
+        this.terms = terms;
+        this.docFreqs = docFreqs;
+        int[] docLengths = new int[docCount];
+        for (int doc = 0; lengths != null && doc < docCount; doc++) {
+            int bodyLength = lengths.GetLength(doc, Field.BODY);
+            int titleLength = lengths.GetLength(doc, Field.TITLE);
+            bodyTokens += bodyLength;
+            titleTokens += titleLength;
+            docLengths[doc] = bodyLength + titleLength;
+        }
+        norms = new float[docCount];
+        double averageLength = GetAverageLength();
+        for (int doc = 0; doc < docCount && averageLength > 0; doc++) {
+            norms[doc] = (float) (docLengths[doc] / averageLength);
+        }
+    }
+
+    /*
+     * stats of every term and doc of reader
+     */
+    static CorpusStats Compute(IndexReader reader) {
+        List<String> termList = new ArrayList<String>();
+        int[] docFreqs = new int[1024];
+        IndexReader.TermEnum termEnum = reader.GetTerms();
+        while (termEnum.Next()) {
+            if (termList.size() == docFreqs.length) {
+                docFreqs = Arrays.copyOf(docFreqs, docFreqs.length * 2);
+            }
+            docFreqs[termList.size()] = termEnum.GetDocFreq();
+            termList.add(termEnum.GetTerm());
+        }
+        int docCount = reader.GetDocCount();
+        DocLengths lengths = new DocLengths();
+        for (int doc = 0; doc < docCount; doc++) {
+            lengths.Set(doc, reader.GetLength(doc, Field.BODY), reader.GetLength(doc, Field.TITLE));
+        }
+        return new CorpusStats(docCount, termList.toArray(new String[termList.size()]),
+                Arrays.copyOf(docFreqs, termList.size()), lengths);
+    }
+
+    /*
+     * compute the stats of the index in indexPath and write them there
+     */
+    public static void Write(String indexPath) throws IOException {
+        IndexReader reader = new IndexReader(indexPath);
+        try {
+            Compute(reader).Write(new File(indexPath, FILE));
+        } finally {
+            reader.Close();
+        }
+    }
+
+    public static boolean Exists(String indexPath) {
+        return new File(indexPath, FILE).isFile();
+    }
+
+    public int GetDocCount() {
+        return docCount;
+    }
+
+    public int GetTermCount() {
+        return terms.length;
+    }
+
+    /*
+     * number of docs containing term, 0 if the term is not in the index
+     */
+    public int GetDocFreq(String term) {
+        int i = Arrays.binarySearch(terms, term);
+        return i < 0 ? 0 : docFreqs[i];
+    }
+
+    /*
+     * average number of tokens of a doc, body and title
+     */
+    public double GetAverageLength() {
+        return docCount == 0 ? 0 : (double) (bodyTokens + titleTokens) / docCount;
+    }
+
+    /*
+     * length of doc over the average length, 0 if the lengths are unknown
+     */
+    public float GetNorm(int docID) {
+        return norms[docID];
+    }
+
+    public void Write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(docCount);
+            out.writeLong(bodyTokens);
+            out.writeLong(titleTokens);
+            out.writeInt(terms.length);
+            for (int i = 0; i < terms.length; i++) {
+                out.writeUTF(terms[i]);
+                out.writeInt(docFreqs[i]);
+            }
+            for (float norm : norms) {
+                out.writeFloat(norm);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static CorpusStats Read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file.getPath() + " is not a corpus stats file of version " + VERSION);
+            }
+            CorpusStats stats = new CorpusStats();
+            stats.docCount = in.readInt();
+            stats.bodyTokens = in.readLong();
+            stats.titleTokens = in.readLong();
+            int termCount = in.readInt();
+            stats.terms = new String[termCount];
+            stats.docFreqs = new int[termCount];
+            for (int i = 0; i < termCount; i++) {
+                stats.terms[i] = in.readUTF();
+                stats.docFreqs[i] = in.readInt();
+            }
+            stats.norms = new float[stats.docCount];
+            for (int doc = 0; doc < stats.docCount; doc++) {
+                stats.norms[doc] = in.readFloat();
+            }
+            return stats;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package Indexter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compressed set of doc IDs in the way of Roaring bitmaps, used for the postings of the terms found in
+ * most docs (see PostingsCodec) and to intersect them.
+ *
+ * Doc IDs are split by their high 16 bits into containers of 65536 IDs. A container with at most
+ * ARRAY_MAX docs keeps the low 16 bits of its docs as a sorted array, a fuller one keeps a bitmap of
+ * 1024 longs, so a container never takes more than 8KB and two bitmap containers are intersected a
+ * long at a time.
+ *
+ * Written as: [vint containerCount] ([vint key] [vint cardinality] [container]) * containerCount,
+ * an array container is cardinality big-endian chars, a bitmap container is 1024 big-endian longs.
+ */
+public class DocBitmap {
+    static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private int size = 0;                   // number of containers
+    private int[] keys = new int[4];        // high 16 bits of the docs of each container
+    private int[] cardinalities = new int[4];
+    private char[][] arrays = new char[4][];    // null for a bitmap container
+    private long[][] bitmaps = new long[4][];   // null for an array container
+    private int cardinality = 0;
+
+    /*
+     * add doc, bigger than every doc added before
+     */
+    public void Add(int doc) {
+        int key = doc >>> 16;
+        char low = (char) doc;
+        if (size == 0 || keys[size - 1] != key) {
+            if (size == keys.length) {
+                Grow(size * 2);
+            }
+            keys[size] = key;
+            cardinalities[size] = 0;
+            arrays[size] = new char[16];
+            bitmaps[size] = null;
+            size++;
+        }
+        int c = size - 1;
+        if (arrays[c] != null) {
+            if (cardinalities[c] == ARRAY_MAX) {
+                bitmaps[c] = ToBitmap(arrays[c], cardinalities[c]);
+                arrays[c] = null;
+            } else if (cardinalities[c] == arrays[c].length) {
+                arrays[c] = Arrays.copyOf(arrays[c], Math.min(ARRAY_MAX, cardinalities[c] * 2));
+            }
+        }
+        if (arrays[c] != null) {
+            arrays[c][cardinalities[c]] = low;
+        } else {
+            bitmaps[c][low >>> 6] |= 1L << low;
+        }
+        cardinalities[c]++;
+        cardinality++;
+    }
+
+    public int GetCardinality() {
+        return cardinality;
+    }
+
+    public boolean Contains(int doc) {
+        int c = Arrays.binarySearch(keys, 0, size, doc >>> 16);
+        if (c < 0) {
+            return false;
+        }
+        char low = (char) doc;
+        if (arrays[c] != null) {
+            return Arrays.binarySearch(arrays[c], 0, cardinalities[c], low) >= 0;
+        }
+        return (bitmaps[c][low >>> 6] & 1L << low) != 0;
+    }
+
+    /*
+     * the first doc not smaller than doc, PostingsIterator.NO_MORE_DOCS if none
+     */
+    public int NextDoc(int doc) {
+        if (doc < 0) {
+            doc = 0;
+        }
+        int key = doc >>> 16;
+        int c = Arrays.binarySearch(keys, 0, size, key);
+        int low = doc & 0xFFFF;
+        if (c < 0) {
+            c = -c - 1;
+            low = 0;
+        }
+        for (; c < size; c++, low = 0) {
+            int next = NextInContainer(c, low);
+            if (next >= 0) {
+                return keys[c] << 16 | next;
+            }
+        }
+        return PostingsIterator.NO_MORE_DOCS;
+    }
+
+    /*
+     * number of docs in [from, to)
+     */
+    public int Count(int from, int to) {
+        if (from >= to) {
+            return 0;
+        }
+        int count = 0;
+        int c = Arrays.binarySearch(keys, 0, size, from >>> 16);
+        if (c < 0) {
+            c = -c - 1;
+        }
+        for (; c < size && keys[c] <= (to - 1) >>> 16; c++) {
+            int begin = keys[c] == from >>> 16 ? from & 0xFFFF : 0;
+            int end = keys[c] == (to - 1) >>> 16 ? ((to - 1) & 0xFFFF) + 1 : 65536;
+            if (begin == 0 && end == 65536) {
+                count += cardinalities[c];
+            } else if (arrays[c] != null) {
+                count += Rank(arrays[c], cardinalities[c], end) - Rank(arrays[c], cardinalities[c], begin);
+            } else {
+                count += CountBits(bitmaps[c], begin, end);
+            }
+        }
+        return count;
+    }
+
+    /*
+     * docs in both bitmaps
+     */
+    public DocBitmap And(DocBitmap other) {
+        DocBitmap result = new DocBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.AndContainers(keys[i], this, i, other, j);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * docs in increasing order
+     */
+    public int[] ToArray() {
+        int[] docs = new int[cardinality];
+        int count = 0;
+        for (int c = 0; c < size; c++) {
+            int high = keys[c] << 16;
+            if (arrays[c] != null) {
+                for (int i = 0; i < cardinalities[c]; i++) {
+                    docs[count++] = high | arrays[c][i];
+                }
+                continue;
+            }
+            long[] words = bitmaps[c];
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    docs[count++] = high | w << 6 | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+        }
+        return docs;
+    }
+
+    void Write(OutputStream out) throws IOException {
+        WriteVInt(out, size);
+        for (int c = 0; c < size; c++) {
+            WriteVInt(out, keys[c]);
+            WriteVInt(out, cardinalities[c]);
+            if (arrays[c] != null) {
+                for (int i = 0; i < cardinalities[c]; i++) {
+                    out.write(arrays[c][i] >>> 8);
+                    out.write(arrays[c][i]);
+                }
+            } else {
+                for (long word : bitmaps[c]) {
+                    for (int shift = 56; shift >= 0; shift -= 8) {
+                        out.write((int) (word >>> shift));
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * read a bitmap written from bytes[pos], GetSerializedSize() tells where it ends
+     */
+    static DocBitmap Read(byte[] bytes, int pos) {
+        DocBitmap bitmap = new DocBitmap();
+        int[] cursor = {pos};
+        int containers = ReadVInt(bytes, cursor);
+        bitmap.Grow(Math.max(4, containers));
+        for (int c = 0; c < containers; c++) {
+            int key = ReadVInt(bytes, cursor);
+            int count = ReadVInt(bytes, cursor);
+            int p = cursor[0];
+            if (count <= ARRAY_MAX) {
+                char[] array = new char[count];
+                for (int i = 0; i < count; i++, p += 2) {
+                    array[i] = (char) ((bytes[p] & 0xFF) << 8 | bytes[p + 1] & 0xFF);
+                }
+                bitmap.AddContainer(key, count, array, null);
+            } else {
+                long[] words = new long[BITMAP_WORDS];
+                ByteBuffer.wrap(bytes, p, BITMAP_WORDS * 8).asLongBuffer().get(words);
+                p += BITMAP_WORDS * 8;
+                bitmap.AddContainer(key, count, null, words);
+            }
+            cursor[0] = p;
+        }
+        return bitmap;
+    }
+
+    /*
+     * number of bytes written by Write()
+     */
+    int GetSerializedSize() {
+        int length = VIntSize(size);
+        for (int c = 0; c < size; c++) {
+            length += VIntSize(keys[c]) + VIntSize(cardinalities[c]);
+            length += arrays[c] != null ? cardinalities[c] * 2 : BITMAP_WORDS * 8;
+        }
+        return length;
+    }
+
+    /*
+     * the low 16 bits of the first doc of container c not smaller than low, -1 if none
+     */
+    private int NextInContainer(int c, int low) {
+        if (arrays[c] != null) {
+            int i = Rank(arrays[c], cardinalities[c], low);
+            return i < cardinalities[c] ? arrays[c][i] : -1;
+        }
+        long[] words = bitmaps[c];
+        int w = low >>> 6;
+        long word = words[w] & -1L << low;
+        while (true) {
+            if (word != 0) {
+                return w << 6 | Long.numberOfTrailingZeros(word);
+            }
+            if (++w == BITMAP_WORDS) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    private void AndContainers(int key, DocBitmap a, int i, DocBitmap b, int j) {
+        if (a.bitmaps[i] != null && b.bitmaps[j] != null) {
+            long[] words = new long[BITMAP_WORDS];
+            int count = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                words[w] = a.bitmaps[i][w] & b.bitmaps[j][w];
+                count += Long.bitCount(words[w]);
+            }
+            if (count > ARRAY_MAX) {
+                AddContainer(key, count, null, words);
+            } else if (count > 0) {
+                AddContainer(key, count, ToArray(words, count), null);
+            }
+            return;
+        }
+        if (a.arrays[i] == null) {
+            // the array container drives
+            DocBitmap t = a;
+            a = b;
+            b = t;
+            int k = i;
+            i = j;
+            j = k;
+        }
+        char[] array = a.arrays[i];
+        char[] common = new char[a.cardinalities[i]];
+        int count = 0;
+        if (b.arrays[j] == null) {
+            long[] words = b.bitmaps[j];
+            for (int k = 0; k < a.cardinalities[i]; k++) {
+                if ((words[array[k] >>> 6] & 1L << array[k]) != 0) {
+                    common[count++] = array[k];
+                }
+            }
+        } else {
+            char[] other = b.arrays[j];
+            int p = 0;
+            int q = 0;
+            while (p < a.cardinalities[i] && q < b.cardinalities[j]) {
+                if (array[p] < other[q]) {
+                    p++;
+                } else if (array[p] > other[q]) {
+                    q++;
+                } else {
+                    common[count++] = array[p];
+                    p++;
+                    q++;
+                }
+            }
+        }
+        if (count > 0) {
+            AddContainer(key, count, Arrays.copyOf(common, count), null);
+        }
+    }
+
+    private void AddContainer(int key, int count, char[] array, long[] words) {
+        if (size == keys.length) {
+            Grow(size * 2);
+        }
+        keys[size] = key;
+        cardinalities[size] = count;
+        arrays[size] = array;
+        bitmaps[size] = words;
+        size++;
+        cardinality += count;
+    }
+
+    private void Grow(int length) {
+        if (length <= keys.length) {
+            return;
+        }
+        keys = Arrays.copyOf(keys, length);
+        cardinalities = Arrays.copyOf(cardinalities, length);
+        arrays = Arrays.copyOf(arrays, length);
+        bitmaps = Arrays.copyOf(bitmaps, length);
+    }
+
+    /*
+     * number of values of array[0, count) smaller than low
+     */
+    private static int Rank(char[] array, int count, int low) {
+        int begin = 0;
+        int end = count;
+        while (begin < end) {
+            int middle = (begin + end) >>> 1;
+            if (array[middle] < low) {
+                begin = middle + 1;
+            } else {
+                end = middle;
+            }
+        }
+        return begin;
+    }
+
+    /*
+     * number of bits set in [begin, end) of words
+     */
+    private static int CountBits(long[] words, int begin, int end) {
+        int first = begin >>> 6;
+        int last = (end - 1) >>> 6;
+        if (first == last) {
+            return Long.bitCount(words[first] & -1L << begin & -1L >>> (63 - ((end - 1) & 63)));
+        }
+        int count = Long.bitCount(words[first] & -1L << begin);
+        for (int w = first + 1; w < last; w++) {
+            count += Long.bitCount(words[w]);
+        }
+        return count + Long.bitCount(words[last] & -1L >>> (63 - ((end - 1) & 63)));
+    }
+
+    private static long[] ToBitmap(char[] array, int count) {
+        long[] words = new long[BITMAP_WORDS];
+        for (int i = 0; i < count; i++) {
+            words[array[i] >>> 6] |= 1L << array[i];
+        }
+        return words;
+    }
+
+    private static char[] ToArray(long[] words, int count) {
+        char[] array = new char[count];
+        int n = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = words[w];
+            while (word != 0) {
+                array[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return array;
+    }
+
+    private static int ReadVInt(byte[] bytes, int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        while ((b = bytes[cursor[0]++]) >= 0) {
+            value |= b << shift;
+            shift += 7;
+        }
+        return value | (b & 0x7F) << shift;
+    }
+
+    private static int VIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void WriteVInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F);
+            value >>>= 7;
+        }
+        out.write(value | 0x80);
+    }
+}
@@ -0,0 +1,84 @@
+package Indexter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Number of indexed tokens in the body and the title of each doc, indexed by doc ID.
+ *
+ * docs.len (DataOutputStream): [int MAGIC] [int VERSION] [int docCount] ([int bodyLength] [int titleLength]) * docCount
+ */
+public class DocLengths {
+    public static final String FILE = "docs.len";
+    private static final int MAGIC = 0x5753454C;    // "WSEL"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private int[] bodyLengths = new int[1024];
+    private int[] titleLengths = new int[1024];
+    private int size = 0;
+
+    public synchronized void Set(int docID, int bodyLength, int titleLength) {
+        if (docID >= bodyLengths.length) {
+            int length = Math.max(docID + 1, bodyLengths.length * 2);
+            bodyLengths = Arrays.copyOf(bodyLengths, length);
+            titleLengths = Arrays.copyOf(titleLengths, length);
+        }
+        bodyLengths[docID] = bodyLength;
+        titleLengths[docID] = titleLength;
+        size = Math.max(size, docID + 1);
+    }
+
+    public int GetLength(int docID, Field field) {
+        if (docID >= size) {
+            return 0;
+        }
+        return field == Field.TITLE ? titleLengths[docID] : bodyLengths[docID];
+    }
+
+    public int Size() {
+        return size;
+    }
+
+    public synchronized void Write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(bodyLengths[i]);
+                out.writeInt(titleLengths[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static DocLengths Read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file.getPath() + " is not a doc length file of version " + VERSION);
+            }
+            DocLengths lengths = new DocLengths();
+            lengths.size = in.readInt();
+            lengths.bodyLengths = new int[lengths.size];
+            lengths.titleLengths = new int[lengths.size];
+            for (int i = 0; i < lengths.size; i++) {
+                lengths.bodyLengths[i] = in.readInt();
+                lengths.titleLengths[i] = in.readInt();
+            }
+            return lengths;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package Indexter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Dense int doc IDs for the page IDs of Crawler ("[jobID]_[threadID]_[count]").
+ *
+ * Doc IDs are given in the order pages are registered, starting from 0. A page ID is kept as one long
+ * (16 bits job, 16 bits thread, 32 bits count), and found by an open addressing table of longs, so
+ * no String is kept for a page.
+ *
+ * docs.map (DataOutputStream): [int MAGIC] [int VERSION] [int docCount]
+ *                              ([vint jobID] [vint threadID] [vint count]) * docCount, in doc ID order
+ */
+public class DocRegistry {
+    public static final String FILE = "docs.map";
+    private static final int MAGIC = 0x57534544;    // "WSED"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final long EMPTY = -1L;
+
+    private long[] keys = new long[1024];       // doc ID -> packed page ID
+    private int size = 0;
+    private long[] slotKeys;                    // open addressing table, packed page ID -> doc ID
+    private int[] slotDocs;
+
+    public DocRegistry() {
+        AllocateSlots(2048);
+    }
+
+    /*
+     * doc ID of pageID, it is given a new doc ID the first time, -1 if pageID is not from Crawler
+     */
+    public synchronized int Register(String pageID) {
+        long key = Pack(pageID);
+        if (key == EMPTY) {
+            return -1;
+        }
+        int slot = FindSlot(key);
+        if (slotKeys[slot] == key) {
+            return slotDocs[slot];
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+        }
+        keys[size] = key;
+        slotKeys[slot] = key;
+        slotDocs[slot] = size;
+        size++;
+        if (size * 2 > slotKeys.length) {
+            AllocateSlots(slotKeys.length * 2);
+        }
+        return size - 1;
+    }
+
+    /*
+     * -1 if pageID is not registered
+     */
+    public synchronized int GetDocID(String pageID) {
+        long key = Pack(pageID);
+        if (key == EMPTY) {
+            return -1;
+        }
+        int slot = FindSlot(key);
+        return slotKeys[slot] == key ? slotDocs[slot] : -1;
+    }
+
+    public synchronized String GetPageID(int docID) {
+        long key = keys[docID];
+        return (key >>> 48) + "_" + ((key >>> 32) & 0xFFFF) + "_" + (key & 0xFFFFFFFFL);
+    }
+
+    public synchronized int Size() {
+        return size;
+    }
+
+    public synchronized void Write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                WriteVInt(out, (int) (keys[i] >>> 48));
+                WriteVInt(out, (int) ((keys[i] >>> 32) & 0xFFFF));
+                WriteVInt(out, (int) keys[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static DocRegistry Read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file.getPath() + " is not a doc registry of version " + VERSION);
+            }
+            int docCount = in.readInt();
+            DocRegistry registry = new DocRegistry();
+            registry.keys = new long[Math.max(1, docCount)];
+            registry.AllocateSlots(Integer.highestOneBit(Math.max(1, docCount)) * 4);
+            for (int i = 0; i < docCount; i++) {
+                long job = ReadVInt(in);
+                long thread = ReadVInt(in);
+                long count = ReadVInt(in) & 0xFFFFFFFFL;
+                long key = job << 48 | thread << 32 | count;
+                int slot = registry.FindSlot(key);
+                registry.keys[i] = key;
+                registry.slotKeys[slot] = key;
+                registry.slotDocs[slot] = i;
+            }
+            registry.size = docCount;
+            return registry;
+        } finally {
+            in.close();
+        }
+    }
+
+    /*
+     * "[jobID]_[threadID]_[count]" as one long, EMPTY if pageID has another form
+     */
+    private static long Pack(String pageID) {
+        long[] parts = new long[3];
+        int part = 0;
+        boolean digit = false;
+        for (int i = 0; i < pageID.length(); i++) {
+            char c = pageID.charAt(i);
+            if (c >= '0' && c <= '9') {
+                parts[part] = parts[part] * 10 + (c - '0');
+                // all bits set is EMPTY
+                if (parts[part] >= 0xFFFFFFFFL) {
+                    return EMPTY;
+                }
+                digit = true;
+            } else if (c == '_' && digit && part < 2) {
+                part++;
+                digit = false;
+            } else {
+                return EMPTY;
+            }
+        }
+        if (part != 2 || !digit || parts[0] > 0xFFFF || parts[1] > 0xFFFF) {
+            return EMPTY;
+        }
+        return parts[0] << 48 | parts[1] << 32 | parts[2];
+    }
+
+    private int FindSlot(long key) {
+        int mask = slotKeys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (slotKeys[slot] != EMPTY && slotKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void AllocateSlots(int length) {
+        slotKeys = new long[length];
+        slotDocs = new int[length];
+        Arrays.fill(slotKeys, EMPTY);
+        for (int i = 0; i < size; i++) {
+            int slot = FindSlot(keys[i]);
+            slotKeys[slot] = keys[i];
+            slotDocs[slot] = i;
+        }
+    }
+
+    private static void WriteVInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F);
+            value >>>= 7;
+        }
+        out.write(value | 0x80);
+    }
+
+    private static int ReadVInt(InputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("doc registry is cut off");
+            }
+            if ((b & 0x80) != 0) {
+                return value | (b & 0x7F) << shift;
+            }
+            value |= b << shift;
+            shift += 7;
+        }
+    }
+}
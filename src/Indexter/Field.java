@@ -0,0 +1,9 @@
+package Indexter;
+
+/**
+ * Parts of a page that are indexed apart, every term has a frequency and positions in each of them.
+ */
+public enum Field {
+    BODY,
+    TITLE
+}
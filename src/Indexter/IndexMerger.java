@@ -0,0 +1,370 @@
+package Indexter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merge the sorted runs written by SpimiBuilder into one segment, in a single k-way pass, and merge
+ * segments of an incremental index into one the same way.
+ *
+ * Doc IDs come from the DocRegistry of Indexter, the threads register pages at the same time, so the
+ * postings of a term taken from the runs of different threads (or from different segments) are sorted again.
+ *
+ * Segment files:
+ * terms.dict     sorted and front coded terms with their document frequency and offsets, see TermIndex
+ * postings.post  for each term, the doc IDs and their title and body frequencies coded by PostingsCodec,
+ *                starting at postingsOffset
+ * positions.pos  for each term, the positions in each doc coded by PostingsCodec, starting at positionsOffset
+ * docs.len       body and title length of each doc, written by DocLengths
+ * docs.map       doc ID -> pageID, written by DocRegistry
+ * The last two are in the index path, next to segments.gen, for an incremental index.
+ */
+class IndexMerger {
+    static final int MAGIC = 0x57534549;    // "WSEI"
+    static final int VERSION = 8;
+    static final String TERMS_FILE = "terms.dict";
+    static final String POSTINGS_FILE = "postings.post";
+    static final String POSITIONS_FILE = "positions.pos";
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /*
+     * merge runs into segment files under segmentPath, runs are deleted after a successful merge
+     */
+    static void Merge(List<File> runs, String segmentPath) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(Math.max(1, runs.size()),
+                new Comparator<RunReader>() {
+                    public int compare(RunReader a, RunReader b) {
+                        int diff = a.term.compareTo(b.term);
+                        return diff != 0 ? diff : a.order - b.order;
+                    }
+                });
+        List<RunReader> readers = new ArrayList<RunReader>();
+        SegmentWriter writer = null;
+        TermBuffer termBuffer = new TermBuffer();
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader reader = new RunReader(runs.get(i), i);
+                readers.add(reader);
+                if (reader.Next()) {
+                    queue.add(reader);
+                }
+            }
+
+            writer = new SegmentWriter(segmentPath);
+            while (!queue.isEmpty()) {
+                String term = queue.peek().term;
+                termBuffer.Clear();
+                // every run with this term, in run order
+                while (!queue.isEmpty() && queue.peek().term.equals(term)) {
+                    RunReader reader = queue.poll();
+                    termBuffer.Add(reader.docs, reader.bodyFreqs, reader.titleFreqs, reader.starts,
+                            reader.postingCount, reader.positions, reader.positionCount);
+                    if (reader.Next()) {
+                        queue.add(reader);
+                    }
+                }
+                writer.Write(term, termBuffer);
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.Close();
+            }
+            if (writer != null) {
+                writer.Close();
+            }
+        }
+        for (File run : runs) {
+            run.delete();
+        }
+        System.out.println("Merged " + runs.size() + " runs into " + writer.GetTermCount() + " terms");
+    }
+
+    /*
+     * merge the postings of segments into a new segment under segmentPath, the segments are not changed
+     */
+    static void MergeSegments(List<SegmentReader> segments, String segmentPath) throws IOException {
+        PriorityQueue<TermIndex.Cursor> queue = new PriorityQueue<TermIndex.Cursor>(Math.max(1, segments.size()),
+                new Comparator<TermIndex.Cursor>() {
+                    public int compare(TermIndex.Cursor a, TermIndex.Cursor b) {
+                        return a.GetTerm().compareTo(b.GetTerm());
+                    }
+                });
+        final List<TermIndex.Cursor> cursors = new ArrayList<TermIndex.Cursor>();
+        for (SegmentReader segment : segments) {
+            TermIndex.Cursor cursor = segment.GetTerms();
+            cursors.add(cursor);
+            if (cursor.Next()) {
+                queue.add(cursor);
+            }
+        }
+        SegmentWriter writer = new SegmentWriter(segmentPath);
+        TermBuffer termBuffer = new TermBuffer();
+        try {
+            while (!queue.isEmpty()) {
+                String term = queue.peek().GetTerm();
+                termBuffer.Clear();
+                // every segment with this term, in segment order
+                for (int i = 0; i < segments.size(); i++) {
+                    TermIndex.Cursor cursor = cursors.get(i);
+                    if (!queue.contains(cursor) || cursor.Compare(term) != 0) {
+                        continue;
+                    }
+                    queue.remove(cursor);
+                    termBuffer.Add(segments.get(i).GetPositions(cursor));
+                    if (cursor.Next()) {
+                        queue.add(cursor);
+                    }
+                }
+                writer.Write(term, termBuffer);
+            }
+        } finally {
+            writer.Close();
+        }
+    }
+
+    /*
+     * the three files of a segment, terms are written in increasing order
+     */
+    static class SegmentWriter {
+        private TermIndex.Writer termsOut;
+        private CountingOutputStream postingsCounter;
+        private CountingOutputStream positionsCounter;
+
+        SegmentWriter(String segmentPath) throws IOException {
+            termsOut = new TermIndex.Writer(new File(segmentPath, TERMS_FILE), BUFFER_SIZE);
+            postingsCounter = new CountingOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(new File(segmentPath, POSTINGS_FILE)), BUFFER_SIZE));
+            positionsCounter = new CountingOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(new File(segmentPath, POSITIONS_FILE)), BUFFER_SIZE));
+        }
+
+        void Write(String term, TermBuffer termBuffer) throws IOException {
+            long postingsOffset = postingsCounter.count;
+            long positionsOffset = positionsCounter.count;
+            boolean dense = termBuffer.Write(postingsCounter, positionsCounter);
+            termsOut.Add(term, termBuffer.docCount, dense, postingsOffset, postingsCounter.count - postingsOffset,
+                    positionsOffset, positionsCounter.count - positionsOffset);
+        }
+
+        long GetTermCount() {
+            return termsOut.GetTermCount();
+        }
+
+        void Close() throws IOException {
+            termsOut.Close();
+            postingsCounter.close();
+            positionsCounter.close();
+        }
+    }
+
+    /*
+     * postings of one term, gathered from every run or segment that has it
+     */
+    static class TermBuffer {
+        private int[] docs = new int[1024];
+        private int[] bodyFreqs = new int[1024];
+        private int[] titleFreqs = new int[1024];
+        private int[] starts = new int[1024];   // positions of docs[i] start at starts[i], body then title
+        private int docCount;
+        private int[] positions = new int[4096];
+        private int positionCount;
+        private boolean sorted;
+        private long[] sortKeys = new long[0];
+        private int[] order = new int[0];
+        private byte[] blockBuffer = new byte[PostingsCodec.MAX_BLOCK_BYTES];
+        private byte[] positionBuffer = new byte[4096];
+
+        void Clear() {
+            docCount = 0;
+            positionCount = 0;
+            sorted = true;
+        }
+
+        /*
+         * add postings[0, count) with increasing docs, the positions of postings[i] start at
+         * addPositions[addStarts[i]]
+         */
+        void Add(int[] addDocs, int[] addBodyFreqs, int[] addTitleFreqs, int[] addStarts, int count,
+                 int[] addPositions, int addPositionCount) {
+            if (docs.length < docCount + count) {
+                int length = Math.max(docCount + count, docs.length * 2);
+                docs = Arrays.copyOf(docs, length);
+                bodyFreqs = Arrays.copyOf(bodyFreqs, length);
+                titleFreqs = Arrays.copyOf(titleFreqs, length);
+                starts = Arrays.copyOf(starts, length);
+            }
+            if (positions.length < positionCount + addPositionCount) {
+                positions = Arrays.copyOf(positions, Math.max(positionCount + addPositionCount, positions.length * 2));
+            }
+            if (docCount > 0 && count > 0 && addDocs[0] < docs[docCount - 1]) {
+                sorted = false;
+            }
+            for (int i = 0; i < count; i++) {
+                docs[docCount] = addDocs[i];
+                bodyFreqs[docCount] = addBodyFreqs[i];
+                titleFreqs[docCount] = addTitleFreqs[i];
+                starts[docCount] = positionCount + addStarts[i];
+                docCount++;
+            }
+            System.arraycopy(addPositions, 0, positions, positionCount, addPositionCount);
+            positionCount += addPositionCount;
+        }
+
+        void Add(TermPositions postings) {
+            int count = postings.Size();
+            int[] addDocs = new int[count];
+            int[] addBodyFreqs = new int[count];
+            int[] addTitleFreqs = new int[count];
+            int[] addStarts = new int[count];
+            for (int i = 0; i < count; i++) {
+                addDocs[i] = postings.GetDoc(i);
+                addBodyFreqs[i] = postings.GetFreq(i, Field.BODY);
+                addTitleFreqs[i] = postings.GetFreq(i, Field.TITLE);
+                addStarts[i] = postings.GetStart(i, Field.BODY);
+            }
+            int addPositionCount = count == 0 ? 0
+                    : addStarts[count - 1] + addBodyFreqs[count - 1] + addTitleFreqs[count - 1];
+            Add(addDocs, addBodyFreqs, addTitleFreqs, addStarts, count, postings.GetPositions(), addPositionCount);
+        }
+
+        /*
+         * docs of one run are increasing, runs of different threads are put in doc order here,
+         * returns true if the docs were written as a DocBitmap
+         */
+        boolean Write(OutputStream postingsOut, OutputStream positionsOut) throws IOException {
+            int[] docOrder = null;
+            if (!sorted) {
+                if (sortKeys.length < docCount) {
+                    sortKeys = new long[Math.max(docCount, sortKeys.length * 2)];
+                    order = new int[sortKeys.length];
+                }
+                for (int i = 0; i < docCount; i++) {
+                    sortKeys[i] = (long) docs[i] << 32 | i;
+                }
+                Arrays.sort(sortKeys, 0, docCount);
+                for (int i = 0; i < docCount; i++) {
+                    order[i] = (int) sortKeys[i];
+                }
+                docOrder = order;
+            }
+            boolean dense = PostingsCodec.Encode(docs, bodyFreqs, titleFreqs, starts, positions, docOrder, docCount,
+                    postingsOut, blockBuffer);
+
+            int length = 0;
+            for (int i = 0; i < docCount; i++) {
+                int doc = docOrder == null ? i : docOrder[i];
+                int freq = bodyFreqs[doc] + titleFreqs[doc];
+                if (positionBuffer.length - length < freq * 5) {
+                    positionsOut.write(positionBuffer, 0, length);
+                    length = 0;
+                    if (positionBuffer.length < freq * 5) {
+                        positionBuffer = new byte[freq * 5];
+                    }
+                }
+                length = PostingsCodec.PutPositions(positionBuffer, length, positions, starts[doc], bodyFreqs[doc]);
+                length = PostingsCodec.PutPositions(positionBuffer, length, positions,
+                        starts[doc] + bodyFreqs[doc], titleFreqs[doc]);
+            }
+            positionsOut.write(positionBuffer, 0, length);
+            return dense;
+        }
+    }
+
+    /*
+     * reads one run, holding the current term and its postings
+     */
+    private static class RunReader {
+        private DataInputStream in;
+        private int order;
+        private int termsLeft;
+        private String term;
+        private int[] docs = new int[16];
+        private int[] bodyFreqs = new int[16];
+        private int[] titleFreqs = new int[16];
+        private int[] starts = new int[16];
+        private int postingCount;
+        private int[] positions = new int[64];
+        private int positionCount;
+
+        RunReader(File run, int order) throws IOException {
+            this.order = order;
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+            termsLeft = in.readInt();
+        }
+
+        boolean Next() throws IOException {
+            if (termsLeft == 0) {
+                return false;
+            }
+            termsLeft--;
+            term = in.readUTF();
+            postingCount = in.readInt();
+            if (docs.length < postingCount) {
+                int length = Math.max(postingCount, docs.length * 2);
+                docs = new int[length];
+                bodyFreqs = new int[length];
+                titleFreqs = new int[length];
+                starts = new int[length];
+            }
+            positionCount = 0;
+            for (int i = 0; i < postingCount; i++) {
+                docs[i] = in.readInt();
+                bodyFreqs[i] = in.readInt();
+                titleFreqs[i] = in.readInt();
+                int freq = bodyFreqs[i] + titleFreqs[i];
+                starts[i] = positionCount;
+                if (positions.length < positionCount + freq) {
+                    positions = Arrays.copyOf(positions, Math.max(positionCount + freq, positions.length * 2));
+                }
+                for (int j = 0; j < freq; j++) {
+                    positions[positionCount++] = in.readInt();
+                }
+            }
+            return true;
+        }
+
+        void Close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /*
+     * keeps the number of bytes written as long, DataOutputStream.size() stops at 2GB
+     */
+    static class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
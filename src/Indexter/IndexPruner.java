@@ -0,0 +1,267 @@
+package Indexter;
+
+import PageRank.PageRank;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Static pruning of an index (one segment or an incremental index) into a small segment, the "hot tier"
+ * Retriever keeps in memory and searches before the full index.
+ *
+ * For each term only the keep postings with the highest contribution to the score of Retriever are kept:
+ * pages with the term in the title first (they rank before every other page), then more times in the body
+ * (formula() of Page grows with the count, the weight of a term is the same for all its pages), then higher
+ * page rank. Terms in at most keep pages are kept whole. Kept postings keep their positions, so phrases of
+ * whole terms are found as in the full index. Doc IDs are the ones of the index, so "pageRank.bin" of the
+ * index is valid for the hot tier.
+ *
+ * The result folder is a segment ("docs.map" and "docs.len" are copies of the index) and
+ * pruned.df (DataOutputStream): [int MAGIC] [int VERSION] [int keep] [int count]
+ *                               ([UTF term] [int docFreq]) * count, for each pruned term its document
+ *                               frequency in the full index, so word weights stay the same
+ */
+public class IndexPruner {
+    public static final String PRUNED_FILE = "pruned.df";
+    private static final int MAGIC = 0x57534550;    // "WSEP"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /*
+     * the terms that lost postings in a hot tier, with their document frequency in the full index
+     */
+    public static class PrunedTerms {
+        private int keep;
+        private HashMap<String, Integer> docFreqs = new HashMap<String, Integer>();
+
+        /*
+         * the most postings kept for a term
+         */
+        public int GetKeep() {
+            return keep;
+        }
+
+        public boolean IsPruned(String term) {
+            return docFreqs.containsKey(term);
+        }
+
+        /*
+         * document frequency of a pruned term in the full index, -1 if the term was kept whole
+         */
+        public int GetDocFreq(String term) {
+            Integer docFreq = docFreqs.get(term);
+            return docFreq == null ? -1 : docFreq;
+        }
+
+        public int Size() {
+            return docFreqs.size();
+        }
+    }
+
+    /*
+     * whether there is a hot tier written by IndexPruner under hotPath
+     */
+    public static boolean Exists(String hotPath) {
+        return new File(hotPath, PRUNED_FILE).isFile() && SegmentReader.Exists(hotPath);
+    }
+
+    public static PrunedTerms ReadPrunedTerms(String hotPath) throws IOException {
+        File file = new File(hotPath, PRUNED_FILE);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file.getPath() + " is not a pruned terms file of version " + VERSION);
+            }
+            PrunedTerms pruned = new PrunedTerms();
+            pruned.keep = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String term = in.readUTF();
+                pruned.docFreqs.put(term, in.readInt());
+            }
+            return pruned;
+        } finally {
+            in.close();
+        }
+    }
+
+    static void Prune(String indexPath, String rankPath, String resultPath, int keep) throws IOException {
+        File resultFolder = new File(resultPath);
+        if (!resultFolder.exists() && !resultFolder.mkdirs()) {
+            throw new IOException("Cannot create folder: " + resultPath);
+        }
+        IndexReader reader = new IndexReader(indexPath);
+        IndexMerger.SegmentWriter writer = null;
+        try {
+            int docCount = reader.GetDocCount();
+            double[] ranks = new double[docCount];
+            if (!"".equals(rankPath)) {
+                double[] docRanks = PageRank.loadDocRanks(new File(rankPath, PageRank.RANK_FILE).getPath());
+                System.arraycopy(docRanks, 0, ranks, 0, Math.min(docRanks.length, docCount));
+            }
+            writer = new IndexMerger.SegmentWriter(resultPath);
+            // the count is written at the end, the file is small enough to be kept in memory until then
+            ByteArrayOutputStream prunedBytes = new ByteArrayOutputStream();
+            DataOutputStream prunedOut = new DataOutputStream(prunedBytes);
+            int prunedCount = 0;
+            long keptPostings = 0;
+            long allPostings = 0;
+            IndexMerger.TermBuffer termBuffer = new IndexMerger.TermBuffer();
+            IndexReader.TermEnum terms = reader.GetTerms();
+            while (terms.Next()) {
+                String term = terms.GetTerm();
+                TermPositions postings = reader.GetPositions(term);
+                allPostings += postings.Size();
+                termBuffer.Clear();
+                if (postings.Size() <= keep) {
+                    termBuffer.Add(postings);
+                    keptPostings += postings.Size();
+                } else {
+                    AddBest(postings, ranks, keep, termBuffer);
+                    keptPostings += keep;
+                    prunedOut.writeUTF(term);
+                    prunedOut.writeInt(postings.Size());
+                    prunedCount++;
+                }
+                writer.Write(term, termBuffer);
+            }
+            prunedOut.close();
+            WritePrunedTerms(new File(resultPath, PRUNED_FILE), keep, prunedCount, prunedBytes.toByteArray());
+
+            DocLengths lengths = new DocLengths();
+            for (int doc = 0; doc < docCount; doc++) {
+                lengths.Set(doc, reader.GetLength(doc, Field.BODY), reader.GetLength(doc, Field.TITLE));
+            }
+            reader.GetRegistry().Write(new File(resultPath, DocRegistry.FILE));
+            lengths.Write(new File(resultPath, DocLengths.FILE));
+            if (!reader.HasPositions()) {
+                IndexReader.WriteNoPositions(resultPath);
+            }
+            System.out.println("Kept " + keptPostings + " of " + allPostings + " postings, " + prunedCount + " of "
+                    + writer.GetTermCount() + " terms were pruned");
+        } finally {
+            if (writer != null) {
+                writer.Close();
+            }
+            reader.Close();
+        }
+    }
+
+    /*
+     * add the keep postings of the highest contribution to termBuffer, in doc order
+     */
+    private static void AddBest(final TermPositions postings, final double[] ranks, int keep,
+                                IndexMerger.TermBuffer termBuffer) {
+        Integer[] order = new Integer[postings.Size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                boolean aTitle = postings.GetFreq(a, Field.TITLE) > 0;
+                boolean bTitle = postings.GetFreq(b, Field.TITLE) > 0;
+                if (aTitle != bTitle) {
+                    return aTitle ? -1 : 1;
+                }
+                int diff = postings.GetFreq(b, Field.BODY) - postings.GetFreq(a, Field.BODY);
+                if (diff != 0) {
+                    return diff;
+                }
+                diff = Double.compare(GetRank(ranks, postings.GetDoc(b)), GetRank(ranks, postings.GetDoc(a)));
+                return diff != 0 ? diff : a - b;
+            }
+        });
+        int[] kept = new int[keep];
+        for (int i = 0; i < keep; i++) {
+            kept[i] = order[i];
+        }
+        Arrays.sort(kept);
+        int[] docs = new int[keep];
+        int[] bodyFreqs = new int[keep];
+        int[] titleFreqs = new int[keep];
+        int[] starts = new int[keep];
+        int positionCount = 0;
+        for (int i = 0; i < keep; i++) {
+            bodyFreqs[i] = postings.GetFreq(kept[i], Field.BODY);
+            titleFreqs[i] = postings.GetFreq(kept[i], Field.TITLE);
+            positionCount += bodyFreqs[i] + titleFreqs[i];
+        }
+        int[] positions = new int[positionCount];
+        positionCount = 0;
+        for (int i = 0; i < keep; i++) {
+            docs[i] = postings.GetDoc(kept[i]);
+            starts[i] = positionCount;
+            int freq = bodyFreqs[i] + titleFreqs[i];
+            System.arraycopy(postings.GetPositions(), postings.GetStart(kept[i], Field.BODY), positions,
+                    positionCount, freq);
+            positionCount += freq;
+        }
+        termBuffer.Add(docs, bodyFreqs, titleFreqs, starts, keep, positions, positionCount);
+    }
+
+    private static double GetRank(double[] ranks, int doc) {
+        return doc < ranks.length ? ranks[doc] : 0;
+    }
+
+    private static void WritePrunedTerms(File file, int keep, int count, byte[] entries) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(keep);
+            out.writeInt(count);
+            out.write(entries);
+        } finally {
+            out.close();
+        }
+    }
+
+    public static void main(String[] args) {
+        String indexPath = "";
+        String rankPath = "";
+        String resultPath = "";
+        int keep = 1000;
+
+        for (int i = 0; i < args.length; i++) {
+            if ("-i".equals(args[i])) {
+                // a segment or an incremental index written by Indexter
+                indexPath = args[i+1];
+                i++;
+            } else if ("-p".equals(args[i])) {
+                // folder of "pageRank.bin" written by PageRank
+                rankPath = args[i+1];
+                i++;
+            } else if ("-r".equals(args[i])) {
+                resultPath = args[i+1];
+                i++;
+            } else if ("-k".equals(args[i])) {
+                keep = Integer.parseInt(args[i+1]);
+                i++;
+            }
+        }
+
+        if ("".equals(indexPath) || "".equals(resultPath) || keep < 1) {
+            System.out.println("There are something wrong for your parameters:\n[Index path], [Result path], "
+                    + "[Postings kept for each term], and optionally [Page rank path]");
+            System.exit(1);
+        }
+
+        try {
+            Prune(indexPath, rankPath, resultPath, keep);
+        } catch (IOException e) {
+            System.out.println("Cannot prune the index: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("FINISH");
+    }
+}
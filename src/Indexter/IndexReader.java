@@ -0,0 +1,261 @@
+package Indexter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Read the index in a result folder of Indexter: one segment, or every live segment of an incremental
+ * index listed in "segments.gen".
+ *
+ * The segments of an incremental index hold different docs of the same DocRegistry, so the postings of
+ * a term are the postings of each segment put together in doc order.
+ *
+ * An index whose folder holds "positions.none" (written by LegacyConverter, and carried over by
+ * ShardSplitter and IndexPruner) has no real positions: every posting has position 0, so a phrase has
+ * to be checked in the pages themselves.
+ */
+public class IndexReader {
+    public static final String NO_POSITIONS_FILE = "positions.none";
+    private SegmentReader[] segments;
+    private boolean hasPositions;
+    private DocRegistry registry;
+    private DocLengths lengths;
+
+    public IndexReader(String indexPath) throws IOException {
+        this(indexPath, false);
+    }
+
+    /*
+     * with inMemory, the postings and positions of every segment are read into memory at once
+     */
+    public IndexReader(String indexPath, boolean inMemory) throws IOException {
+        hasPositions = !new File(indexPath, NO_POSITIONS_FILE).exists();
+        if (!SegmentInfos.Exists(indexPath)) {
+            SegmentReader segment = new SegmentReader(indexPath, inMemory);
+            segments = new SegmentReader[] {segment};
+            registry = segment.GetRegistry();
+            return;
+        }
+        registry = DocRegistry.Read(new File(indexPath, DocRegistry.FILE));
+        lengths = DocLengths.Read(new File(indexPath, DocLengths.FILE));
+        SegmentInfos infos = SegmentInfos.Read(indexPath);
+        List<SegmentInfos.SegmentInfo> live = infos.GetSegments();
+        segments = new SegmentReader[live.size()];
+        try {
+            for (int i = 0; i < live.size(); i++) {
+                segments[i] = new SegmentReader(infos.GetSegmentPath(live.get(i).name), registry, lengths, inMemory);
+            }
+        } catch (IOException e) {
+            Close();
+            throw e;
+        }
+    }
+
+    /*
+     * whether there is a segment or an incremental index under indexPath
+     */
+    public static boolean Exists(String indexPath) {
+        return SegmentInfos.Exists(indexPath) || SegmentReader.Exists(indexPath);
+    }
+
+    /*
+     * false if the positions of the index are only placeholders, see NO_POSITIONS_FILE
+     */
+    public boolean HasPositions() {
+        return hasPositions;
+    }
+
+    /*
+     * mark the index in indexPath as one without real positions
+     */
+    public static void WriteNoPositions(String indexPath) throws IOException {
+        File marker = new File(indexPath, NO_POSITIONS_FILE);
+        if (!marker.exists() && !marker.createNewFile()) {
+            throw new IOException("Cannot create " + marker.getPath());
+        }
+    }
+
+    public int GetSegmentCount() {
+        return segments.length;
+    }
+
+    public int GetDocCount() {
+        return registry.Size();
+    }
+
+    public String GetPageID(int docID) {
+        return registry.GetPageID(docID);
+    }
+
+    public DocRegistry GetRegistry() {
+        return registry;
+    }
+
+    /*
+     * number of indexed tokens in field of doc
+     */
+    public int GetLength(int docID, Field field) {
+        return lengths == null ? segments[0].GetLength(docID, field) : lengths.GetLength(docID, field);
+    }
+
+    /*
+     * terms starting with prefix in increasing order
+     */
+    public List<String> GetTermsWithPrefix(String prefix) {
+        if (segments.length == 1) {
+            return segments[0].GetTermsWithPrefix(prefix);
+        }
+        TreeSet<String> terms = new TreeSet<String>();
+        for (SegmentReader segment : segments) {
+            terms.addAll(segment.GetTermsWithPrefix(prefix));
+        }
+        return new ArrayList<String>(terms);
+    }
+
+    /*
+     * number of pages containing term, 0 if the term is not in the index
+     */
+    public int GetDocFreq(String term) {
+        int docFreq = 0;
+        for (SegmentReader segment : segments) {
+            docFreq += segment.GetDocFreq(term);
+        }
+        return docFreq;
+    }
+
+    /*
+     * doc IDs of the pages containing term in increasing order, empty if the term is not in the index
+     */
+    public int[] GetPostings(String term) throws IOException {
+        if (segments.length == 1) {
+            return segments[0].GetPostings(term);
+        }
+        int[] postings = new int[GetDocFreq(term)];
+        int count = 0;
+        for (SegmentReader segment : segments) {
+            int[] segmentPostings = segment.GetPostings(term);
+            System.arraycopy(segmentPostings, 0, postings, count, segmentPostings.length);
+            count += segmentPostings.length;
+        }
+        Arrays.sort(postings);
+        return postings;
+    }
+
+    /*
+     * docs and field frequencies of term without positions, null if the term is not in the index
+     */
+    public TermPositions GetFreqs(String term) throws IOException {
+        List<TermPositions> parts = new ArrayList<TermPositions>();
+        for (SegmentReader segment : segments) {
+            TermPositions part = segment.GetFreqs(term);
+            if (part != null) {
+                parts.add(part);
+            }
+        }
+        return parts.isEmpty() ? null : TermPositions.Merge(parts);
+    }
+
+    /*
+     * docs, field frequencies and positions of term, null if the term is not in the index
+     */
+    public TermPositions GetPositions(String term) throws IOException {
+        List<TermPositions> parts = new ArrayList<TermPositions>();
+        for (SegmentReader segment : segments) {
+            TermPositions part = segment.GetPositions(term);
+            if (part != null) {
+                parts.add(part);
+            }
+        }
+        return parts.isEmpty() ? null : TermPositions.Merge(parts);
+    }
+
+    /*
+     * postings of term walked one block at a time, null if the term is not in the index
+     */
+    public PostingsIterator GetIterator(String term) throws IOException {
+        List<PostingsIterator> parts = new ArrayList<PostingsIterator>();
+        for (SegmentReader segment : segments) {
+            PostingsIterator part = segment.GetIterator(term);
+            if (part != null) {
+                parts.add(part);
+            }
+        }
+        if (parts.isEmpty()) {
+            return null;
+        }
+        return parts.size() == 1 ? parts.get(0)
+                : new PostingsIterator.MergedIterator(parts.toArray(new PostingsIterator[parts.size()]));
+    }
+
+    /*
+     * every term of the index in increasing order, once even when several segments have it
+     */
+    TermEnum GetTerms() {
+        return new TermEnum();
+    }
+
+    class TermEnum {
+        private PriorityQueue<TermIndex.Cursor> queue = new PriorityQueue<TermIndex.Cursor>(
+                Math.max(1, segments.length), new Comparator<TermIndex.Cursor>() {
+                    public int compare(TermIndex.Cursor a, TermIndex.Cursor b) {
+                        return a.GetTerm().compareTo(b.GetTerm());
+                    }
+                });
+        private String term;
+        private int docFreq;
+
+        private TermEnum() {
+            for (SegmentReader segment : segments) {
+                TermIndex.Cursor cursor = segment.GetTerms();
+                if (cursor.Next()) {
+                    queue.add(cursor);
+                }
+            }
+        }
+
+        /*
+         * move to the next term, false after the last one
+         */
+        boolean Next() {
+            if (queue.isEmpty()) {
+                return false;
+            }
+            term = queue.peek().GetTerm();
+            docFreq = 0;
+            // the same term in the other segments
+            while (!queue.isEmpty() && queue.peek().Compare(term) == 0) {
+                TermIndex.Cursor cursor = queue.poll();
+                docFreq += cursor.docFreq;
+                if (cursor.Next()) {
+                    queue.add(cursor);
+                }
+            }
+            return true;
+        }
+
+        String GetTerm() {
+            return term;
+        }
+
+        /*
+         * number of pages containing the term in all segments
+         */
+        int GetDocFreq() {
+            return docFreq;
+        }
+    }
+
+    public void Close() {
+        for (SegmentReader segment : segments) {
+            if (segment != null) {
+                segment.Close();
+            }
+        }
+    }
+}
@@ -2,12 +2,18 @@ package Indexter;
 
 
 import Parser.Parser;
-import org.tartarus.snowball.ext.englishStemmer;
+import Parser.TermNormalizer;
+import Parser.TokenSink;
+import Parser.TokenType;
 
 import java.io.*;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.lang.Thread.sleep;
 
@@ -20,17 +26,48 @@ public class Indexter {
     private String stopWordsPath;
 
     private static Set<String> StopWordList;   // for each thread, read only
+    private static TermNormalizer Normalizer = new TermNormalizer();   // shared by all threads
+    private static DocRegistry Registry = new DocRegistry();    // pageID -> dense doc ID, shared by all threads
+    private static DocLengths Lengths = new DocLengths();       // body and title length of each doc
+    private static List<String> OtherPageIDs = new ArrayList<String>();  // files not named by Crawler, word format only
 
     private int     CRAWLER_THREADS_NUM;  // how many threads Crawler created
     private int     CRAWLER_JOB_NUM;      // how many jobs Crawler created
-    private int     THREAD_NUM;         // how many threads you want to create
+    private int     THREAD_NUM;         // how many worker threads the pool keeps busy
     private boolean NO_NUM_MODEL;    // when do index, this model decide whether save number into index file
     private boolean STOP_WORDS_MODEL;
+    private boolean SEGMENT_MODEL;  // build one SPIMI segment, otherwise append to one ".word" file for each term
+    private boolean INCREMENTAL_MODEL;  // add the new pages as one more segment of the index in resultPath
+    private int     SEGMENTS_PER_TIER;  // segments of a tier merged together in INCREMENTAL_MODEL
+    private long    MEMORY_BUDGET;  // bytes of postings each thread keeps in memory before writing a run
+
+    private List<File> runs = new ArrayList<File>();    // runs written by all threads
+    private int firstDocID = 0;     // pages with a smaller doc ID were indexed by a run before
+
+    // each pool thread indexes into its own maps and SpimiBuilder, so tasks never share them
+    private List<IndexterThread> indexters = new ArrayList<IndexterThread>();
+    private ThreadLocal<IndexterThread> currentIndexter = new ThreadLocal<IndexterThread>() {
+        protected IndexterThread initialValue() {
+            synchronized (indexters) {
+                IndexterThread indexter = new IndexterThread(indexters.size());
+                indexters.add(indexter);
+                return indexter;
+            }
+        }
+    };
+
+    // throughput of the workers, reported every REPORT_INTERVAL files
+    private AtomicInteger filesDone = new AtomicInteger();
+    private AtomicLong charsDone = new AtomicLong();
+    private long startTime;
 
     private static final int    WORDS_MAP_THRESHOLD = 10000;
     private static final int    EMAIL_MAP_THRESHOLD = 1000;
+    private static final int    BATCH_SIZE = 16;            // files a task parses without splitting again
+    private static final int    REPORT_INTERVAL = 1000;
 
-    Indexter(String mp, String rp, String sp, int ctn, int cjn, int tn, boolean numModel) {
+    Indexter(String mp, String rp, String sp, int ctn, int cjn, int tn, boolean numModel,
+             boolean segmentModel, boolean incrementalModel, int segmentsPerTier, long memoryBudget) {
         mainPath = mp;
         resultPath = rp;
         stopWordsPath = sp;
@@ -40,7 +77,10 @@ public class Indexter {
         CRAWLER_JOB_NUM = cjn;
         THREAD_NUM = tn;
         NO_NUM_MODEL = numModel;
-
+        SEGMENT_MODEL = segmentModel || incrementalModel;
+        INCREMENTAL_MODEL = incrementalModel;
+        SEGMENTS_PER_TIER = segmentsPerTier;
+        MEMORY_BUDGET = memoryBudget / tn;
 
         if ("".equals(stopWordsPath)) {
             STOP_WORDS_MODEL = false;
@@ -61,22 +101,253 @@ public class Indexter {
             ReadStopWordList();
         }
 
-        Thread[] threads = new Thread[THREAD_NUM];
-        for (int i = 0; i < THREAD_NUM; i++) {
-            IndexterThread indexterThread = new IndexterThread(i, CRAWLER_JOB_NUM, mainPath);
-            indexterThread.Initialize(CRAWLER_THREADS_NUM, THREAD_NUM);
-            threads[i] = new Thread(indexterThread);
-            threads[i].start();
+        // the segments of the runs before are merged while the new pages are parsed
+        SegmentInfos segmentInfos = null;
+        SegmentMerger merger = null;
+        if (INCREMENTAL_MODEL) {
+            segmentInfos = OpenIncrementalIndex();
+            merger = new SegmentMerger(segmentInfos, new TieredMergePolicy(SEGMENTS_PER_TIER));
+            merger.start();
+        }
+
+        if (SEGMENT_MODEL) {
+            File runDir = new File(BuildRunPath());
+            if (!runDir.exists() && !runDir.mkdirs()) {
+                System.out.println("Cannot create folder for runs: " + runDir.getPath());
+                System.exit(1);
+            }
+        }
+
+        // every crawler thread folder is a task, split into batches of files that idle workers steal
+        ForkJoinPool pool = new ForkJoinPool(THREAD_NUM);
+        startTime = System.currentTimeMillis();
+        List<FolderTask> tasks = new ArrayList<FolderTask>();
+        // job number begins from 1
+        for (int jobID = 1; jobID <= CRAWLER_JOB_NUM; jobID++) {
+            for (int folderID = 0; folderID < CRAWLER_THREADS_NUM; folderID++) {
+                tasks.add(new FolderTask(new File(BuildFolderPath(jobID, folderID))));
+            }
+        }
+        try {
+            pool.invoke(new RecursiveAction() {
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } catch (Exception e) {
+            System.out.println("Indexing stopped by exception: " + e);
+            e.printStackTrace();
+        }
+        pool.shutdown();
+
+        // all tasks are done, write what every indexter still keeps in memory
+        for (IndexterThread indexter : indexters) {
+            indexter.Finish();
+        }
+        ReportThroughput(pool);
+
+        try {
+            Registry.Write(new File(resultPath, DocRegistry.FILE));
+            Lengths.Write(new File(resultPath, DocLengths.FILE));
+        } catch (IOException e) {
+            System.out.println("Cannot write doc registry: " + e.getMessage());
+            System.exit(1);
+        }
+
+        // k-way merge of the runs of every thread into one segment
+        if (INCREMENTAL_MODEL) {
+            AddSegment(segmentInfos);
+            merger.Wake();
+            merger.Finish();
+        } else if (SEGMENT_MODEL) {
+            try {
+                IndexMerger.Merge(runs, resultPath);
+                new File(BuildRunPath()).delete();
+            } catch (IOException e) {
+                System.out.println("Cannot merge runs into segment: " + e.getMessage());
+                System.exit(1);
+            }
         }
 
-        // let every thread finish its job
-        for (int i = 0; i < THREAD_NUM; i++) {
+        // document frequencies and lengths of the whole index, loaded once by Retriever
+        if (SEGMENT_MODEL) {
             try {
-                threads[i].join();
-            } catch (InterruptedException e) {
-                System.out.println("Thread_" + i + ": cannot stop");
-            } catch (Exception e) {
-                System.out.println("Thread_" + i + ": meet other exception!");
+                CorpusStats.Write(resultPath);
+            } catch (IOException e) {
+                System.out.println("Cannot write corpus stats: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+
+    /*
+     * negative doc ID of a file not named by Crawler, it is only kept for the ".word" files
+     */
+    private static int RegisterOtherPage(String pageID) {
+        synchronized (OtherPageIDs) {
+            OtherPageIDs.add(pageID);
+            return -OtherPageIDs.size();
+        }
+    }
+
+    private static String GetPageID(int docID) {
+        if (docID >= 0) {
+            return Registry.GetPageID(docID);
+        }
+        synchronized (OtherPageIDs) {
+            return OtherPageIDs.get(-docID - 1);
+        }
+    }
+
+    /*
+     * load the segments, doc registry and lengths of the runs before, pages already in the registry
+     * are not indexed again
+     */
+    private SegmentInfos OpenIncrementalIndex() {
+        if (SegmentReader.Exists(resultPath)) {
+            System.out.println("Result path holds a segment not built in incremental model: " + resultPath);
+            System.exit(1);
+        }
+        try {
+            File registryFile = new File(resultPath, DocRegistry.FILE);
+            if (SegmentInfos.Exists(resultPath) && registryFile.isFile()) {
+                Registry = DocRegistry.Read(registryFile);
+                Lengths = DocLengths.Read(new File(resultPath, DocLengths.FILE));
+            }
+            firstDocID = Registry.Size();
+            SegmentInfos segmentInfos = SegmentInfos.Read(resultPath);
+            System.out.println("Open index with " + segmentInfos.GetSegments().size() + " segments and "
+                    + firstDocID + " pages");
+            return segmentInfos;
+        } catch (IOException e) {
+            System.out.println("Cannot open index: " + e.getMessage());
+            System.exit(1);
+        }
+        return null;
+    }
+
+    /*
+     * merge the runs into a new segment and make it live, the registry is written before so the
+     * segment is never searched without its pages
+     */
+    private void AddSegment(SegmentInfos segmentInfos) {
+        int docCount = Registry.Size() - firstDocID;
+        if (docCount == 0) {
+            System.out.println("No new page to index");
+            new File(BuildRunPath()).delete();
+            return;
+        }
+        String name = null;
+        try {
+            name = segmentInfos.NewSegment();
+            IndexMerger.Merge(runs, segmentInfos.GetSegmentPath(name));
+            new File(BuildRunPath()).delete();
+            segmentInfos.Add(name, docCount);
+            System.out.println("Added " + name + " with " + docCount + " pages");
+        } catch (IOException e) {
+            System.out.println("Cannot merge runs into segment: " + e.getMessage());
+            if (name != null) {
+                segmentInfos.Abort(name);
+            }
+            System.exit(1);
+        }
+    }
+
+    private String BuildRunPath() {
+        return resultPath + File.separator + "runs";
+    }
+
+    // create crawler thread folder path
+    private String BuildFolderPath(int jobID, int folderID) {
+        String foldername = jobID + "_" + folderID;
+        return mainPath + File.separator + "result_" + jobID + File.separator + foldername;
+    }
+
+    private static String GetExtension(String filename) {
+        if (filename == null) {
+            return null;
+        }
+        int extensionPos = filename.lastIndexOf('.');
+        int lastUnixPos = filename.lastIndexOf('/');
+        int lastWindowsPos = filename.lastIndexOf('\\');
+        int lastSeparator = Math.max(lastUnixPos, lastWindowsPos);
+
+        int index = lastSeparator > extensionPos ? -1 : extensionPos;
+        if (index == -1) {
+            return "";
+        } else {
+            return filename.substring(index + 1);
+        }
+    }
+
+    private void ReportThroughput(ForkJoinPool pool) {
+        double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+        System.out.println(String.format("Indexed %d files (%.1f MB) in %.1f s: %.1f files/s, %.2f MB/s, %d tasks stolen",
+                filesDone.get(), charsDone.get() / 1048576.0, seconds, filesDone.get() / seconds,
+                charsDone.get() / 1048576.0 / seconds, pool.getStealCount()));
+    }
+
+    /*
+     * list one crawler thread folder and index its page files, an empty or missing folder is skipped
+     */
+    private class FolderTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private File folder;
+
+        FolderTask(File folder) {
+            this.folder = folder;
+        }
+
+        protected void compute() {
+            // ignore the case that folder doesn't exit or has something wrong
+            if (!folder.exists() || !folder.isDirectory()) {
+                System.out.println("There is no folder: " + folder.getName());
+                return;
+            }
+            // because there are some hided files in folder which we need ignore
+            // we can use file extension
+            List<File> files = new ArrayList<File>();
+            for (File file : folder.listFiles()) {
+                if (GetExtension(file.getName()).equals("")) {
+                    files.add(file);
+                }
+            }
+            new FilesTask(files.toArray(new File[files.size()]), 0, files.size()).compute();
+        }
+    }
+
+    /*
+     * index files[begin, end), halves are forked until a task has at most BATCH_SIZE files
+     */
+    private class FilesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private File[] files;
+        private int begin;
+        private int end;
+
+        FilesTask(File[] files, int begin, int end) {
+            this.files = files;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        protected void compute() {
+            if (end - begin > BATCH_SIZE) {
+                int middle = (begin + end) >>> 1;
+                invokeAll(new FilesTask(files, begin, middle), new FilesTask(files, middle, end));
+                return;
+            }
+            IndexterThread indexter = currentIndexter.get();
+            for (int i = begin; i < end; i++) {
+                int chars = indexter.ProcessOneFile(files[i]);
+                System.out.println("Thread_" + indexter.threadID + " builded indexer for file:\t" + files[i].getName());
+                charsDone.addAndGet(chars);
+                int done = filesDone.incrementAndGet();
+                if (done % REPORT_INTERVAL == 0) {
+                    double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+                    System.out.println(String.format("Indexed %d files: %.1f files/s, %.2f MB/s",
+                            done, done / seconds, charsDone.get() / 1048576.0 / seconds));
+                }
             }
         }
     }
@@ -112,143 +383,140 @@ public class Indexter {
      * The reason I choose to use inner class not indepedent class for IndexterThread
      * is that inner class can use outter class's member and method directly
      */
-    private class IndexterThread implements Runnable {
+    private class IndexterThread implements TokenSink {
         private int threadID;
-        private String mainPath;    // path of main folder (data)
-        private int jobIDUpper;     // upper bound for job index
-        private int beginID;        // beginID and endID is for threads folders
-        private int endID;
         // each thread has its own WordsToDocs and EmailToDocs maps
-        private Map<String, Set<String>> wordsToDocs;
-        private Map<String, Set<String>> emailToDocs;
-
-        public IndexterThread(int tid, int upper, String path) {
+        private Map<Integer, Set<Integer>> wordsToDocs;    // term ID -> doc IDs
+        private Map<String, Set<Integer>> emailToDocs;
+        private int currentDocID;       // page being parsed, used by Token()
+        private Field currentField;     // part of the page being parsed
+        private int currentLength;      // tokens indexed in currentField
+        private String fileTitle;       // title of the page read by GetFileContent()
+        private SpimiBuilder builder;   // null when not SEGMENT_MODEL
+
+        public IndexterThread(int tid) {
             threadID = tid;
-            jobIDUpper = upper;
-            mainPath = path;
-            wordsToDocs = new HashMap<String, Set<String>>();
-            emailToDocs = new HashMap<String, Set<String>>();
-        }
-
-        public void Initialize(int CrawlerThreadsNum, int threadsNum) {
-            // in general, we need Crawler thread num > Index thread num
-            if (CrawlerThreadsNum <= threadsNum) {
-                beginID = threadID;
-                endID = threadID;
-            } else {
-                beginID = CrawlerThreadsNum / threadsNum * threadID;
-                endID = CrawlerThreadsNum / threadsNum * (threadID + 1) - 1;
+            wordsToDocs = new HashMap<Integer, Set<Integer>>();
+            emailToDocs = new HashMap<String, Set<Integer>>();
+            if (SEGMENT_MODEL) {
+                builder = new SpimiBuilder(Normalizer.GetDictionary(), BuildRunPath(), tid, MEMORY_BUDGET);
             }
         }
 
-        public void run() {
-            // job number begins from 1
-            for (int jobID = 1; jobID <= jobIDUpper; jobID++) {
-                for (int folderID = beginID; folderID <= endID; folderID++) {
-                    String curFolderPath = BuildFolderPath(jobID, folderID);
-                    File curFolder = new File(curFolderPath);
-
-                    // ignore the case that folder doesn't exit or has something wrong
-                    if (!curFolder.exists() || !curFolder.isDirectory()) {
-                        System.out.println("There is no folder: " + curFolder.getName());
-                        continue;
-                    }
-
-                    // begin to deal with each crawler thread folder
-                    File[] files = curFolder.listFiles();
-                    for (File file : files) {
-                        // because there are some hided files in folder which we need ignore
-                        // we can use file extension
-                        String name = file.getName();
-                        String ext = GetExtension(name);
-                        if (ext.equals("")) {
-                            ProcessOneFile(file);
-                            System.out.println("Thread_" + threadID + " builded indexer for file:\t" + name);
-                        }
-                    }
-                }
-            }
+        /*
+         * write the maps and the postings still in memory, called once all files are indexed
+         */
+        public void Finish() {
             if (!emailToDocs.isEmpty()) {
                 WriteEmailMap();
             }
             if (!wordsToDocs.isEmpty()) {
                 WriteWordsMap();
             }
-        }
-
-        // create crawler thread folder path
-        private String BuildFolderPath(int jobID, int folderID) {
-            String foldername = jobID + "_" + folderID;
-            return mainPath + File.separator + "result_" + jobID + File.separator + foldername;
-        }
-
-        private String GetExtension(String filename) {
-            if (filename == null) {
-                return null;
-            }
-            int extensionPos = filename.lastIndexOf('.');
-            int lastUnixPos = filename.lastIndexOf('/');
-            int lastWindowsPos = filename.lastIndexOf('\\');
-            int lastSeparator = Math.max(lastUnixPos, lastWindowsPos);
-
-            int index = lastSeparator > extensionPos ? -1 : extensionPos;
-            if (index == -1) {
-                return "";
-            } else {
-                return filename.substring(index + 1);
+            if (builder != null) {
+                try {
+                    List<File> threadRuns = builder.Finish();
+                    synchronized (runs) {
+                        runs.addAll(threadRuns);
+                    }
+                } catch (IOException e) {
+                    System.out.println("Thread_" + threadID + " cannot write run: " + e.getMessage());
+                }
             }
         }
 
         /*
          * key method, in this method, transfer a token to a valid term in index file
+         * return the number of chars parsed
          */
-        private void ProcessOneFile(File file) {
+        private int ProcessOneFile(File file) {
             String pageID = file.getName();
             String content = GetFileContent(file);
             if (content == null || "".equals(content)) {
-                return;
+                return 0;
             }
 
+            currentDocID = Registry.Register(pageID);
+            if (currentDocID < 0 && builder == null) {
+                // ".word" files keep page IDs, so any file is indexed as before
+                currentDocID = RegisterOtherPage(pageID);
+            } else if (currentDocID < 0) {
+                System.out.println("Thread_" + threadID + " ignore file not named by Crawler:\t" + pageID);
+                return 0;
+            } else if (currentDocID < firstDocID) {
+                System.out.println("Thread_" + threadID + " ignore file indexed before:\t" + pageID);
+                return 0;
+            }
+            if (builder != null) {
+                builder.StartDocument(currentDocID);
+            }
+            currentField = Field.BODY;
+            currentLength = 0;
             Parser parser = new Parser(content, StopWordList);
-            parser.Parse();
-            List<String> resTokens = parser.GetResTokens();
-            List<String> tokensType = parser.GetTokensType();
-            for (int i = 0; i < resTokens.size(); i++) {
-                if (tokensType.get(i).equals("NUM")) {
-                    if (NO_NUM_MODEL) {
-                        continue;
-                    } else {
-                        PutIntoWordsPostingList(resTokens.get(i), pageID);
+            parser.Parse(this);
+            int bodyLength = currentLength;
+            // title tokens after all body tokens, they have their own positions
+            currentField = Field.TITLE;
+            currentLength = 0;
+            if (builder != null && fileTitle != null && !"".equals(fileTitle)) {
+                parser = new Parser(fileTitle, StopWordList);
+                parser.Parse(this);
+            }
+            if (currentDocID >= 0) {
+                Lengths.Set(currentDocID, bodyLength, currentLength);
+            }
+            if (builder != null) {
+                try {
+                    builder.EndDocument();
+                } catch (IOException e) {
+                    System.out.println("Thread_" + threadID + " cannot write run: " + e.getMessage());
+                }
+            }
+            return content.length() + (fileTitle == null ? 0 : fileTitle.length());
+        }
+
+        /*
+         * called by parser for each token of current page
+         */
+        public void Token(char[] buffer, int offset, int length, TokenType type, int position) {
+            // only words of the title are indexed
+            if (currentField == Field.TITLE && type == TokenType.EMAIL) {
+                return;
+            }
+            switch (type) {
+                case NUM:
+                    if (!NO_NUM_MODEL) {
+                        PutIntoWordsPostingList(Normalizer.GetDictionary().GetTermID(
+                                new String(buffer, offset, length)), currentDocID, position);
                     }
-                } else if (tokensType.get(i).equals("EMAIL")) {
-                    PutIntoEmailPostingList(resTokens.get(i).toLowerCase(), pageID);
-                } else if (tokensType.get(i).equals("WORD")) {
-                    String tempStr = resTokens.get(i).toLowerCase();
-                    tempStr = StemEnglishWord(tempStr);
-                    PutIntoWordsPostingList(tempStr, pageID);
-                } else if (tokensType.get(i).equals("URL")) {
+                    break;
+                case EMAIL:
+                    PutIntoEmailPostingList(new String(buffer, offset, length).toLowerCase(), currentDocID);
+                    break;
+                case WORD:
+                    PutIntoWordsPostingList(Normalizer.NormalizeToID(buffer, offset, length), currentDocID, position);
+                    break;
+                case URL:
                     // do nothing
-                } else if (tokensType.get(i).equals("STOPWORD")) {
-                    if (STOP_WORDS_MODEL) {
-                        continue;
-                    } else {
-                        String tempStr = resTokens.get(i).toLowerCase();
-                        tempStr = StemEnglishWord(tempStr);
-                        PutIntoWordsPostingList(tempStr, pageID);
+                    break;
+                case STOPWORD:
+                    if (!STOP_WORDS_MODEL) {
+                        PutIntoWordsPostingList(Normalizer.NormalizeToID(buffer, offset, length), currentDocID, position);
                     }
-                } else {
-                    System.out.println("Token type is wrong: " + tokensType.get(i));
-                }
+                    break;
+                default:
+                    System.out.println("Token type is wrong: " + type);
             }
         }
 
         /*
-         * extract page content from page file
+         * extract page content from page file, the title is kept in fileTitle
          */
         private String GetFileContent(File file) {
             String curline = "";
             String content = "";
             boolean recordFlag = false;
+            fileTitle = null;
             try {
                 InputStreamReader read = new InputStreamReader(new FileInputStream(file),"UTF-8");
                 BufferedReader bufferedReader = new BufferedReader(read);
@@ -259,6 +527,8 @@ public class Indexter {
                     } else {
                         if (curline.equals("#Content#")) {
                             recordFlag = true;
+                        } else if (curline.equals("#Title#")) {
+                            fileTitle = bufferedReader.readLine();
                         }
                     }
                 }
@@ -276,29 +546,16 @@ public class Indexter {
         }
 
         /*
-         * stermming
-         * use snawball.jar to transfer english word back to its prototype
-         */
-        private String StemEnglishWord(String token) {
-            englishStemmer stemmer = new englishStemmer();
-            stemmer.setCurrent(token);
-            if (stemmer.stem()) {
-                return stemmer.getCurrent();
-            }
-            return token;
-        }
-
-        /*
-         * insert email and related pageID into map
+         * insert email and related doc ID into map
          * if map size is bigger than threshold, store them back to email file
          */
-        private void PutIntoEmailPostingList(String email, String pageID) {
+        private void PutIntoEmailPostingList(String email, int docID) {
             if (!emailToDocs.containsKey(email)) {
-                Set<String> tempSet = new HashSet<String>();
-                tempSet.add(pageID);
+                Set<Integer> tempSet = new HashSet<Integer>();
+                tempSet.add(docID);
                 emailToDocs.put(email, tempSet);
             } else {
-                emailToDocs.get(email).add(pageID);
+                emailToDocs.get(email).add(docID);
             }
 
             if (emailToDocs.size() >= EMAIL_MAP_THRESHOLD) {
@@ -308,17 +565,21 @@ public class Indexter {
 
 
         /*
-         * insert token and related pageID into map
+         * insert token and related doc ID into map, position and field are only kept by the segment
          * if map size is bigger than threshold, store them back to words file
          */
-        private void PutIntoWordsPostingList(String token, String pageID) {
-            if (!wordsToDocs.containsKey(token)) {
-                Set<String> tempSet = new HashSet<String>();
-                tempSet.add(pageID);
-                wordsToDocs.put(token, tempSet);
-            } else {
-                wordsToDocs.get(token).add(pageID);
+        private void PutIntoWordsPostingList(int termID, int docID, int position) {
+            currentLength++;
+            if (builder != null) {
+                builder.Add(termID, position, currentField);
+                return;
+            }
+            Set<Integer> postingList = wordsToDocs.get(termID);
+            if (postingList == null) {
+                postingList = new HashSet<Integer>();
+                wordsToDocs.put(termID, postingList);
             }
+            postingList.add(docID);
 
             if (wordsToDocs.size() >= WORDS_MAP_THRESHOLD) {
                 WriteWordsMap();
@@ -335,10 +596,10 @@ public class Indexter {
             String emailFilePath = BuildEmailFilePath();
             String emailContent = "";
             for (String key : emailToDocs.keySet()) {
-                Set<String> postingList = emailToDocs.get(key);
+                Set<Integer> postingList = emailToDocs.get(key);
                 emailContent = key + "\t";
-                for (String pageID : postingList) {
-                    emailContent += pageID + "\t";
+                for (Integer docID : postingList) {
+                    emailContent += GetPageID(docID) + "\t";
                 }
                 emailContent += "\n";
             }
@@ -381,13 +642,13 @@ public class Indexter {
          * use file lock to deal with concurrency problem
          */
         private void WriteWordsMap() {
-            for (String key : wordsToDocs.keySet()) {
-                Set<String> postingList = wordsToDocs.get(key);
+            for (Integer key : wordsToDocs.keySet()) {
+                Set<Integer> postingList = wordsToDocs.get(key);
                 String content = "";
-                for (String pageID : postingList) {
-                    content += pageID + "\n";
+                for (Integer docID : postingList) {
+                    content += GetPageID(docID) + "\n";
                 }
-                String filePath = BuildWordFilePath(key);
+                String filePath = BuildWordFilePath(Normalizer.GetDictionary().GetTerm(key));
                 RandomAccessFile file = null;
                 FileChannel fileChannel = null;
                 FileLock fileLock = null;
@@ -442,8 +703,12 @@ public class Indexter {
         String stopWordsPath = "";
         int ctn = 0;
         int cjn = 0;
-        int tn = 100;
+        int tn = Runtime.getRuntime().availableProcessors();
         boolean numModle = true;
+        boolean segmentModel = true;
+        boolean incrementalModel = false;
+        int segmentsPerTier = TieredMergePolicy.DEFAULT_SEGMENTS_PER_TIER;
+        long memoryBudget = 1024L * 1024 * 1024;
 
         for (int i = 0; i < args.length; i++) {
             if ("-d".equals(args[i])) {
@@ -474,6 +739,23 @@ public class Indexter {
             } else if ("-s".equals(args[i])) {
                 stopWordsPath = args[i+1];
                 i++;
+            } else if ("-f".equals(args[i])) {
+                // index format, "word" writes one ".word" file for each term as before
+                if ("word".equals(args[i+1])) {
+                    segmentModel = false;
+                } else if ("incremental".equals(args[i+1])) {
+                    // each run adds one segment to the index in the result folder
+                    incrementalModel = true;
+                }
+                i++;
+            } else if ("-mf".equals(args[i])) {
+                // segments of one tier merged together in incremental model
+                segmentsPerTier = Integer.valueOf(args[i+1]);
+                i++;
+            } else if ("-m".equals(args[i])) {
+                // memory for postings of all threads, in MB
+                memoryBudget = Long.valueOf(args[i+1]) * 1024 * 1024;
+                i++;
             } else {
                 // for the freature funtions
             }
@@ -484,7 +766,8 @@ public class Indexter {
             System.exit(1);
         }
 
-        Indexter indexter = new Indexter(dataPath, resultPath, stopWordsPath, ctn, cjn, tn, numModle);
+        Indexter indexter = new Indexter(dataPath, resultPath, stopWordsPath, ctn, cjn, tn, numModle,
+                segmentModel, incrementalModel, segmentsPerTier, memoryBudget);
 
         indexter.Process();
         System.out.println("FINISH");
@@ -0,0 +1,480 @@
+package Indexter;
+
+import PageRank.PageRank;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Convert the outputs of the old pipeline into a segment, without crawling or indexing the pages again:
+ * the ".word" files and "EMAIL.ema" of Indexter (-f word) and the ".rank" files of PageRank. The url of a page
+ * still comes from its page file, so no url is converted.
+ *
+ * Pages are registered in a DocRegistry from the rank files, then from the ".word" files in term order, in one
+ * pass of this thread, so doc IDs are the same in every run. The ".word" files are then read again by a pool of
+ * threads, a chunk of terms at a time, and the chunks are written in term order while the next ones are read,
+ * so only the chunks in flight are kept in memory.
+ *
+ * A ".word" file only says which pages have the term, so each page gets body frequency 1 and one position 0,
+ * and the body length of a page is its number of terms. The segment is marked by "positions.none" (see
+ * IndexReader), so Retriever checks a phrase in the page files of the docs having all of its words.
+ *
+ * Result folder: the segment files and "docs.map", "docs.len" (see IndexMerger), "pageRank.bin" (see PageRank),
+ * "corpus.stats" (see CorpusStats), "EMAIL.ema" as it was, and
+ * checksums.crc  one line for each file above: "[file name]\t[length]\t[CRC32 in hex]"
+ */
+public class LegacyConverter {
+    public static final String CHECKSUM_FILE = "checksums.crc";
+    public static final String EMAIL_FILE = "EMAIL.ema";
+    private static final int CHUNK_SIZE = 256;          // ".word" files read by one task
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private DocRegistry registry = new DocRegistry();
+    private double[] ranks = new double[1024];
+    private ExecutorService pool;
+    private int threadCount;
+
+    private LegacyConverter(int threadCount) {
+        this.threadCount = threadCount;
+        pool = Executors.newFixedThreadPool(threadCount);
+    }
+
+    /*
+     * read "[pageID]\n[rank]\n" of every ".rank" file of PageRank
+     */
+    private void ReadRanks(String rankPath) throws IOException {
+        int rankCount = 0;
+        for (File rankFile : ListFiles(rankPath, ".rank")) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(rankFile), "UTF-8"));
+            try {
+                String pageID;
+                while ((pageID = reader.readLine()) != null) {
+                    String rank = reader.readLine();
+                    int doc = registry.Register(pageID);
+                    if (rank == null || doc < 0) {
+                        continue;
+                    }
+                    if (doc >= ranks.length) {
+                        ranks = Arrays.copyOf(ranks, Math.max(doc + 1, ranks.length * 2));
+                    }
+                    ranks[doc] = Double.parseDouble(rank);
+                    rankCount++;
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        System.out.println("Read " + rankCount + " page ranks");
+    }
+
+    /*
+     * files of folder with extension, sorted by name so doc IDs are the same in every run
+     */
+    private static File[] ListFiles(String folder, String extension) throws IOException {
+        File[] files = new File(folder).listFiles();
+        if (files == null) {
+            throw new IOException("Not a folder: " + folder);
+        }
+        List<File> matched = new ArrayList<File>();
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(extension)) {
+                matched.add(file);
+            }
+        }
+        File[] sorted = matched.toArray(new File[matched.size()]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /*
+     * terms of the ".word" files of indexPath in increasing String order, the order of a segment
+     */
+    private static String[] ListTerms(String indexPath) throws IOException {
+        File[] wordFiles = ListFiles(indexPath, ".word");
+        String[] terms = new String[wordFiles.length];
+        for (int i = 0; i < wordFiles.length; i++) {
+            String name = wordFiles[i].getName();
+            terms[i] = name.substring(0, name.length() - ".word".length());
+        }
+        Arrays.sort(terms);
+        return terms;
+    }
+
+    /*
+     * register the pages of every ".word" file on this thread, in term order and then in file order
+     */
+    private void RegisterPages(String indexPath, String[] terms) throws IOException {
+        for (String term : terms) {
+            File wordFile = new File(indexPath, term + ".word");
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(wordFile), "UTF-8"));
+            try {
+                String pageID;
+                while ((pageID = reader.readLine()) != null) {
+                    if (!"".equals(pageID)) {
+                        registry.Register(pageID);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /*
+     * increasing doc IDs of the pages of one ".word" file, each page once. A page missing from the registry
+     * (a page ID not from Crawler) is left out, or kept as -1, which no posting matches, when keepUnknown is true
+     */
+    private int[] ReadDocs(File wordFile, boolean keepUnknown) throws IOException {
+        int[] docs = new int[64];
+        int count = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(wordFile), "UTF-8"));
+        try {
+            String pageID;
+            while ((pageID = reader.readLine()) != null) {
+                if ("".equals(pageID)) {
+                    continue;
+                }
+                int doc = registry.GetDocID(pageID);
+                if (doc < 0 && !keepUnknown) {
+                    continue;
+                }
+                if (count == docs.length) {
+                    docs = Arrays.copyOf(docs, count * 2);
+                }
+                docs[count++] = doc;
+            }
+        } finally {
+            reader.close();
+        }
+        Arrays.sort(docs, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || docs[i] != docs[i - 1]) {
+                docs[unique++] = docs[i];
+            }
+        }
+        return Arrays.copyOf(docs, unique);
+    }
+
+    /*
+     * task reading the docs of terms[start, end)
+     */
+    private Future<int[][]> ReadChunk(final String indexPath, final String[] terms, final int start, final int end,
+                                      final boolean keepUnknown) {
+        return pool.submit(new Callable<int[][]>() {
+            public int[][] call() throws IOException {
+                int[][] chunk = new int[end - start][];
+                for (int i = start; i < end; i++) {
+                    chunk[i - start] = ReadDocs(new File(indexPath, terms[i] + ".word"), keepUnknown);
+                }
+                return chunk;
+            }
+        });
+    }
+
+    /*
+     * the docs of each term read by the pool, handed to sink in term order
+     */
+    private void ForEachTerm(String indexPath, String[] terms, boolean keepUnknown, TermSink sink) throws IOException {
+        ArrayDeque<Future<int[][]>> inFlight = new ArrayDeque<Future<int[][]>>();
+        int submitted = 0;
+        int written = 0;
+        while (written < terms.length) {
+            // keep every thread busy, but no more than two chunks each in memory
+            while (submitted < terms.length && inFlight.size() < threadCount * 2) {
+                int end = Math.min(submitted + CHUNK_SIZE, terms.length);
+                inFlight.add(ReadChunk(indexPath, terms, submitted, end, keepUnknown));
+                submitted = end;
+            }
+            int[][] chunk = Take(inFlight.poll());
+            for (int[] docs : chunk) {
+                sink.Accept(terms[written], docs);
+                written++;
+            }
+        }
+    }
+
+    private interface TermSink {
+        void Accept(String term, int[] docs) throws IOException;
+    }
+
+    private static <T> T Take(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void Convert(String indexPath, String rankPath, String resultPath) throws IOException {
+        long startTime = System.currentTimeMillis();
+        File resultFolder = new File(resultPath);
+        if (!resultFolder.exists() && !resultFolder.mkdirs()) {
+            throw new IOException("Cannot create folder: " + resultPath);
+        }
+        ReadRanks(rankPath);
+        String[] terms = ListTerms(indexPath);
+        RegisterPages(indexPath, terms);
+
+        final IndexMerger.SegmentWriter writer = new IndexMerger.SegmentWriter(resultPath);
+        final IndexMerger.TermBuffer termBuffer = new IndexMerger.TermBuffer();
+        final int[][] termCounts = {new int[1024]};
+        final int[][] filler = {new int[0], new int[0], new int[0]};   // body freqs, title freqs, starts
+        try {
+            ForEachTerm(indexPath, terms, false, new TermSink() {
+                public void Accept(String term, int[] docs) throws IOException {
+                    if (docs.length == 0) {
+                        return;
+                    }
+                    if (filler[0].length < docs.length) {
+                        int length = Math.max(docs.length, filler[0].length * 2);
+                        filler[0] = new int[length];
+                        filler[1] = new int[length];
+                        filler[2] = new int[length];
+                        Arrays.fill(filler[0], 1);
+                        for (int i = 0; i < length; i++) {
+                            filler[2][i] = i;
+                        }
+                    }
+                    if (docs.length > 0 && termCounts[0].length <= docs[docs.length - 1]) {
+                        termCounts[0] = Arrays.copyOf(termCounts[0],
+                                Math.max(docs[docs.length - 1] + 1, termCounts[0].length * 2));
+                    }
+                    for (int doc : docs) {
+                        termCounts[0][doc]++;
+                    }
+                    // one position 0 for each doc, the title frequencies filler[1] are all 0
+                    termBuffer.Clear();
+                    termBuffer.Add(docs, filler[0], filler[1], filler[2], docs.length, filler[1], docs.length);
+                    writer.Write(term, termBuffer);
+                }
+            });
+        } finally {
+            writer.Close();
+        }
+
+        int docCount = registry.Size();
+        DocLengths lengths = new DocLengths();
+        for (int doc = 0; doc < docCount; doc++) {
+            lengths.Set(doc, doc < termCounts[0].length ? termCounts[0][doc] : 0, 0);
+        }
+        registry.Write(new File(resultPath, DocRegistry.FILE));
+        lengths.Write(new File(resultPath, DocLengths.FILE));
+        PageRank.writeDocRanks(Arrays.copyOf(ranks, docCount), new File(resultPath, PageRank.RANK_FILE).getPath());
+        IndexReader.WriteNoPositions(resultPath);
+        CorpusStats.Write(resultPath);
+        File emailFile = new File(indexPath, EMAIL_FILE);
+        if (emailFile.isFile()) {
+            Files.copy(emailFile.toPath(), new File(resultPath, EMAIL_FILE).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        WriteChecksums(resultPath);
+        System.out.println("Converted " + terms.length + " terms of " + docCount + " docs in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    /*
+     * names of the files covered by the checksums, the ones not written (no "EMAIL.ema") are left out
+     */
+    private static List<String> GetOutputFiles(String resultPath) {
+        String[] names = {IndexMerger.TERMS_FILE, IndexMerger.POSTINGS_FILE, IndexMerger.POSITIONS_FILE,
+                DocRegistry.FILE, DocLengths.FILE, PageRank.RANK_FILE, CorpusStats.FILE, IndexReader.NO_POSITIONS_FILE,
+                EMAIL_FILE};
+        List<String> outputs = new ArrayList<String>();
+        for (String name : names) {
+            if (new File(resultPath, name).isFile()) {
+                outputs.add(name);
+            }
+        }
+        return outputs;
+    }
+
+    private void WriteChecksums(String resultPath) throws IOException {
+        List<String> names = GetOutputFiles(resultPath);
+        List<Future<long[]>> checksums = new ArrayList<Future<long[]>>();
+        for (String name : names) {
+            checksums.add(Checksum(new File(resultPath, name)));
+        }
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(resultPath, CHECKSUM_FILE)), "UTF-8"));
+        try {
+            for (int i = 0; i < names.size(); i++) {
+                long[] checksum = Take(checksums.get(i));
+                writer.write(names.get(i) + "\t" + checksum[0] + "\t" + Long.toHexString(checksum[1]) + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /*
+     * task computing {length, CRC32} of file
+     */
+    private Future<long[]> Checksum(final File file) {
+        return pool.submit(new Callable<long[]>() {
+            public long[] call() throws IOException {
+                CRC32 crc = new CRC32();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long length = 0;
+                InputStream in = new FileInputStream(file);
+                try {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        crc.update(buffer, 0, read);
+                        length += read;
+                    }
+                } finally {
+                    in.close();
+                }
+                return new long[] {length, crc.getValue()};
+            }
+        });
+    }
+
+    /*
+     * check the files of resultPath against "checksums.crc", and against the ".word" and ".rank" files when their
+     * folders are given. Returns the number of errors found
+     */
+    private int Verify(String indexPath, String rankPath, String resultPath) throws IOException {
+        int errors = 0;
+        List<String> lines = Files.readAllLines(new File(resultPath, CHECKSUM_FILE).toPath(), StandardCharsets.UTF_8);
+        List<Future<long[]>> checksums = new ArrayList<Future<long[]>>();
+        for (String line : lines) {
+            checksums.add(Checksum(new File(resultPath, line.split("\t")[0])));
+        }
+        for (int i = 0; i < lines.size(); i++) {
+            String[] expected = lines.get(i).split("\t");
+            long[] checksum;
+            try {
+                checksum = Take(checksums.get(i));
+            } catch (IOException e) {
+                System.out.println("Cannot read " + expected[0] + ": " + e.getMessage());
+                errors++;
+                continue;
+            }
+            if (checksum[0] != Long.parseLong(expected[1]) || checksum[1] != Long.parseLong(expected[2], 16)) {
+                System.out.println("Checksum of " + expected[0] + " does not match");
+                errors++;
+            }
+        }
+        System.out.println("Checked " + lines.size() + " checksums");
+
+        final IndexReader reader = new IndexReader(resultPath);
+        registry = reader.GetRegistry();
+        try {
+            if (!"".equals(indexPath)) {
+                String[] terms = ListTerms(indexPath);
+                final int[] termErrors = {0};
+                ForEachTerm(indexPath, terms, true, new TermSink() {
+                    public void Accept(String term, int[] docs) throws IOException {
+                        if (!Arrays.equals(docs, reader.GetPostings(term))) {
+                            System.out.println("Postings of " + term + " do not match " + term + ".word");
+                            termErrors[0]++;
+                        }
+                    }
+                });
+                System.out.println("Checked postings of " + terms.length + " terms");
+                errors += termErrors[0];
+            }
+            if (!"".equals(rankPath)) {
+                double[] docRanks = PageRank.loadDocRanks(new File(resultPath, PageRank.RANK_FILE).getPath());
+                int docCount = registry.Size();
+                ReadRanks(rankPath);
+                if (docRanks.length != docCount || registry.Size() != docCount) {
+                    System.out.println("Page ranks have " + docRanks.length + " docs, the index has " + docCount
+                            + " and the rank files have " + (registry.Size() - docCount) + " more");
+                    errors++;
+                }
+                for (int doc = 0; doc < Math.min(docRanks.length, docCount); doc++) {
+                    double rank = doc < ranks.length ? ranks[doc] : 0;
+                    if (Double.compare(rank, docRanks[doc]) != 0) {
+                        System.out.println("Page rank of " + registry.GetPageID(doc) + " does not match");
+                        errors++;
+                    }
+                }
+            }
+        } finally {
+            reader.Close();
+        }
+        return errors;
+    }
+
+    public static void main(String[] args) {
+        String indexPath = "";
+        String rankPath = "";
+        String resultPath = "";
+        int tn = Runtime.getRuntime().availableProcessors();
+        boolean verify = false;
+
+        for (int i = 0; i < args.length; i++) {
+            if ("-i".equals(args[i])) {
+                // ".word" files and "EMAIL.ema" written by Indexter -f word
+                indexPath = args[i+1];
+                i++;
+            } else if ("-p".equals(args[i])) {
+                // ".rank" files written by PageRank
+                rankPath = args[i+1];
+                i++;
+            } else if ("-r".equals(args[i])) {
+                resultPath = args[i+1];
+                i++;
+            } else if ("-t".equals(args[i])) {
+                tn = Integer.parseInt(args[i+1]);
+                i++;
+            } else if ("-verify".equals(args[i])) {
+                verify = true;
+            }
+        }
+
+        if ("".equals(resultPath) || (!verify && ("".equals(indexPath) || "".equals(rankPath)))) {
+            System.out.println("There are something wrong for your parameters:\n[Index path], [Page rank path], "
+                    + "[Result path], and optionally [Thread num], -verify");
+            System.exit(1);
+        }
+
+        LegacyConverter converter = new LegacyConverter(Math.max(1, tn));
+        try {
+            if (verify) {
+                int errors = converter.Verify(indexPath, rankPath, resultPath);
+                System.out.println(errors == 0 ? "Verified " + resultPath : errors + " errors in " + resultPath);
+                if (errors != 0) {
+                    System.exit(1);
+                }
+            } else {
+                converter.Convert(indexPath, rankPath, resultPath);
+            }
+        } catch (IOException e) {
+            System.out.println("Cannot convert the index: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            converter.pool.shutdown();
+        }
+        System.out.println("FINISH");
+    }
+}
@@ -0,0 +1,113 @@
+package Indexter;
+
+import java.util.Arrays;
+
+/**
+ * Find the docs where some terms appear one right after another in a field, only from the positions
+ * in the index.
+ *
+ * The doc lists are intersected first, driven by the term in the fewest docs, then in each common doc
+ * the phrase matches at position p when the k-th term of the phrase is at position p + k of the field.
+ */
+public class PhraseMatcher {
+    private int[] docs = new int[0];
+    private int[] counts = new int[0];
+    private int size = 0;
+
+    /*
+     * phrase[k] is the k-th term of the phrase with its positions, a term may appear more than once
+     */
+    public PhraseMatcher(TermPositions[] phrase, Field field) {
+        if (phrase.length == 0) {
+            return;
+        }
+        int lead = 0;
+        for (int k = 1; k < phrase.length; k++) {
+            if (phrase[k].Size() < phrase[lead].Size()) {
+                lead = k;
+            }
+        }
+        int[] cursors = new int[phrase.length];
+        docs = new int[phrase[lead].Size()];
+        counts = new int[phrase[lead].Size()];
+        for (int i = 0; i < phrase[lead].Size(); i++) {
+            int doc = phrase[lead].GetDoc(i);
+            boolean common = true;
+            for (int k = 0; k < phrase.length; k++) {
+                cursors[k] = phrase[k].Advance(cursors[k], doc);
+                if (cursors[k] == phrase[k].Size()) {
+                    // no more common docs
+                    Finish();
+                    return;
+                }
+                if (phrase[k].GetDoc(cursors[k]) != doc) {
+                    common = false;
+                    break;
+                }
+            }
+            if (!common) {
+                continue;
+            }
+            int count = CountInDoc(phrase, cursors, field);
+            if (count > 0) {
+                docs[size] = doc;
+                counts[size] = count;
+                size++;
+            }
+        }
+        Finish();
+    }
+
+    public int Size() {
+        return size;
+    }
+
+    public int GetDoc(int i) {
+        return docs[i];
+    }
+
+    /*
+     * number of times the phrase appears in the i-th matched doc
+     */
+    public int GetCount(int i) {
+        return counts[i];
+    }
+
+    /*
+     * walk the positions of the first term, every other term keeps its own cursor since all
+     * positions are increasing
+     */
+    private static int CountInDoc(TermPositions[] phrase, int[] cursors, Field field) {
+        int[] positionCursors = new int[phrase.length];
+        int[] positionEnds = new int[phrase.length];
+        for (int k = 0; k < phrase.length; k++) {
+            positionCursors[k] = phrase[k].GetStart(cursors[k], field);
+            positionEnds[k] = positionCursors[k] + phrase[k].GetFreq(cursors[k], field);
+        }
+        int count = 0;
+        int[] first = phrase[0].GetPositions();
+        for (int p = positionCursors[0]; p < positionEnds[0]; p++) {
+            int start = first[p];
+            boolean match = true;
+            for (int k = 1; k < phrase.length && match; k++) {
+                int[] positions = phrase[k].GetPositions();
+                while (positionCursors[k] < positionEnds[k] && positions[positionCursors[k]] < start + k) {
+                    positionCursors[k]++;
+                }
+                if (positionCursors[k] == positionEnds[k]) {
+                    return count;
+                }
+                match = positions[positionCursors[k]] == start + k;
+            }
+            if (match) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void Finish() {
+        docs = Arrays.copyOf(docs, size);
+        counts = Arrays.copyOf(counts, size);
+    }
+}
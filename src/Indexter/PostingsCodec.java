@@ -0,0 +1,384 @@
+package Indexter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Gap + variable-byte coding of the postings of one term, in blocks of BLOCK_SIZE docs.
+ *
+ * Doc IDs of a term are increasing, so each one is stored as the gap to the one before it (the
+ * first gap of a term is the doc ID itself). A gap takes 7 bits per byte, low bits first, the high
+ * bit of the last byte is set.
+ *
+ * Block: [vint byteLength] [vint lastDocGap] [vint positionsLength]
+ *        [vint gap] * n ([vint bodyFreq << 1 | inTitle] [vint titleFreq if inTitle]) * n
+ * n = min(BLOCK_SIZE, docs left), most terms are not in the title, so titleFreq is only written when it
+ * is not 0. byteLength is the length of the rest of the block, lastDocGap is the last doc of the block
+ * minus the last doc of the block before it, and positionsLength is the number of bytes of the positions
+ * of the block, so a reader looking for a doc steps over a block and its positions without decoding them.
+ *
+ * Skips: a term with more than SKIP_INTERVAL blocks starts with one entry for each SKIP_INTERVAL blocks,
+ * ([vint lastDocGap] [vint byteLength] [vint positionsLength]) * groups, giving the last doc and the
+ * lengths of each group of blocks, so a long list is crossed a group at a time before the block headers
+ * are read, see PostingsIterator.
+ *
+ * Dense terms: a term found in at least 1 of DENSE_RATIO docs of its doc ID range keeps its docs as a
+ * DocBitmap instead of gaps when the bitmap is the smaller of the two, which is when its containers are
+ * bitmaps (at most 1 byte for each doc), and the bitmaps of two such terms are intersected a long at a
+ * time. The bitmap is followed by frequency blocks of BLOCK_SIZE docs in doc order:
+ * [vint byteLength] [vint positionsLength] (frequencies as above) * n.
+ * The term dictionary tells which terms are dense, see TermIndex.
+ *
+ * Positions of a term are kept apart from its doc IDs, so reading docs does not decode them.
+ * For each doc, in doc ID order: [vint gap] * bodyFreq [vint gap] * titleFreq, gaps between the
+ * increasing positions of the term in the field (the first gap is the position itself).
+ */
+final class PostingsCodec {
+    static final int BLOCK_SIZE = 128;
+    // a vint needs at most 5 bytes
+    static final int MAX_BLOCK_BYTES = BLOCK_SIZE * 5 * 3;
+    static final int SKIP_INTERVAL = 8;
+    static final int DENSE_RATIO = 8;
+
+    private PostingsCodec() {
+    }
+
+    /*
+     * write docs[0, count) and their frequencies as blocks, blockBuffer needs MAX_BLOCK_BYTES,
+     * the positions of doc i start at positions[starts[i]] (only their length is needed here),
+     * order[i] is the index of the i-th doc in doc ID order, null if the arrays are in doc ID order,
+     * returns true if the docs were written as a DocBitmap
+     */
+    static boolean Encode(int[] docs, int[] bodyFreqs, int[] titleFreqs, int[] starts, int[] positions, int[] order,
+                          int count, OutputStream out, byte[] blockBuffer) throws IOException {
+        DocBitmap bitmap = GetDenseBitmap(docs, order, count);
+        if (bitmap != null) {
+            EncodeDense(bitmap, bodyFreqs, titleFreqs, starts, positions, order, count, out, blockBuffer);
+            return true;
+        }
+        if (count > BLOCK_SIZE * SKIP_INTERVAL) {
+            EncodeSkips(docs, bodyFreqs, titleFreqs, starts, positions, order, count, out, blockBuffer);
+        }
+        int prevDoc = 0;
+        for (int start = 0; start < count; start += BLOCK_SIZE) {
+            int end = Math.min(count, start + BLOCK_SIZE);
+            int length = EncodeBlock(docs, bodyFreqs, titleFreqs, order, start, end, prevDoc, blockBuffer);
+            int lastDoc = docs[order == null ? end - 1 : order[end - 1]];
+            int positionsLength = PositionsLength(bodyFreqs, titleFreqs, starts, positions, order, start, end);
+            WriteVInt(out, VIntSize(lastDoc - prevDoc) + VIntSize(positionsLength) + length);
+            WriteVInt(out, lastDoc - prevDoc);
+            WriteVInt(out, positionsLength);
+            out.write(blockBuffer, 0, length);
+            prevDoc = lastDoc;
+        }
+        return false;
+    }
+
+    /*
+     * decode all count docs of a term starting at bytes[pos], frequencies are decoded too
+     * unless bodyFreqs and titleFreqs are null, dense tells if the docs were written as a DocBitmap
+     */
+    static int[] Decode(byte[] bytes, int pos, int count, boolean dense, int[] bodyFreqs, int[] titleFreqs) {
+        if (dense) {
+            DocBitmap bitmap = DocBitmap.Read(bytes, pos);
+            if (bodyFreqs != null) {
+                pos += bitmap.GetSerializedSize();
+                for (int start = 0; start < count; start += BLOCK_SIZE) {
+                    int length = 0;
+                    int shift = 0;
+                    int b;
+                    while ((b = bytes[pos++]) >= 0) {
+                        length |= b << shift;
+                        shift += 7;
+                    }
+                    length |= (b & 0x7F) << shift;
+                    int blockEnd = pos + length;
+                    // positionsLength
+                    while (bytes[pos++] >= 0) {
+                    }
+                    DecodeFreqs(bytes, pos, bodyFreqs, titleFreqs, start, Math.min(count, start + BLOCK_SIZE));
+                    pos = blockEnd;
+                }
+            }
+            return bitmap.ToArray();
+        }
+        int[] docs = new int[count];
+        int prevDoc = 0;
+        if (count > BLOCK_SIZE * SKIP_INTERVAL) {
+            // every doc is read, the skips are not needed
+            int skipCount = 3 * GetGroupCount(count);
+            for (int i = 0; i < skipCount; i++) {
+                while (bytes[pos++] >= 0) {
+                }
+            }
+        }
+        for (int start = 0; start < count; start += BLOCK_SIZE) {
+            int end = Math.min(count, start + BLOCK_SIZE);
+            int length = 0;
+            int shift = 0;
+            int b;
+            while ((b = bytes[pos++]) >= 0) {
+                length |= b << shift;
+                shift += 7;
+            }
+            length |= (b & 0x7F) << shift;
+            int blockEnd = pos + length;
+            // lastDocGap and positionsLength
+            while (bytes[pos++] >= 0) {
+            }
+            while (bytes[pos++] >= 0) {
+            }
+            for (int i = start; i < end; i++) {
+                int gap = 0;
+                shift = 0;
+                while ((b = bytes[pos++]) >= 0) {
+                    gap |= b << shift;
+                    shift += 7;
+                }
+                gap |= (b & 0x7F) << shift;
+                prevDoc += gap;
+                docs[i] = prevDoc;
+            }
+            if (bodyFreqs != null) {
+                DecodeFreqs(bytes, pos, bodyFreqs, titleFreqs, start, end);
+            }
+            pos = blockEnd;
+        }
+        return docs;
+    }
+
+    /*
+     * number of skip entries of a term in count docs, 0 if it has no skips
+     */
+    static int GetGroupCount(int count) {
+        if (count <= BLOCK_SIZE * SKIP_INTERVAL) {
+            return 0;
+        }
+        int blockCount = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        return (blockCount + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+    }
+
+    /*
+     * append the positions of one field of one doc to buffer, buffer needs freq * 5 bytes from pos
+     */
+    static int PutPositions(byte[] buffer, int pos, int[] positions, int start, int freq) {
+        int prevPosition = 0;
+        for (int i = start; i < start + freq; i++) {
+            pos = PutVInt(buffer, pos, positions[i] - prevPosition);
+            prevPosition = positions[i];
+        }
+        return pos;
+    }
+
+    /*
+     * decode the positions of count docs starting at bytes[pos], the body positions of doc i
+     * start at starts[i] of the returned array and are followed by its title positions,
+     * starts needs count + 1 ints
+     */
+    static int[] DecodePositions(byte[] bytes, int pos, int[] bodyFreqs, int[] titleFreqs, int count, int[] starts) {
+        int size = 0;
+        for (int doc = 0; doc < count; doc++) {
+            starts[doc] = size;
+            size += bodyFreqs[doc] + titleFreqs[doc];
+        }
+        starts[count] = size;
+        int[] positions = new int[size];
+        for (int doc = 0; doc < count; doc++) {
+            pos = DecodeGaps(bytes, pos, positions, starts[doc], bodyFreqs[doc]);
+            pos = DecodeGaps(bytes, pos, positions, starts[doc] + bodyFreqs[doc], titleFreqs[doc]);
+        }
+        return positions;
+    }
+
+    static int DecodeGaps(byte[] bytes, int pos, int[] values, int start, int count) {
+        int prevValue = 0;
+        for (int i = start; i < start + count; i++) {
+            int gap = 0;
+            int shift = 0;
+            int b;
+            while ((b = bytes[pos++]) >= 0) {
+                gap |= b << shift;
+                shift += 7;
+            }
+            gap |= (b & 0x7F) << shift;
+            prevValue += gap;
+            values[i] = prevValue;
+        }
+        return pos;
+    }
+
+    static void DecodeFreqs(byte[] bytes, int pos, int[] bodyFreqs, int[] titleFreqs, int start, int end) {
+        for (int i = start; i < end; i++) {
+            int value = 0;
+            int shift = 0;
+            int b;
+            while ((b = bytes[pos++]) >= 0) {
+                value |= b << shift;
+                shift += 7;
+            }
+            value |= (b & 0x7F) << shift;
+            bodyFreqs[i] = value >>> 1;
+            if ((value & 1) == 0) {
+                titleFreqs[i] = 0;
+                continue;
+            }
+            value = 0;
+            shift = 0;
+            while ((b = bytes[pos++]) >= 0) {
+                value |= b << shift;
+                shift += 7;
+            }
+            titleFreqs[i] = value | (b & 0x7F) << shift;
+        }
+    }
+
+    /*
+     * one skip entry for each SKIP_INTERVAL blocks, the blocks are encoded once more to know their length
+     */
+    private static void EncodeSkips(int[] docs, int[] bodyFreqs, int[] titleFreqs, int[] starts, int[] positions,
+                                    int[] order, int count, OutputStream out, byte[] blockBuffer) throws IOException {
+        int prevDoc = 0;
+        int prevGroupDoc = 0;
+        int groupLength = 0;
+        int groupPositionsLength = 0;
+        int block = 0;
+        for (int start = 0; start < count; start += BLOCK_SIZE) {
+            int end = Math.min(count, start + BLOCK_SIZE);
+            int length = EncodeBlock(docs, bodyFreqs, titleFreqs, order, start, end, prevDoc, blockBuffer);
+            int lastDoc = docs[order == null ? end - 1 : order[end - 1]];
+            int positionsLength = PositionsLength(bodyFreqs, titleFreqs, starts, positions, order, start, end);
+            length += VIntSize(lastDoc - prevDoc) + VIntSize(positionsLength);
+            groupLength += VIntSize(length) + length;
+            groupPositionsLength += positionsLength;
+            prevDoc = lastDoc;
+            block++;
+            if (block % SKIP_INTERVAL == 0 || end == count) {
+                WriteVInt(out, lastDoc - prevGroupDoc);
+                WriteVInt(out, groupLength);
+                WriteVInt(out, groupPositionsLength);
+                prevGroupDoc = lastDoc;
+                groupLength = 0;
+                groupPositionsLength = 0;
+            }
+        }
+    }
+
+    /*
+     * the docs as a DocBitmap if the term is dense and the bitmap is smaller than the gaps, null otherwise
+     */
+    private static DocBitmap GetDenseBitmap(int[] docs, int[] order, int count) {
+        if (count < BLOCK_SIZE) {
+            return null;
+        }
+        int firstDoc = docs[order == null ? 0 : order[0]];
+        int lastDoc = docs[order == null ? count - 1 : order[count - 1]];
+        if ((long) count * DENSE_RATIO < (long) lastDoc - firstDoc + 1) {
+            return null;
+        }
+        DocBitmap bitmap = new DocBitmap();
+        int gapsLength = 0;
+        int prevDoc = 0;
+        for (int i = 0; i < count; i++) {
+            int doc = docs[order == null ? i : order[i]];
+            bitmap.Add(doc);
+            gapsLength += VIntSize(doc - prevDoc);
+            prevDoc = doc;
+        }
+        return bitmap.GetSerializedSize() < gapsLength ? bitmap : null;
+    }
+
+    /*
+     * the docs as a DocBitmap, then their frequencies in blocks
+     */
+    private static void EncodeDense(DocBitmap bitmap, int[] bodyFreqs, int[] titleFreqs, int[] starts, int[] positions,
+                                    int[] order, int count, OutputStream out, byte[] blockBuffer) throws IOException {
+        bitmap.Write(out);
+        for (int start = 0; start < count; start += BLOCK_SIZE) {
+            int end = Math.min(count, start + BLOCK_SIZE);
+            int length = EncodeFreqs(bodyFreqs, titleFreqs, order, start, end, blockBuffer, 0);
+            int positionsLength = PositionsLength(bodyFreqs, titleFreqs, starts, positions, order, start, end);
+            WriteVInt(out, VIntSize(positionsLength) + length);
+            WriteVInt(out, positionsLength);
+            out.write(blockBuffer, 0, length);
+        }
+    }
+
+    /*
+     * gaps then frequencies of docs[start, end) into blockBuffer, returns their length
+     */
+    private static int EncodeBlock(int[] docs, int[] bodyFreqs, int[] titleFreqs, int[] order, int start, int end,
+                                   int prevDoc, byte[] blockBuffer) {
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            int doc = docs[order == null ? i : order[i]];
+            length = PutVInt(blockBuffer, length, doc - prevDoc);
+            prevDoc = doc;
+        }
+        return EncodeFreqs(bodyFreqs, titleFreqs, order, start, end, blockBuffer, length);
+    }
+
+    /*
+     * frequencies of docs[start, end) into blockBuffer from length, returns the new length
+     */
+    private static int EncodeFreqs(int[] bodyFreqs, int[] titleFreqs, int[] order, int start, int end,
+                                   byte[] blockBuffer, int length) {
+        for (int i = start; i < end; i++) {
+            int index = order == null ? i : order[i];
+            if (titleFreqs[index] == 0) {
+                length = PutVInt(blockBuffer, length, bodyFreqs[index] << 1);
+            } else {
+                length = PutVInt(blockBuffer, length, bodyFreqs[index] << 1 | 1);
+                length = PutVInt(blockBuffer, length, titleFreqs[index]);
+            }
+        }
+        return length;
+    }
+
+    /*
+     * bytes taken by the positions of docs[start, end), as written by PutPositions
+     */
+    private static int PositionsLength(int[] bodyFreqs, int[] titleFreqs, int[] starts, int[] positions,
+                                       int[] order, int start, int end) {
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            int index = order == null ? i : order[i];
+            int prevPosition = 0;
+            for (int p = starts[index]; p < starts[index] + bodyFreqs[index]; p++) {
+                length += VIntSize(positions[p] - prevPosition);
+                prevPosition = positions[p];
+            }
+            prevPosition = 0;
+            for (int p = starts[index] + bodyFreqs[index]; p < starts[index] + bodyFreqs[index] + titleFreqs[index]; p++) {
+                length += VIntSize(positions[p] - prevPosition);
+                prevPosition = positions[p];
+            }
+        }
+        return length;
+    }
+
+    private static int VIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int PutVInt(byte[] buffer, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[pos++] = (byte) (value & 0x7F);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) (value | 0x80);
+        return pos;
+    }
+
+    private static void WriteVInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F);
+            value >>>= 7;
+        }
+        out.write(value | 0x80);
+    }
+}
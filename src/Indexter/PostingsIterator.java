@@ -0,0 +1,565 @@
+package Indexter;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Walk the postings of one term in doc order without decoding the whole list, given by SegmentReader
+ * and IndexReader.
+ *
+ * Advance(target) uses the skips written by PostingsCodec: the skip entries of a long list are searched
+ * first, then the headers of the blocks of one group, so only the block holding the doc asked for is
+ * decoded. Frequencies and positions of a block are only decoded when they are asked for, which lets
+ * the intersection of a rare term with a common one touch a few blocks of the common term.
+ * The docs of a dense term are a DocBitmap, so Advance() is a scan of its bits, and the bitmaps of
+ * the dense terms of an intersection are put together before any doc is visited.
+ */
+public abstract class PostingsIterator {
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /*
+     * number of docs of the term
+     */
+    public abstract int Size();
+
+    /*
+     * the current doc, -1 before the first NextDoc() or Advance()
+     */
+    public abstract int GetDoc();
+
+    public abstract int NextDoc();
+
+    /*
+     * move to the first doc not smaller than target, target must be bigger than the current doc
+     */
+    public abstract int Advance(int target);
+
+    /*
+     * number of times the term appears in field of the current doc
+     */
+    public abstract int GetFreq(Field field);
+
+    /*
+     * copy the body positions then the title positions of the current doc to buffer from offset,
+     * buffer needs GetFreq(BODY) + GetFreq(TITLE) ints
+     */
+    public abstract void GetPositions(int[] buffer, int offset) throws IOException;
+
+    /*
+     * all docs of the term when they are kept as a bitmap, null otherwise
+     */
+    public DocBitmap GetBitmap() {
+        return null;
+    }
+
+    /*
+     * the docs common to all iterators, with the frequencies and positions of each term in them,
+     * driven by the term in the fewest docs, the other terms only advance to its docs
+     */
+    public static TermPositions[] Intersect(PostingsIterator[] iterators) throws IOException {
+        int terms = iterators.length;
+        // the bitmaps of the dense terms are intersected a long at a time, their common docs drive
+        // the intersection too when they are fewer than the docs of every term
+        DocBitmap common = null;
+        int denseTerms = 0;
+        for (PostingsIterator iterator : iterators) {
+            DocBitmap bitmap = iterator.GetBitmap();
+            if (bitmap != null) {
+                common = common == null ? bitmap : common.And(bitmap);
+                denseTerms++;
+            }
+        }
+        PostingsIterator[] drivers = iterators;
+        if (denseTerms > 1) {
+            drivers = Arrays.copyOf(iterators, terms + 1);
+            drivers[terms] = new BitmapIterator(common);
+        }
+        int lead = 0;
+        for (int k = 1; k < drivers.length; k++) {
+            if (drivers[k].Size() < drivers[lead].Size()) {
+                lead = k;
+            }
+        }
+        int capacity = terms == 0 ? 0 : Math.min(16, drivers[lead].Size());
+        int[] docs = new int[capacity];
+        int[][] bodyFreqs = new int[terms][capacity];
+        int[][] titleFreqs = new int[terms][capacity];
+        int[][] starts = new int[terms][capacity + 1];
+        int[][] positions = new int[terms][16];
+        int[] positionCounts = new int[terms];
+        int size = 0;
+
+        int doc = terms == 0 ? NO_MORE_DOCS : drivers[lead].NextDoc();
+        while (doc != NO_MORE_DOCS) {
+            int next = doc;
+            for (int k = 0; k < drivers.length && next == doc; k++) {
+                if (k != lead) {
+                    next = drivers[k].GetDoc() < doc ? drivers[k].Advance(doc) : drivers[k].GetDoc();
+                }
+            }
+            if (next != doc) {
+                doc = next == NO_MORE_DOCS ? NO_MORE_DOCS : drivers[lead].Advance(next);
+                continue;
+            }
+            if (size == docs.length) {
+                int length = Math.max(16, size * 2);
+                docs = Arrays.copyOf(docs, length);
+                for (int k = 0; k < terms; k++) {
+                    bodyFreqs[k] = Arrays.copyOf(bodyFreqs[k], length);
+                    titleFreqs[k] = Arrays.copyOf(titleFreqs[k], length);
+                    starts[k] = Arrays.copyOf(starts[k], length + 1);
+                }
+            }
+            docs[size] = doc;
+            for (int k = 0; k < terms; k++) {
+                int bodyFreq = iterators[k].GetFreq(Field.BODY);
+                int titleFreq = iterators[k].GetFreq(Field.TITLE);
+                if (positions[k].length < positionCounts[k] + bodyFreq + titleFreq) {
+                    positions[k] = Arrays.copyOf(positions[k],
+                            Math.max(positionCounts[k] + bodyFreq + titleFreq, positions[k].length * 2));
+                }
+                iterators[k].GetPositions(positions[k], positionCounts[k]);
+                bodyFreqs[k][size] = bodyFreq;
+                titleFreqs[k][size] = titleFreq;
+                starts[k][size] = positionCounts[k];
+                positionCounts[k] += bodyFreq + titleFreq;
+            }
+            size++;
+            doc = drivers[lead].NextDoc();
+        }
+
+        TermPositions[] result = new TermPositions[terms];
+        docs = Arrays.copyOf(docs, size);
+        for (int k = 0; k < terms; k++) {
+            starts[k][size] = positionCounts[k];
+            result[k] = new TermPositions(docs, Arrays.copyOf(bodyFreqs[k], size), Arrays.copyOf(titleFreqs[k], size),
+                    Arrays.copyOf(starts[k], size + 1), Arrays.copyOf(positions[k], positionCounts[k]));
+        }
+        return result;
+    }
+
+    /*
+     * postings of a term in one segment, bytes hold all its postings, its positions are read from the
+     * positions file one block at a time
+     */
+    static final class BlockIterator extends PostingsIterator {
+        private byte[] bytes;
+        private int docFreq;
+        private int blockCount;
+        private PositionsReader positions;
+
+        // skips, for each group of blocks: the last doc, where it starts in bytes and in the positions
+        private int[] groupLastDocs;
+        private int[] groupStarts;
+        private long[] groupPositions;
+
+        // the next block to read
+        private int nextBlock = 0;
+        private int nextPos;
+        private int prevLastDoc = 0;
+        private long nextPositions = 0;
+
+        // the current block
+        private int[] docs = new int[PostingsCodec.BLOCK_SIZE];
+        private int[] bodyFreqs = new int[PostingsCodec.BLOCK_SIZE];
+        private int[] titleFreqs = new int[PostingsCodec.BLOCK_SIZE];
+        private int blockDocs = 0;
+        private int freqsPos;
+        private boolean freqsDecoded;
+        private int upto = -1;
+        private int doc = -1;
+
+        BlockIterator(byte[] bytes, int docFreq, SegmentFile positionsFile, long positionsOffset,
+                      long positionsLength) {
+            this.bytes = bytes;
+            this.docFreq = docFreq;
+            positions = new PositionsReader(positionsFile, positionsOffset, positionsLength);
+            blockCount = (docFreq + PostingsCodec.BLOCK_SIZE - 1) / PostingsCodec.BLOCK_SIZE;
+            int groupCount = PostingsCodec.GetGroupCount(docFreq);
+            nextPos = 0;
+            if (groupCount > 0) {
+                groupLastDocs = new int[groupCount];
+                groupStarts = new int[groupCount];
+                groupPositions = new long[groupCount];
+                int[] groupLengths = new int[groupCount];
+                int lastDoc = 0;
+                long positionsStart = 0;
+                for (int g = 0; g < groupCount; g++) {
+                    lastDoc += ReadVInt();
+                    groupLastDocs[g] = lastDoc;
+                    groupLengths[g] = ReadVInt();
+                    groupPositions[g] = positionsStart;
+                    positionsStart += ReadVInt();
+                }
+                int start = nextPos;
+                for (int g = 0; g < groupCount; g++) {
+                    groupStarts[g] = start;
+                    start += groupLengths[g];
+                }
+            }
+        }
+
+        public int Size() {
+            return docFreq;
+        }
+
+        public int GetDoc() {
+            return doc;
+        }
+
+        public int NextDoc() {
+            if (++upto < blockDocs) {
+                doc = docs[upto];
+            } else if (nextBlock < blockCount) {
+                ReadBlock();
+                upto = 0;
+                doc = docs[0];
+            } else {
+                doc = NO_MORE_DOCS;
+            }
+            return doc;
+        }
+
+        public int Advance(int target) {
+            if (blockDocs == 0 || docs[blockDocs - 1] < target) {
+                if (!SkipTo(target)) {
+                    upto = blockDocs;
+                    doc = NO_MORE_DOCS;
+                    return doc;
+                }
+                ReadBlock();
+                upto = 0;
+            } else {
+                upto++;
+            }
+            while (docs[upto] < target) {
+                upto++;
+            }
+            doc = docs[upto];
+            return doc;
+        }
+
+        public int GetFreq(Field field) {
+            if (!freqsDecoded) {
+                PostingsCodec.DecodeFreqs(bytes, freqsPos, bodyFreqs, titleFreqs, 0, blockDocs);
+                freqsDecoded = true;
+            }
+            return field == Field.TITLE ? titleFreqs[upto] : bodyFreqs[upto];
+        }
+
+        public void GetPositions(int[] buffer, int offset) throws IOException {
+            GetFreq(Field.BODY);
+            positions.Copy(upto, bodyFreqs, titleFreqs, buffer, offset);
+        }
+
+        /*
+         * step over the groups and blocks ending before target, false if no doc is left
+         */
+        private boolean SkipTo(int target) {
+            if (groupLastDocs != null) {
+                int group = nextBlock / PostingsCodec.SKIP_INTERVAL;
+                int last = group;
+                while (last < groupLastDocs.length && groupLastDocs[last] < target) {
+                    last++;
+                }
+                if (last == groupLastDocs.length) {
+                    nextBlock = blockCount;
+                    return false;
+                }
+                if (last > group) {
+                    nextBlock = last * PostingsCodec.SKIP_INTERVAL;
+                    nextPos = groupStarts[last];
+                    prevLastDoc = groupLastDocs[last - 1];
+                    nextPositions = groupPositions[last];
+                }
+            }
+            while (nextBlock < blockCount) {
+                int start = nextPos;
+                int length = ReadVInt();
+                int blockEnd = nextPos + length;
+                int lastDoc = prevLastDoc + ReadVInt();
+                if (lastDoc >= target) {
+                    nextPos = start;
+                    return true;
+                }
+                nextPositions += ReadVInt();
+                prevLastDoc = lastDoc;
+                nextPos = blockEnd;
+                nextBlock++;
+            }
+            return false;
+        }
+
+        /*
+         * decode the doc IDs of the next block, its frequencies and positions are left for later
+         */
+        private void ReadBlock() {
+            int length = ReadVInt();
+            int blockEnd = nextPos + length;
+            ReadVInt();
+            int blockPositionsLength = ReadVInt();
+            positions.SetBlock(nextPositions, blockPositionsLength);
+            blockDocs = Math.min(PostingsCodec.BLOCK_SIZE, docFreq - nextBlock * PostingsCodec.BLOCK_SIZE);
+            int prevDoc = prevLastDoc;
+            for (int i = 0; i < blockDocs; i++) {
+                prevDoc += ReadVInt();
+                docs[i] = prevDoc;
+            }
+            freqsPos = nextPos;
+            freqsDecoded = false;
+            prevLastDoc = prevDoc;
+            nextPositions += blockPositionsLength;
+            nextPos = blockEnd;
+            nextBlock++;
+        }
+
+        private int ReadVInt() {
+            int value = 0;
+            int shift = 0;
+            int b;
+            while ((b = bytes[nextPos++]) >= 0) {
+                value |= b << shift;
+                shift += 7;
+            }
+            return value | (b & 0x7F) << shift;
+        }
+    }
+
+    /*
+     * postings of a dense term in one segment, the docs come from its DocBitmap and the frequencies from
+     * the blocks after it, the i-th doc of the term being the i % BLOCK_SIZE doc of block i / BLOCK_SIZE
+     */
+    static final class BitmapIterator extends PostingsIterator {
+        private DocBitmap bitmap;
+        private byte[] bytes;
+        private PositionsReader positions;
+        private int rank = -1;          // number of docs before the current doc
+        private int doc = -1;
+
+        // the next frequency block to read
+        private int nextBlock = 0;
+        private int nextPos;
+        private long nextPositions = 0;
+
+        // the current frequency block
+        private int block = -1;
+        private int[] bodyFreqs = new int[PostingsCodec.BLOCK_SIZE];
+        private int[] titleFreqs = new int[PostingsCodec.BLOCK_SIZE];
+
+        BitmapIterator(byte[] bytes, SegmentFile positionsFile, long positionsOffset, long positionsLength) {
+            this.bytes = bytes;
+            bitmap = DocBitmap.Read(bytes, 0);
+            nextPos = bitmap.GetSerializedSize();
+            positions = new PositionsReader(positionsFile, positionsOffset, positionsLength);
+        }
+
+        /*
+         * docs of bitmap without frequencies or positions
+         */
+        BitmapIterator(DocBitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        public int Size() {
+            return bitmap.GetCardinality();
+        }
+
+        public int GetDoc() {
+            return doc;
+        }
+
+        public int NextDoc() {
+            if (doc != NO_MORE_DOCS) {
+                doc = bitmap.NextDoc(doc + 1);
+                rank++;
+            }
+            return doc;
+        }
+
+        public int Advance(int target) {
+            int next = bitmap.NextDoc(target);
+            if (next != NO_MORE_DOCS) {
+                rank += bitmap.Count(doc + 1, next) + 1;
+            }
+            doc = next;
+            return doc;
+        }
+
+        public int GetFreq(Field field) {
+            ReadBlock(rank / PostingsCodec.BLOCK_SIZE);
+            int i = rank % PostingsCodec.BLOCK_SIZE;
+            return field == Field.TITLE ? titleFreqs[i] : bodyFreqs[i];
+        }
+
+        public void GetPositions(int[] buffer, int offset) throws IOException {
+            ReadBlock(rank / PostingsCodec.BLOCK_SIZE);
+            positions.Copy(rank % PostingsCodec.BLOCK_SIZE, bodyFreqs, titleFreqs, buffer, offset);
+        }
+
+        public DocBitmap GetBitmap() {
+            return bitmap;
+        }
+
+        /*
+         * decode the frequencies of block, stepping over the blocks before it
+         */
+        private void ReadBlock(int wanted) {
+            if (block == wanted) {
+                return;
+            }
+            while (true) {
+                int length = ReadVInt();
+                int blockEnd = nextPos + length;
+                int blockPositionsLength = ReadVInt();
+                if (nextBlock == wanted) {
+                    int blockDocs = Math.min(PostingsCodec.BLOCK_SIZE, Size() - nextBlock * PostingsCodec.BLOCK_SIZE);
+                    PostingsCodec.DecodeFreqs(bytes, nextPos, bodyFreqs, titleFreqs, 0, blockDocs);
+                    positions.SetBlock(nextPositions, blockPositionsLength);
+                }
+                nextPositions += blockPositionsLength;
+                nextPos = blockEnd;
+                if (nextBlock++ == wanted) {
+                    block = wanted;
+                    return;
+                }
+            }
+        }
+
+        private int ReadVInt() {
+            int value = 0;
+            int shift = 0;
+            int b;
+            while ((b = bytes[nextPos++]) >= 0) {
+                value |= b << shift;
+                shift += 7;
+            }
+            return value | (b & 0x7F) << shift;
+        }
+    }
+
+    /*
+     * positions of one block of a term, read from the positions file when the first doc of the block asks
+     * for them, docs are visited in order so the positions of the docs before are stepped over undecoded.
+     * The file is read WINDOW_SIZE bytes at a time, so the blocks near each other are read together
+     */
+    private static final class PositionsReader {
+        private static final int WINDOW_SIZE = 64 * 1024;
+
+        private SegmentFile file;
+        private long termOffset;
+        private long termLength;
+        private byte[] window;
+        private long windowStart;       // from termOffset
+        private long blockOffset;
+        private int blockLength;
+        private boolean blockRead;
+        private int doc;        // doc of the block whose positions start at pos
+        private int pos;        // in window
+
+        PositionsReader(SegmentFile file, long termOffset, long termLength) {
+            this.file = file;
+            this.termOffset = termOffset;
+            this.termLength = termLength;
+        }
+
+        /*
+         * the positions of the next docs are in the block at blockOffset from the positions of the term
+         */
+        void SetBlock(long blockOffset, int blockLength) {
+            this.blockOffset = blockOffset;
+            this.blockLength = blockLength;
+            blockRead = false;
+        }
+
+        /*
+         * copy the positions of the i-th doc of the block to buffer from offset
+         */
+        void Copy(int i, int[] bodyFreqs, int[] titleFreqs, int[] buffer, int offset) throws IOException {
+            if (!blockRead) {
+                if (window == null || blockOffset < windowStart
+                        || blockOffset + blockLength > windowStart + window.length) {
+                    int length = (int) Math.min(termLength - blockOffset, Math.max(blockLength, WINDOW_SIZE));
+                    window = file.Read(termOffset + blockOffset, length);
+                    windowStart = blockOffset;
+                }
+                blockRead = true;
+                doc = 0;
+                pos = (int) (blockOffset - windowStart);
+            }
+            while (doc < i) {
+                for (int k = bodyFreqs[doc] + titleFreqs[doc]; k > 0; k--) {
+                    while (window[pos++] >= 0) {
+                    }
+                }
+                doc++;
+            }
+            int end = PostingsCodec.DecodeGaps(window, pos, buffer, offset, bodyFreqs[i]);
+            PostingsCodec.DecodeGaps(window, end, buffer, offset + bodyFreqs[i], titleFreqs[i]);
+        }
+    }
+
+    /*
+     * postings of a term in the segments of an incremental index, they hold different docs so the current
+     * doc is the smallest doc of the segments
+     */
+    static final class MergedIterator extends PostingsIterator {
+        private PostingsIterator[] parts;
+        private int size = 0;
+        private int current = -1;   // part holding the current doc
+        private int doc = -1;
+
+        MergedIterator(PostingsIterator[] parts) {
+            this.parts = parts;
+            for (PostingsIterator part : parts) {
+                size += part.Size();
+            }
+        }
+
+        public int Size() {
+            return size;
+        }
+
+        public int GetDoc() {
+            return doc;
+        }
+
+        public int NextDoc() {
+            if (current < 0) {
+                for (PostingsIterator part : parts) {
+                    part.NextDoc();
+                }
+            } else {
+                parts[current].NextDoc();
+            }
+            return Update();
+        }
+
+        public int Advance(int target) {
+            for (PostingsIterator part : parts) {
+                if (part.GetDoc() < target) {
+                    part.Advance(target);
+                }
+            }
+            return Update();
+        }
+
+        public int GetFreq(Field field) {
+            return parts[current].GetFreq(field);
+        }
+
+        public void GetPositions(int[] buffer, int offset) throws IOException {
+            parts[current].GetPositions(buffer, offset);
+        }
+
+        private int Update() {
+            current = 0;
+            for (int i = 1; i < parts.length; i++) {
+                if (parts[i].GetDoc() < parts[current].GetDoc()) {
+                    current = i;
+                }
+            }
+            doc = parts[current].GetDoc();
+            return doc;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package Indexter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Join the ".word" files of Indexter (-f word) with the page ranks of PageRank into the index read by
+ * Retriever: "[result]/[hash % 500]/[term].word".
+ *
+ * Each file starts with "#Count#" and the number of pages of the term, then has the page ID and the page
+ * rank of each page, one per line, the page with the highest rank first. Pages written twice in a
+ * ".word" file are kept once, pages without a rank get 0.
+ * "[result]/corpus.stats" (see CorpusStats) holds the number of pages of each term and of all pages with a
+ * rank or a term, the ".word" files hold no lengths, so every norm is 0.
+ */
+public class RankJoiner {
+    public static final int MODULE = 500;           // folders of the index, same as Retriever
+    public static final String COUNT_TAG = "#Count#";
+
+    private DocRegistry registry = new DocRegistry();   // page ID -> dense int, for the ranks
+    private double[] ranks = new double[1024];
+    private TreeMap<String, Integer> docFreqs = new TreeMap<String, Integer>();   // pages of each term
+
+    /*
+     * read "[pageID]\n[rank]\n" of every ".rank" file of PageRank
+     */
+    private void ReadRanks(String rankPath) throws IOException {
+        File[] rankFiles = new File(rankPath).listFiles();
+        if (rankFiles == null) {
+            throw new IOException("No page rank folder: " + rankPath);
+        }
+        int rankCount = 0;
+        for (File rankFile : rankFiles) {
+            if (!rankFile.getName().endsWith(".rank")) {
+                continue;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(rankFile), "UTF-8"));
+            try {
+                String pageID;
+                while ((pageID = reader.readLine()) != null) {
+                    String rank = reader.readLine();
+                    int doc = registry.Register(pageID);
+                    if (rank == null || doc < 0) {
+                        continue;
+                    }
+                    if (doc >= ranks.length) {
+                        ranks = Arrays.copyOf(ranks, Math.max(doc + 1, ranks.length * 2));
+                    }
+                    ranks[doc] = Double.parseDouble(rank);
+                    rankCount++;
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        System.out.println("Read " + rankCount + " page ranks");
+    }
+
+    /*
+     * write the pages of one ".word" file in decreasing rank order
+     */
+    private void JoinOneFile(File wordFile, String resultPath) throws IOException {
+        String name = wordFile.getName();
+        String term = name.substring(0, name.length() - ".word".length());
+        String[] pageIDs = new String[64];
+        int count = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(wordFile), "UTF-8"));
+        try {
+            String pageID;
+            while ((pageID = reader.readLine()) != null) {
+                if ("".equals(pageID)) {
+                    continue;
+                }
+                if (count == pageIDs.length) {
+                    pageIDs = Arrays.copyOf(pageIDs, count * 2);
+                }
+                pageIDs[count++] = pageID;
+            }
+        } finally {
+            reader.close();
+        }
+        Arrays.sort(pageIDs, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && pageIDs[i].equals(pageIDs[i - 1])) {
+                continue;
+            }
+            pageIDs[unique++] = pageIDs[i];
+        }
+        // decreasing rank, pages with the same rank stay in page ID order
+        final double[] pageRanks = new double[unique];
+        Integer[] order = new Integer[unique];
+        for (int i = 0; i < unique; i++) {
+            registry.Register(pageIDs[i]);
+            pageRanks[i] = GetRank(pageIDs[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int diff = Double.compare(pageRanks[b], pageRanks[a]);
+                return diff != 0 ? diff : a - b;
+            }
+        });
+
+        File folder = new File(resultPath, String.valueOf(Math.abs(term.hashCode()) % MODULE));
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Cannot create folder: " + folder.getPath());
+        }
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(folder, name)), "UTF-8"));
+        try {
+            writer.write(COUNT_TAG + "\n" + unique + "\n");
+            for (int i = 0; i < unique; i++) {
+                int page = order[i];
+                writer.write(pageIDs[page] + "\n" + pageRanks[page] + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        docFreqs.put(term, unique);
+    }
+
+    private double GetRank(String pageID) {
+        int doc = registry.GetDocID(pageID);
+        return doc < 0 || doc >= ranks.length ? 0 : ranks[doc];
+    }
+
+    private void Process(String indexPath, String rankPath, String resultPath) {
+        try {
+            ReadRanks(rankPath);
+        } catch (IOException e) {
+            System.out.println("Cannot read page ranks: " + e.getMessage());
+            System.exit(1);
+        }
+        File[] wordFiles = new File(indexPath).listFiles();
+        if (wordFiles == null) {
+            System.out.println("Index path is not a directory!");
+            System.exit(1);
+        }
+        int termCount = 0;
+        for (File wordFile : wordFiles) {
+            if (!wordFile.getName().endsWith(".word")) {
+                continue;
+            }
+            try {
+                JoinOneFile(wordFile, resultPath);
+                termCount++;
+            } catch (IOException e) {
+                System.out.println("Cannot join file " + wordFile.getName() + ": " + e.getMessage());
+            }
+        }
+        System.out.println("Joined " + termCount + " terms with page ranks");
+        try {
+            WriteStats(resultPath);
+        } catch (IOException e) {
+            System.out.println("Cannot write corpus stats: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private void WriteStats(String resultPath) throws IOException {
+        File folder = new File(resultPath);
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Cannot create folder: " + resultPath);
+        }
+        String[] terms = new String[docFreqs.size()];
+        int[] freqs = new int[docFreqs.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : docFreqs.entrySet()) {
+            terms[i] = entry.getKey();
+            freqs[i] = entry.getValue();
+            i++;
+        }
+        new CorpusStats(registry.Size(), terms, freqs, null).Write(new File(resultPath, CorpusStats.FILE));
+    }
+
+    public static void main(String[] args) {
+        String indexPath = "";
+        String rankPath = "";
+        String resultPath = "";
+
+        for (int i = 0; i < args.length; i++) {
+            if ("-i".equals(args[i])) {
+                // ".word" files written by Indexter -f word
+                indexPath = args[i+1];
+                i++;
+            } else if ("-p".equals(args[i])) {
+                // ".rank" files written by PageRank
+                rankPath = args[i+1];
+                i++;
+            } else if ("-r".equals(args[i])) {
+                resultPath = args[i+1];
+                i++;
+            }
+        }
+
+        if ("".equals(indexPath) || "".equals(rankPath) || "".equals(resultPath)) {
+            System.out.println("There are something wrong for your 3 parameters:\n[Index path], [Page rank path], [Result path]");
+            System.exit(1);
+        }
+
+        new RankJoiner().Process(indexPath, rankPath, resultPath);
+        System.out.println("FINISH");
+    }
+}
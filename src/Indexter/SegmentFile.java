@@ -0,0 +1,65 @@
+package Indexter;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * "postings.post" or "positions.pos" of a segment, read at any offset by its channel, or from a copy
+ * kept in memory when the segment is opened in memory (the small pruned tier of IndexPruner), so a read
+ * makes no system call.
+ */
+final class SegmentFile {
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private byte[] memory;
+
+    SegmentFile(File path, boolean inMemory) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        channel = file.getChannel();
+        if (!inMemory) {
+            return;
+        }
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path.getPath() + " is too big to be kept in memory");
+            }
+            memory = ReadBytes(channel, 0, channel.size());
+        } finally {
+            Close();
+        }
+    }
+
+    byte[] Read(long start, long length) throws IOException {
+        if (memory == null) {
+            return ReadBytes(channel, start, length);
+        }
+        if (start + length > memory.length) {
+            throw new EOFException("Segment file is cut off");
+        }
+        return Arrays.copyOfRange(memory, (int) start, (int) (start + length));
+    }
+
+    void Close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    static byte[] ReadBytes(FileChannel channel, long start, long length) throws IOException {
+        byte[] bytes = new byte[(int) length];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new EOFException("Segment file is cut off");
+            }
+        }
+        return bytes;
+    }
+}
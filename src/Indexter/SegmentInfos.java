@@ -0,0 +1,172 @@
+package Indexter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The live segments of an incremental index, each one a folder under the index path written once by
+ * IndexMerger and never changed, it is only deleted after a merge replaced it.
+ *
+ * The doc IDs of all segments come from one DocRegistry, so "docs.map" and "docs.len" stay in the
+ * index path and a doc is in exactly one live segment.
+ *
+ * segments.gen (DataOutputStream): [int MAGIC] [int VERSION] [int nextSegment] [int segmentCount]
+ *                                  ([UTF name] [int docCount]) * segmentCount
+ * It is written to a temporary file and renamed, so a reader sees the old list or the new one.
+ */
+class SegmentInfos {
+    static final String FILE = "segments.gen";
+    private static final int MAGIC = 0x57534553;    // "WSES"
+    private static final int VERSION = 1;
+
+    private String indexPath;
+    private int nextSegment = 0;
+    private List<SegmentInfo> segments = new ArrayList<SegmentInfo>();
+
+    /*
+     * one segment folder and the number of docs in it
+     */
+    static class SegmentInfo {
+        final String name;
+        final int docCount;
+
+        SegmentInfo(String name, int docCount) {
+            this.name = name;
+            this.docCount = docCount;
+        }
+    }
+
+    private SegmentInfos(String indexPath) {
+        this.indexPath = indexPath;
+    }
+
+    /*
+     * whether indexPath holds an incremental index
+     */
+    static boolean Exists(String indexPath) {
+        return new File(indexPath, FILE).isFile();
+    }
+
+    /*
+     * the segments listed in indexPath, none if there is no incremental index yet
+     */
+    static SegmentInfos Read(String indexPath) throws IOException {
+        SegmentInfos infos = new SegmentInfos(indexPath);
+        File file = new File(indexPath, FILE);
+        if (!file.isFile()) {
+            return infos;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file.getPath() + " is not a segment list of version " + VERSION);
+            }
+            infos.nextSegment = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                infos.segments.add(new SegmentInfo(name, in.readInt()));
+            }
+        } finally {
+            in.close();
+        }
+        return infos;
+    }
+
+    synchronized List<SegmentInfo> GetSegments() {
+        return new ArrayList<SegmentInfo>(segments);
+    }
+
+    String GetSegmentPath(String name) {
+        return indexPath + File.separator + name;
+    }
+
+    /*
+     * create the folder of a new segment, skipping folders left by a run that stopped before its commit
+     */
+    synchronized String NewSegment() throws IOException {
+        while (true) {
+            String name = "segment_" + (nextSegment++);
+            File folder = new File(GetSegmentPath(name));
+            if (!folder.exists()) {
+                if (!folder.mkdirs()) {
+                    throw new IOException("Cannot create folder for segment: " + folder.getPath());
+                }
+                return name;
+            }
+        }
+    }
+
+    /*
+     * make a new segment live
+     */
+    synchronized void Add(String name, int docCount) throws IOException {
+        segments.add(new SegmentInfo(name, docCount));
+        Commit();
+    }
+
+    /*
+     * make the segment merged from merged live instead of them, then delete their folders
+     */
+    synchronized void Replace(List<SegmentInfo> merged, String name, int docCount) throws IOException {
+        List<SegmentInfo> live = new ArrayList<SegmentInfo>();
+        for (SegmentInfo segment : segments) {
+            if (!merged.contains(segment)) {
+                live.add(segment);
+            }
+        }
+        live.add(new SegmentInfo(name, docCount));
+        segments = live;
+        Commit();
+        for (SegmentInfo segment : merged) {
+            Delete(new File(GetSegmentPath(segment.name)));
+        }
+    }
+
+    /*
+     * remove the folder of a segment that was never committed
+     */
+    void Abort(String name) {
+        Delete(new File(GetSegmentPath(name)));
+    }
+
+    private void Commit() throws IOException {
+        File file = new File(indexPath, FILE);
+        File tempFile = new File(indexPath, FILE + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nextSegment);
+            out.writeInt(segments.size());
+            for (SegmentInfo segment : segments) {
+                out.writeUTF(segment.name);
+                out.writeInt(segment.docCount);
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void Delete(File folder) {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+}
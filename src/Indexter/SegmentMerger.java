@@ -0,0 +1,104 @@
+package Indexter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background thread merging the segments of an incremental index while Indexter parses new pages.
+ *
+ * It asks TieredMergePolicy for a merge whenever it is woken up, and merges until no tier is full. The
+ * merged segment is written to a new folder and made live by SegmentInfos, so searches keep using the
+ * old segments until the merge is done.
+ */
+class SegmentMerger extends Thread {
+    private SegmentInfos infos;
+    private TieredMergePolicy policy;
+    private boolean finishing = false;
+    private boolean changed = true;     // segments changed since the policy was last asked
+
+    SegmentMerger(SegmentInfos infos, TieredMergePolicy policy) {
+        super("SegmentMerger");
+        this.infos = infos;
+        this.policy = policy;
+    }
+
+    /*
+     * segments were added, look for a merge again
+     */
+    synchronized void Wake() {
+        changed = true;
+        notifyAll();
+    }
+
+    /*
+     * do the merges still needed, then stop
+     */
+    void Finish() {
+        synchronized (this) {
+            finishing = true;
+            notifyAll();
+        }
+        try {
+            join();
+        } catch (InterruptedException e) {
+            System.out.println("SegmentMerger: cannot stop");
+        }
+    }
+
+    public void run() {
+        while (true) {
+            List<SegmentInfos.SegmentInfo> merge;
+            synchronized (this) {
+                while (!changed && !finishing) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                changed = false;
+            }
+            while ((merge = policy.FindMerge(infos.GetSegments())) != null) {
+                if (!Merge(merge)) {
+                    return;
+                }
+            }
+            synchronized (this) {
+                if (finishing && !changed) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean Merge(List<SegmentInfos.SegmentInfo> merge) {
+        String name = null;
+        List<SegmentReader> readers = new ArrayList<SegmentReader>();
+        try {
+            name = infos.NewSegment();
+            int docCount = 0;
+            for (SegmentInfos.SegmentInfo segment : merge) {
+                readers.add(new SegmentReader(infos.GetSegmentPath(segment.name), null, null, false));
+                docCount += segment.docCount;
+            }
+            IndexMerger.MergeSegments(readers, infos.GetSegmentPath(name));
+            for (SegmentReader reader : readers) {
+                reader.Close();
+            }
+            readers.clear();
+            infos.Replace(merge, name, docCount);
+            System.out.println("Merged " + merge.size() + " segments into " + name + " with " + docCount + " pages");
+            return true;
+        } catch (IOException e) {
+            System.out.println("Cannot merge segments: " + e.getMessage());
+            for (SegmentReader reader : readers) {
+                reader.Close();
+            }
+            if (name != null) {
+                infos.Abort(name);
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package Indexter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read a segment written by IndexMerger.
+ *
+ * The term dictionary is memory-mapped by TermIndex, the DocRegistry and the DocLengths are loaded into
+ * memory when the segment is opened (the segments of an incremental index share the ones of the index,
+ * see IndexReader),
+ * postings are read from "postings.post" when asked for and decoded straight into int arrays of doc IDs
+ * and frequencies. Positions are only read from "positions.pos" for phrases. A segment opened in memory
+ * keeps both files in byte arrays, see SegmentFile.
+ */
+public class SegmentReader {
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private TermIndex terms;
+    private DocRegistry registry;   // doc ID <-> pageID
+    private DocLengths lengths;
+    private SegmentFile postings;
+    private SegmentFile positions;
+
+    public SegmentReader(String segmentPath) throws IOException {
+        this(segmentPath, false);
+    }
+
+    public SegmentReader(String segmentPath, boolean inMemory) throws IOException {
+        this(segmentPath, DocRegistry.Read(new File(segmentPath, DocRegistry.FILE)),
+                DocLengths.Read(new File(segmentPath, DocLengths.FILE)), inMemory);
+    }
+
+    /*
+     * a segment whose doc registry and lengths are kept elsewhere, they may be null if not used
+     */
+    SegmentReader(String segmentPath, DocRegistry registry, DocLengths lengths, boolean inMemory)
+            throws IOException {
+        terms = new TermIndex(new File(segmentPath, IndexMerger.TERMS_FILE));
+        this.registry = registry;
+        this.lengths = lengths;
+        postings = new SegmentFile(new File(segmentPath, IndexMerger.POSTINGS_FILE), inMemory);
+        try {
+            positions = new SegmentFile(new File(segmentPath, IndexMerger.POSITIONS_FILE), inMemory);
+        } catch (IOException e) {
+            postings.Close();
+            throw e;
+        }
+    }
+
+    /*
+     * whether there is a segment under segmentPath
+     */
+    public static boolean Exists(String segmentPath) {
+        return new File(segmentPath, IndexMerger.TERMS_FILE).isFile();
+    }
+
+    public int GetTermCount() {
+        return terms.Size();
+    }
+
+    public int GetDocCount() {
+        return registry.Size();
+    }
+
+    public String GetPageID(int docID) {
+        return registry.GetPageID(docID);
+    }
+
+    public DocRegistry GetRegistry() {
+        return registry;
+    }
+
+    /*
+     * number of indexed tokens in field of doc
+     */
+    public int GetLength(int docID, Field field) {
+        return lengths.GetLength(docID, field);
+    }
+
+    /*
+     * terms of the segment in increasing order, with their postings offsets
+     */
+    TermIndex.Cursor GetTerms() {
+        return terms.Iterator();
+    }
+
+    /*
+     * terms starting with prefix in increasing order
+     */
+    public List<String> GetTermsWithPrefix(String prefix) {
+        List<String> result = new ArrayList<String>();
+        TermIndex.Cursor cursor = terms.Seek(prefix);
+        while (cursor.Next() && cursor.StartsWith(prefix)) {
+            result.add(cursor.GetTerm());
+        }
+        return result;
+    }
+
+    /*
+     * number of pages containing term, 0 if the term is not in the segment
+     */
+    public int GetDocFreq(String term) {
+        TermIndex.TermInfo info = new TermIndex.TermInfo();
+        return terms.Lookup(term, info) ? info.docFreq : 0;
+    }
+
+    /*
+     * doc IDs of the pages containing term in increasing order, empty if the term is not in the segment
+     */
+    public int[] GetPostings(String term) throws IOException {
+        TermIndex.TermInfo info = new TermIndex.TermInfo();
+        if (!terms.Lookup(term, info)) {
+            return new int[0];
+        }
+        byte[] bytes = postings.Read(info.postingsOffset, info.postingsLength);
+        return PostingsCodec.Decode(bytes, 0, info.docFreq, info.dense, null, null);
+    }
+
+    /*
+     * docs and field frequencies of term without positions, null if the term is not in the segment
+     */
+    public TermPositions GetFreqs(String term) throws IOException {
+        TermIndex.TermInfo info = new TermIndex.TermInfo();
+        if (!terms.Lookup(term, info)) {
+            return null;
+        }
+        int[] bodyFreqs = new int[info.docFreq];
+        int[] titleFreqs = new int[info.docFreq];
+        int[] docs = PostingsCodec.Decode(postings.Read(info.postingsOffset, info.postingsLength), 0,
+                info.docFreq, info.dense, bodyFreqs, titleFreqs);
+        return new TermPositions(docs, bodyFreqs, titleFreqs, null, null);
+    }
+
+    /*
+     * docs, field frequencies and positions of term, null if the term is not in the segment
+     */
+    public TermPositions GetPositions(String term) throws IOException {
+        TermIndex.TermInfo info = new TermIndex.TermInfo();
+        if (!terms.Lookup(term, info)) {
+            return null;
+        }
+        return GetPositions(info);
+    }
+
+    /*
+     * docs, field frequencies and positions of the term found at info
+     */
+    TermPositions GetPositions(TermIndex.TermInfo info) throws IOException {
+        int[] bodyFreqs = new int[info.docFreq];
+        int[] titleFreqs = new int[info.docFreq];
+        int[] docs = PostingsCodec.Decode(postings.Read(info.postingsOffset, info.postingsLength), 0,
+                info.docFreq, info.dense, bodyFreqs, titleFreqs);
+        int[] starts = new int[docs.length + 1];
+        int[] termPositions = PostingsCodec.DecodePositions(
+                positions.Read(info.positionsOffset, info.positionsLength), 0, bodyFreqs, titleFreqs,
+                docs.length, starts);
+        return new TermPositions(docs, bodyFreqs, titleFreqs, starts, termPositions);
+    }
+
+    /*
+     * postings of term walked one block at a time, null if the term is not in the segment
+     */
+    public PostingsIterator GetIterator(String term) throws IOException {
+        TermIndex.TermInfo info = new TermIndex.TermInfo();
+        if (!terms.Lookup(term, info)) {
+            return null;
+        }
+        byte[] bytes = postings.Read(info.postingsOffset, info.postingsLength);
+        if (info.dense) {
+            return new PostingsIterator.BitmapIterator(bytes, positions, info.positionsOffset, info.positionsLength);
+        }
+        return new PostingsIterator.BlockIterator(bytes, info.docFreq, positions, info.positionsOffset,
+                info.positionsLength);
+    }
+
+    public void Close() {
+        postings.Close();
+        positions.Close();
+    }
+}
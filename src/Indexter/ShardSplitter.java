@@ -0,0 +1,216 @@
+package Indexter;
+
+import PageRank.PageRank;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Split an index (one segment or an incremental index) into document-partitioned shards, so Retriever can
+ * search them in parallel, one thread for each shard.
+ *
+ * Doc d of the index goes to shard d % shardCount with the local doc ID d / shardCount, so pages crawled
+ * together are spread over all shards and each shard holds about the same number of postings. Each shard is
+ * a segment of its own in "[result]/shard_[i]": its terms, postings, positions, "docs.map" (pageID of each
+ * local doc ID) and "docs.len", and "pageRank.bin" by local doc ID when the page ranks of the index are given.
+ * The terms are read once, in order, and each term is written to every shard that has one of its docs.
+ * "[result]/corpus.stats" holds the stats of the whole index by global doc ID, so Retriever weighs a term
+ * the same in every shard.
+ */
+public class ShardSplitter {
+    public static final String SHARD_PREFIX = "shard_";
+
+    /*
+     * the shard folders of indexPath in shard order, empty if the index is not split
+     */
+    public static List<String> GetShardPaths(String indexPath) {
+        List<String> shardPaths = new ArrayList<String>();
+        File shard;
+        while ((shard = new File(indexPath, SHARD_PREFIX + shardPaths.size())).isDirectory()
+                && SegmentReader.Exists(shard.getPath())) {
+            shardPaths.add(shard.getPath());
+        }
+        return shardPaths;
+    }
+
+    /*
+     * postings of one term for one shard, by local doc ID
+     */
+    private static class ShardPostings {
+        private int[] docs = new int[64];
+        private int[] bodyFreqs = new int[64];
+        private int[] titleFreqs = new int[64];
+        private int[] starts = new int[64];
+        private int count;
+        private int[] positions = new int[256];
+        private int positionCount;
+
+        void Clear() {
+            count = 0;
+            positionCount = 0;
+        }
+
+        void Add(int doc, int bodyFreq, int titleFreq, int[] addPositions, int start) {
+            if (count == docs.length) {
+                docs = Arrays.copyOf(docs, count * 2);
+                bodyFreqs = Arrays.copyOf(bodyFreqs, count * 2);
+                titleFreqs = Arrays.copyOf(titleFreqs, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+            int freq = bodyFreq + titleFreq;
+            if (positions.length < positionCount + freq) {
+                positions = Arrays.copyOf(positions, Math.max(positionCount + freq, positions.length * 2));
+            }
+            docs[count] = doc;
+            bodyFreqs[count] = bodyFreq;
+            titleFreqs[count] = titleFreq;
+            starts[count] = positionCount;
+            count++;
+            System.arraycopy(addPositions, start, positions, positionCount, freq);
+            positionCount += freq;
+        }
+    }
+
+    static void Split(String indexPath, String rankPath, String resultPath, int shardCount) throws IOException {
+        IndexReader reader = new IndexReader(indexPath);
+        IndexMerger.SegmentWriter[] writers = new IndexMerger.SegmentWriter[shardCount];
+        try {
+            String[] shardPaths = new String[shardCount];
+            for (int s = 0; s < shardCount; s++) {
+                File shard = new File(resultPath, SHARD_PREFIX + s);
+                if (!shard.exists() && !shard.mkdirs()) {
+                    throw new IOException("Cannot create folder: " + shard.getPath());
+                }
+                shardPaths[s] = shard.getPath();
+                writers[s] = new IndexMerger.SegmentWriter(shardPaths[s]);
+            }
+            SplitTerms(reader, writers);
+            SplitDocs(reader, rankPath, shardPaths);
+            for (int s = 0; s < shardCount && !reader.HasPositions(); s++) {
+                IndexReader.WriteNoPositions(shardPaths[s]);
+            }
+            CorpusStats.Compute(reader).Write(new File(resultPath, CorpusStats.FILE));
+            System.out.println("Split " + reader.GetDocCount() + " docs into " + shardCount + " shards with "
+                    + writers[0].GetTermCount() + " terms in shard 0");
+        } finally {
+            for (IndexMerger.SegmentWriter writer : writers) {
+                if (writer != null) {
+                    writer.Close();
+                }
+            }
+            reader.Close();
+        }
+    }
+
+    /*
+     * every term of the index in increasing order, its postings split by doc ID among the shards
+     */
+    private static void SplitTerms(IndexReader reader, IndexMerger.SegmentWriter[] writers) throws IOException {
+        int shardCount = writers.length;
+        ShardPostings[] shardPostings = new ShardPostings[shardCount];
+        for (int s = 0; s < shardCount; s++) {
+            shardPostings[s] = new ShardPostings();
+        }
+        IndexMerger.TermBuffer termBuffer = new IndexMerger.TermBuffer();
+        IndexReader.TermEnum terms = reader.GetTerms();
+        while (terms.Next()) {
+            String term = terms.GetTerm();
+            TermPositions postings = reader.GetPositions(term);
+            for (ShardPostings part : shardPostings) {
+                part.Clear();
+            }
+            int[] positions = postings.GetPositions();
+            for (int i = 0; i < postings.Size(); i++) {
+                int doc = postings.GetDoc(i);
+                shardPostings[doc % shardCount].Add(doc / shardCount, postings.GetFreq(i, Field.BODY),
+                        postings.GetFreq(i, Field.TITLE), positions, postings.GetStart(i, Field.BODY));
+            }
+            for (int s = 0; s < shardCount; s++) {
+                ShardPostings part = shardPostings[s];
+                if (part.count == 0) {
+                    continue;
+                }
+                termBuffer.Clear();
+                termBuffer.Add(part.docs, part.bodyFreqs, part.titleFreqs, part.starts, part.count,
+                        part.positions, part.positionCount);
+                writers[s].Write(term, termBuffer);
+            }
+        }
+    }
+
+    /*
+     * registry, lengths and page ranks of each shard by local doc ID
+     */
+    private static void SplitDocs(IndexReader reader, String rankPath, String[] shardPaths) throws IOException {
+        int shardCount = shardPaths.length;
+        int docCount = reader.GetDocCount();
+        double[] ranks = null;
+        File rankFile = new File(rankPath, PageRank.RANK_FILE);
+        if (!"".equals(rankPath)) {
+            if (!rankFile.isFile()) {
+                throw new IOException("No " + PageRank.RANK_FILE + " in " + rankPath);
+            }
+            ranks = PageRank.loadDocRanks(rankFile.getPath());
+        }
+        for (int s = 0; s < shardCount; s++) {
+            DocRegistry registry = new DocRegistry();
+            DocLengths lengths = new DocLengths();
+            double[] shardRanks = new double[(docCount - s + shardCount - 1) / shardCount];
+            // local doc IDs are given in global doc order, so doc / shardCount is the order of registration
+            for (int doc = s; doc < docCount; doc += shardCount) {
+                int local = registry.Register(reader.GetPageID(doc));
+                lengths.Set(local, reader.GetLength(doc, Field.BODY), reader.GetLength(doc, Field.TITLE));
+                if (ranks != null && doc < ranks.length) {
+                    shardRanks[local] = ranks[doc];
+                }
+            }
+            registry.Write(new File(shardPaths[s], DocRegistry.FILE));
+            lengths.Write(new File(shardPaths[s], DocLengths.FILE));
+            if (ranks != null) {
+                PageRank.writeDocRanks(shardRanks, new File(shardPaths[s], PageRank.RANK_FILE).getPath());
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        String indexPath = "";
+        String rankPath = "";
+        String resultPath = "";
+        int shardCount = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 0; i < args.length; i++) {
+            if ("-i".equals(args[i])) {
+                // a segment or an incremental index written by Indexter
+                indexPath = args[i+1];
+                i++;
+            } else if ("-p".equals(args[i])) {
+                // folder of "pageRank.bin" written by PageRank
+                rankPath = args[i+1];
+                i++;
+            } else if ("-r".equals(args[i])) {
+                resultPath = args[i+1];
+                i++;
+            } else if ("-n".equals(args[i])) {
+                shardCount = Integer.parseInt(args[i+1]);
+                i++;
+            }
+        }
+
+        if ("".equals(indexPath) || "".equals(resultPath) || shardCount < 1) {
+            System.out.println("There are something wrong for your parameters:\n[Index path], [Result path], "
+                    + "[Shard num], and optionally [Page rank path]");
+            System.exit(1);
+        }
+
+        try {
+            Split(indexPath, rankPath, resultPath, shardCount);
+        } catch (IOException e) {
+            System.out.println("Cannot split the index: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("FINISH");
+    }
+}
@@ -0,0 +1,171 @@
+package Indexter;
+
+import Parser.TermDictionary;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Single-pass in-memory indexing (SPIMI) for one indexter thread.
+ *
+ * Postings of the pages of this thread are collected in a term -> postings map. When the estimated
+ * memory of the map is over the budget (checked after each page), the map is written to a new run
+ * file in term order and cleared. IndexMerger merges the runs of all threads into one segment.
+ *
+ * Run file (DataOutputStream):
+ * [int termCount] ([UTF term] [int postingCount] ([int docID] [int bodyFreq] [int titleFreq]
+ *                                                   [int position] * (bodyFreq + titleFreq)) * postingCount) * termCount
+ * docIDs are given by the DocRegistry of Indexter, increasing within a run, body positions then title
+ * positions of a doc, increasing within each field.
+ */
+class SpimiBuilder {
+    // rough cost of one term in the map besides its postings: map entry, boxed key, TermPostings and its first arrays
+    private static final int TERM_OVERHEAD = 208;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private TermDictionary dictionary;
+    private String runPath;
+    private int threadID;
+    private long memoryBudget;
+
+    private HashMap<Integer, TermPostings> postings = new HashMap<Integer, TermPostings>();
+    private int currentDoc = -1;
+    private long usedBytes = 0;
+    private int runCount = 0;
+    private List<File> runs = new ArrayList<File>();
+
+    /*
+     * postings of one term, docs in increasing order, with the positions of the term in each doc
+     */
+    private static class TermPostings {
+        int[] docs = new int[4];
+        int[] bodyFreqs = new int[4];
+        int[] titleFreqs = new int[4];
+        int size = 0;
+        int[] positions = new int[4];
+        int positionCount = 0;
+
+        // return bytes newly allocated
+        int Add(int doc, int position, Field field) {
+            int grown = 0;
+            if (size == 0 || docs[size - 1] != doc) {
+                if (size == docs.length) {
+                    grown += docs.length * 12;
+                    docs = Arrays.copyOf(docs, docs.length * 2);
+                    bodyFreqs = Arrays.copyOf(bodyFreqs, bodyFreqs.length * 2);
+                    titleFreqs = Arrays.copyOf(titleFreqs, titleFreqs.length * 2);
+                }
+                docs[size] = doc;
+                bodyFreqs[size] = 0;
+                titleFreqs[size] = 0;
+                size++;
+            }
+            if (positionCount == positions.length) {
+                grown += positions.length * 4;
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            positions[positionCount++] = position;
+            if (field == Field.TITLE) {
+                titleFreqs[size - 1]++;
+            } else {
+                bodyFreqs[size - 1]++;
+            }
+            return grown;
+        }
+    }
+
+    SpimiBuilder(TermDictionary dict, String path, int tid, long budget) {
+        dictionary = dict;
+        runPath = path;
+        threadID = tid;
+        memoryBudget = budget;
+    }
+
+    /*
+     * docIDs of the pages of this thread must be increasing
+     */
+    void StartDocument(int docID) {
+        currentDoc = docID;
+    }
+
+    /*
+     * term appears in field of the current document at position,
+     * all body tokens of a document must be added before its title tokens
+     */
+    void Add(int termID, int position, Field field) {
+        TermPostings termPostings = postings.get(termID);
+        if (termPostings == null) {
+            termPostings = new TermPostings();
+            postings.put(termID, termPostings);
+            usedBytes += TERM_OVERHEAD;
+        }
+        usedBytes += termPostings.Add(currentDoc, position, field);
+    }
+
+    /*
+     * write a run if memory is over budget, runs only break between documents
+     */
+    void EndDocument() throws IOException {
+        if (usedBytes >= memoryBudget) {
+            WriteRun();
+        }
+    }
+
+    /*
+     * write what is left and return all runs of this thread
+     */
+    List<File> Finish() throws IOException {
+        if (!postings.isEmpty()) {
+            WriteRun();
+        }
+        return runs;
+    }
+
+    private void WriteRun() throws IOException {
+        List<Integer> termIDs = new ArrayList<Integer>(postings.keySet());
+        final HashMap<Integer, String> terms = new HashMap<Integer, String>();
+        for (Integer termID : termIDs) {
+            terms.put(termID, dictionary.GetTerm(termID));
+        }
+        Collections.sort(termIDs, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return terms.get(a).compareTo(terms.get(b));
+            }
+        });
+
+        File run = new File(runPath + File.separator + "run_" + threadID + "_" + (runCount++) + ".run");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE));
+        try {
+            out.writeInt(termIDs.size());
+            for (Integer termID : termIDs) {
+                TermPostings termPostings = postings.get(termID);
+                out.writeUTF(terms.get(termID));
+                out.writeInt(termPostings.size);
+                int position = 0;
+                for (int i = 0; i < termPostings.size; i++) {
+                    out.writeInt(termPostings.docs[i]);
+                    out.writeInt(termPostings.bodyFreqs[i]);
+                    out.writeInt(termPostings.titleFreqs[i]);
+                    for (int j = 0; j < termPostings.bodyFreqs[i] + termPostings.titleFreqs[i]; j++) {
+                        out.writeInt(termPostings.positions[position++]);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        runs.add(run);
+
+        postings = new HashMap<Integer, TermPostings>();
+        usedBytes = 0;
+    }
+}
@@ -0,0 +1,361 @@
+package Indexter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Sorted term dictionary of a segment ("terms.dict"), memory-mapped by the reader, so a lookup reads
+ * mapped bytes and neither opens a file nor keeps a String for each term.
+ *
+ * Terms are UTF-8, in increasing String order, and front coded in blocks of BLOCK_SIZE: each term keeps
+ * only the bytes after the prefix it shares with the term before it in the block, the first term of a
+ * block is kept whole. A lookup binary searches the first terms of the blocks, then scans one block.
+ *
+ * terms.dict: [int MAGIC] [int VERSION]
+ *             blocks of entries: [vint prefixLength] [vint suffixLength] [suffix bytes] [vint docFreq << 1 | dense]
+ *                                [vlong postingsOffset] [vlong positionsOffset]   (first entry of a block only)
+ *                                [vlong postingsLength] [vlong positionsLength]
+ *             [long blockOffset] * blockCount
+ *             [long blockIndexOffset] [int termCount] [int blockCount]
+ * The offsets of a term that is not first in its block follow the ones of the term before it, dense is 1
+ * when the postings of the term are a DocBitmap (see PostingsCodec).
+ * A vint or vlong takes 7 bits per byte, low bits first, the high bit of the last byte is set.
+ */
+final class TermIndex {
+    static final int BLOCK_SIZE = 16;
+    private static final int TRAILER_SIZE = 16;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private ByteBuffer buffer;
+    private int termCount;
+    private int blockCount;
+    private int blockIndexOffset;
+
+    /*
+     * where the postings and the positions of a term are, in the segment files
+     */
+    static class TermInfo {
+        int docFreq;
+        boolean dense;
+        long postingsOffset;
+        long postingsLength;
+        long positionsOffset;
+        long positionsLength;
+    }
+
+    TermIndex(File file) throws IOException {
+        RandomAccessFile randomFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomFile.getChannel();
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomFile.close();
+        }
+        if (buffer.capacity() < 8 + TRAILER_SIZE || buffer.getInt(0) != IndexMerger.MAGIC
+                || buffer.getInt(4) != IndexMerger.VERSION) {
+            throw new IOException(file.getPath() + " is not a segment file of version " + IndexMerger.VERSION);
+        }
+        int trailer = buffer.capacity() - TRAILER_SIZE;
+        blockIndexOffset = (int) buffer.getLong(trailer);
+        termCount = buffer.getInt(trailer + 8);
+        blockCount = buffer.getInt(trailer + 12);
+    }
+
+    int Size() {
+        return termCount;
+    }
+
+    /*
+     * fill info with the entry of term, false if term is not in the dictionary
+     */
+    boolean Lookup(String term, TermInfo info) {
+        Cursor cursor = new Cursor();
+        if (!cursor.SeekCeil(term)) {
+            return false;
+        }
+        if (cursor.Compare(term) != 0) {
+            return false;
+        }
+        cursor.CopyInfo(info);
+        return true;
+    }
+
+    /*
+     * cursor before the first term
+     */
+    Cursor Iterator() {
+        return new Cursor();
+    }
+
+    /*
+     * cursor on the first term not smaller than term, Next() moves it on
+     */
+    Cursor Seek(String term) {
+        Cursor cursor = new Cursor();
+        cursor.SeekCeil(term);
+        return cursor;
+    }
+
+    /*
+     * walks the terms in increasing order, decoding one entry at a time
+     */
+    class Cursor extends TermInfo {
+        private int ord = -1;           // index of the current term
+        private int position;           // first byte of the next entry
+        private byte[] termBytes = new byte[64];
+        private int termLength;
+        private boolean seeked = false; // the cursor already stands on the term found by SeekCeil
+
+        private Cursor() {
+            position = 8;
+        }
+
+        /*
+         * move to the next term, false after the last one
+         */
+        boolean Next() {
+            if (seeked) {
+                seeked = false;
+                return ord < termCount;
+            }
+            if (ord + 1 >= termCount) {
+                ord = termCount;
+                return false;
+            }
+            ord++;
+            int prefixLength = ReadVInt();
+            int suffixLength = ReadVInt();
+            if (termBytes.length < prefixLength + suffixLength) {
+                byte[] bytes = new byte[Math.max(prefixLength + suffixLength, termBytes.length * 2)];
+                System.arraycopy(termBytes, 0, bytes, 0, prefixLength);
+                termBytes = bytes;
+            }
+            for (int i = 0; i < suffixLength; i++) {
+                termBytes[prefixLength + i] = buffer.get(position++);
+            }
+            termLength = prefixLength + suffixLength;
+            int value = ReadVInt();
+            docFreq = value >>> 1;
+            dense = (value & 1) != 0;
+            if (ord % BLOCK_SIZE == 0) {
+                postingsOffset = ReadVLong();
+                positionsOffset = ReadVLong();
+            } else {
+                postingsOffset += postingsLength;
+                positionsOffset += positionsLength;
+            }
+            postingsLength = ReadVLong();
+            positionsLength = ReadVLong();
+            return true;
+        }
+
+        String GetTerm() {
+            return new String(termBytes, 0, termLength, UTF8);
+        }
+
+        /*
+         * compare the current term with term in String order, without decoding it to a String
+         */
+        int Compare(String term) {
+            int i = 0;
+            int j = 0;
+            while (i < termLength && j < term.length()) {
+                int b = termBytes[i] & 0xFF;
+                int c;
+                if (b < 0x80) {
+                    c = b;
+                    i++;
+                } else if (b < 0xE0) {
+                    c = (b & 0x1F) << 6 | termBytes[i + 1] & 0x3F;
+                    i += 2;
+                } else if (b < 0xF0) {
+                    c = (b & 0x0F) << 12 | (termBytes[i + 1] & 0x3F) << 6 | termBytes[i + 2] & 0x3F;
+                    i += 3;
+                } else {
+                    int codePoint = (b & 0x07) << 18 | (termBytes[i + 1] & 0x3F) << 12
+                            | (termBytes[i + 2] & 0x3F) << 6 | termBytes[i + 3] & 0x3F;
+                    i += 4;
+                    // a supplementary char is two chars in the String
+                    int diff = Character.highSurrogate(codePoint) - term.charAt(j);
+                    if (diff != 0) {
+                        return diff;
+                    }
+                    j++;
+                    if (j == term.length()) {
+                        return 1;
+                    }
+                    c = Character.lowSurrogate(codePoint);
+                }
+                int diff = c - term.charAt(j);
+                if (diff != 0) {
+                    return diff;
+                }
+                j++;
+            }
+            if (i < termLength) {
+                return 1;
+            }
+            return j < term.length() ? -1 : 0;
+        }
+
+        /*
+         * whether the current term starts with prefix
+         */
+        boolean StartsWith(String prefix) {
+            return GetTerm().startsWith(prefix);
+        }
+
+        void CopyInfo(TermInfo info) {
+            info.docFreq = docFreq;
+            info.dense = dense;
+            info.postingsOffset = postingsOffset;
+            info.postingsLength = postingsLength;
+            info.positionsOffset = positionsOffset;
+            info.positionsLength = positionsLength;
+        }
+
+        /*
+         * stand on the first term not smaller than term, false if there is none
+         */
+        private boolean SeekCeil(String term) {
+            // last block whose first term is not bigger than term
+            int low = 0;
+            int high = blockCount - 1;
+            int block = 0;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                SeekBlock(middle);
+                Next();
+                if (Compare(term) <= 0) {
+                    block = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            if (blockCount == 0) {
+                ord = termCount;
+                seeked = true;
+                return false;
+            }
+            SeekBlock(block);
+            while (Next()) {
+                if (Compare(term) >= 0) {
+                    seeked = true;
+                    return true;
+                }
+            }
+            seeked = true;
+            return false;
+        }
+
+        private void SeekBlock(int block) {
+            ord = block * BLOCK_SIZE - 1;
+            position = (int) buffer.getLong(blockIndexOffset + block * 8);
+            seeked = false;
+        }
+
+        private int ReadVInt() {
+            return (int) ReadVLong();
+        }
+
+        private long ReadVLong() {
+            long value = 0;
+            int shift = 0;
+            int b;
+            while ((b = buffer.get(position++)) >= 0) {
+                value |= (long) b << shift;
+                shift += 7;
+            }
+            return value | (long) (b & 0x7F) << shift;
+        }
+    }
+
+    /*
+     * writes terms.dict, terms must be added in increasing String order
+     */
+    static class Writer {
+        private IndexMerger.CountingOutputStream counter;
+        private DataOutputStream out;
+        private long[] blockOffsets = new long[64];
+        private int termCount = 0;
+        private byte[] lastTerm = new byte[0];
+        private long lastPostingsEnd;
+        private long lastPositionsEnd;
+
+        Writer(File file, int bufferSize) throws IOException {
+            counter = new IndexMerger.CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), bufferSize));
+            out = new DataOutputStream(counter);
+            out.writeInt(IndexMerger.MAGIC);
+            out.writeInt(IndexMerger.VERSION);
+        }
+
+        void Add(String term, int docFreq, boolean dense, long postingsOffset, long postingsLength,
+                 long positionsOffset, long positionsLength) throws IOException {
+            byte[] bytes = term.getBytes(UTF8);
+            int prefixLength = 0;
+            if (termCount % BLOCK_SIZE == 0) {
+                int block = termCount / BLOCK_SIZE;
+                if (block == blockOffsets.length) {
+                    blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+                }
+                blockOffsets[block] = counter.count;
+            } else {
+                int limit = Math.min(bytes.length, lastTerm.length);
+                while (prefixLength < limit && bytes[prefixLength] == lastTerm[prefixLength]) {
+                    prefixLength++;
+                }
+                if (postingsOffset != lastPostingsEnd || positionsOffset != lastPositionsEnd) {
+                    throw new IOException("Postings of term " + term + " do not follow the term before it");
+                }
+            }
+            WriteVLong(prefixLength);
+            WriteVLong(bytes.length - prefixLength);
+            out.write(bytes, prefixLength, bytes.length - prefixLength);
+            WriteVLong((long) docFreq << 1 | (dense ? 1 : 0));
+            if (termCount % BLOCK_SIZE == 0) {
+                WriteVLong(postingsOffset);
+                WriteVLong(positionsOffset);
+            }
+            WriteVLong(postingsLength);
+            WriteVLong(positionsLength);
+            lastTerm = bytes;
+            lastPostingsEnd = postingsOffset + postingsLength;
+            lastPositionsEnd = positionsOffset + positionsLength;
+            termCount++;
+        }
+
+        long GetTermCount() {
+            return termCount;
+        }
+
+        void Close() throws IOException {
+            int blockCount = (termCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            long blockIndexOffset = counter.count;
+            for (int i = 0; i < blockCount; i++) {
+                out.writeLong(blockOffsets[i]);
+            }
+            out.writeLong(blockIndexOffset);
+            out.writeInt(termCount);
+            out.writeInt(blockCount);
+            out.close();
+        }
+
+        private void WriteVLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) (value & 0x7F));
+                value >>>= 7;
+            }
+            out.write((int) (value | 0x80));
+        }
+    }
+}
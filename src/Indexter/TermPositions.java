@@ -0,0 +1,140 @@
+package Indexter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Postings of one term with its frequency in each field of each doc, and the positions of the term
+ * when they were read, given by SegmentReader.
+ *
+ * Docs are in increasing order, the positions of doc i in a field are increasing token positions
+ * given by the Tokenizer of Parser, body and title positions are counted apart.
+ */
+public class TermPositions {
+    private int[] docs;
+    private int[] bodyFreqs;
+    private int[] titleFreqs;
+    private int[] starts;       // body positions of docs[i] start at positions[starts[i]], then title positions
+    private int[] positions;    // null when only frequencies were read
+
+    TermPositions(int[] docs, int[] bodyFreqs, int[] titleFreqs, int[] starts, int[] positions) {
+        this.docs = docs;
+        this.bodyFreqs = bodyFreqs;
+        this.titleFreqs = titleFreqs;
+        this.starts = starts;
+        this.positions = positions;
+    }
+
+    /*
+     * postings of one term from segments holding different docs, in doc order, with positions only
+     * if every part has them
+     */
+    static TermPositions Merge(List<TermPositions> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int count = 0;
+        int positionCount = 0;
+        boolean withPositions = true;
+        for (TermPositions part : parts) {
+            count += part.Size();
+            withPositions &= part.HasPositions();
+        }
+        // docs of the segments may interleave after merges, so they are sorted by (doc, index)
+        long[] sortKeys = new long[count];
+        int[] ownerParts = new int[count];
+        int[] ownerIndexes = new int[count];
+        int index = 0;
+        for (int p = 0; p < parts.size(); p++) {
+            for (int i = 0; i < parts.get(p).Size(); i++) {
+                sortKeys[index] = (long) parts.get(p).docs[i] << 32 | index;
+                ownerParts[index] = p;
+                ownerIndexes[index] = i;
+                index++;
+            }
+        }
+        Arrays.sort(sortKeys);
+        int[] docs = new int[count];
+        int[] bodyFreqs = new int[count];
+        int[] titleFreqs = new int[count];
+        int[] starts = withPositions ? new int[count + 1] : null;
+        for (int i = 0; i < count; i++) {
+            int owner = (int) sortKeys[i];
+            TermPositions part = parts.get(ownerParts[owner]);
+            docs[i] = part.docs[ownerIndexes[owner]];
+            bodyFreqs[i] = part.bodyFreqs[ownerIndexes[owner]];
+            titleFreqs[i] = part.titleFreqs[ownerIndexes[owner]];
+            if (withPositions) {
+                starts[i] = positionCount;
+                positionCount += bodyFreqs[i] + titleFreqs[i];
+            }
+        }
+        int[] positions = null;
+        if (withPositions) {
+            starts[count] = positionCount;
+            positions = new int[positionCount];
+            for (int i = 0; i < count; i++) {
+                int owner = (int) sortKeys[i];
+                TermPositions part = parts.get(ownerParts[owner]);
+                System.arraycopy(part.positions, part.starts[ownerIndexes[owner]], positions, starts[i],
+                        bodyFreqs[i] + titleFreqs[i]);
+            }
+        }
+        return new TermPositions(docs, bodyFreqs, titleFreqs, starts, positions);
+    }
+
+    public int Size() {
+        return docs.length;
+    }
+
+    public int GetDoc(int i) {
+        return docs[i];
+    }
+
+    /*
+     * number of times the term appears in field of doc i
+     */
+    public int GetFreq(int i, Field field) {
+        return field == Field.TITLE ? titleFreqs[i] : bodyFreqs[i];
+    }
+
+    /*
+     * the first position of field of doc i is at GetStart(i, field) in GetPositions()
+     */
+    public int GetStart(int i, Field field) {
+        return field == Field.TITLE ? starts[i] + bodyFreqs[i] : starts[i];
+    }
+
+    public boolean HasPositions() {
+        return positions != null;
+    }
+
+    public int[] GetPositions() {
+        return positions;
+    }
+
+    /*
+     * index of doc, or of the first doc after it (Size() if none), searching from index from
+     */
+    public int Advance(int from, int doc) {
+        int step = 1;
+        int low = from;
+        int high = from;
+        // gallop then binary search, callers move forward through the docs
+        while (high < docs.length && docs[high] < doc) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, docs.length);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (docs[mid] < doc) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,60 @@
+package Indexter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Choose which segments of an incremental index are merged together.
+ *
+ * Segments are put in tiers by their number of docs: tier 0 holds the segments under FLOOR_DOCS docs,
+ * and each tier after it holds segments segmentsPerTier times bigger than the one before. Once a tier
+ * has segmentsPerTier segments they are merged into one segment of the next tier, so the number of
+ * live segments grows with the log of the number of docs, and a doc is merged again only once per tier.
+ */
+class TieredMergePolicy {
+    static final int FLOOR_DOCS = 1000;
+    static final int DEFAULT_SEGMENTS_PER_TIER = 10;
+
+    private int segmentsPerTier;
+
+    TieredMergePolicy(int segmentsPerTier) {
+        this.segmentsPerTier = Math.max(2, segmentsPerTier);
+    }
+
+    /*
+     * the segments of the lowest full tier, null if no tier is full
+     */
+    List<SegmentInfos.SegmentInfo> FindMerge(List<SegmentInfos.SegmentInfo> segments) {
+        List<SegmentInfos.SegmentInfo> sorted = new ArrayList<SegmentInfos.SegmentInfo>(segments);
+        Collections.sort(sorted, new Comparator<SegmentInfos.SegmentInfo>() {
+            public int compare(SegmentInfos.SegmentInfo a, SegmentInfos.SegmentInfo b) {
+                return a.docCount < b.docCount ? -1 : (a.docCount == b.docCount ? 0 : 1);
+            }
+        });
+        int begin = 0;
+        while (begin < sorted.size()) {
+            int tier = GetTier(sorted.get(begin).docCount);
+            int end = begin;
+            while (end < sorted.size() && GetTier(sorted.get(end).docCount) == tier) {
+                end++;
+            }
+            if (end - begin >= segmentsPerTier) {
+                return new ArrayList<SegmentInfos.SegmentInfo>(sorted.subList(begin, begin + segmentsPerTier));
+            }
+            begin = end;
+        }
+        return null;
+    }
+
+    private int GetTier(int docCount) {
+        int tier = 0;
+        long limit = FLOOR_DOCS;
+        while (docCount >= limit) {
+            tier++;
+            limit *= segmentsPerTier;
+        }
+        return tier;
+    }
+}
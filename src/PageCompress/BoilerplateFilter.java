@@ -0,0 +1,258 @@
+package PageCompress;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Split page body into text blocks and keep only the main content.
+ *
+ * A text block is the text between two block level tags. Each block is classified by its
+ * link density (words inside <a> / all words), its text density (words per 80-char line) and
+ * those of its neighbours, with the same rules as the density classifier of boilerpipe
+ * (Kohlschuetter et al., "Boilerplate Detection using Shallow Text Features").
+ * Blocks inside <nav>, <header>, <footer>, <aside> or containers whose id/class looks like
+ * a menu, footer or cookie banner, and short blocks at the very top or bottom of the page
+ * are boilerplate as well.
+ */
+public class BoilerplateFilter {
+    private static final int LINE_WIDTH = 80;
+    private static final double EDGE_POSITION = 0.1;    // first and last 10% of blocks
+    private static final int EDGE_MAX_WORDS = 10;
+    private static final Pattern BOILERPLATE_NAME = Pattern.compile(
+            "nav|menu|footer|header|sidebar|breadcrumb|cookie|banner|consent|share|social|copyright|related",
+            Pattern.CASE_INSENSITIVE);
+
+    private List<TextBlock> blocks = new ArrayList<TextBlock>();
+    private StringBuilder content = new StringBuilder();
+    private StringBuilder boilerplate = new StringBuilder();
+
+    /*
+     * one piece of text between block level tags
+     */
+    private static class TextBlock {
+        String text;
+        int wordsNum;
+        int linkedWordsNum;
+        boolean inBoilerplateContainer;
+        double linkDensity;
+        double textDensity;
+        boolean isContent;
+    }
+
+    /*
+     * classify the blocks of body, then use GetContent() and GetBoilerplate()
+     */
+    public void Process(Element body) {
+        blocks.clear();
+        content.setLength(0);
+        boilerplate.setLength(0);
+        if (body == null) {
+            return;
+        }
+        new NodeTraversor(new BlockBuilder()).traverse(body);
+        Classify();
+        for (TextBlock block : blocks) {
+            StringBuilder target = block.isContent ? content : boilerplate;
+            if (target.length() > 0) {
+                target.append(' ');
+            }
+            target.append(block.text);
+        }
+    }
+
+    public String GetContent() {
+        return content.toString();
+    }
+
+    public String GetBoilerplate() {
+        return boilerplate.toString();
+    }
+
+    /*
+     * walk the DOM, cut text at every block level tag or <br>
+     */
+    private class BlockBuilder implements NodeVisitor {
+        private StringBuilder text = new StringBuilder();
+        private int wordsNum = 0;
+        private int linkedWordsNum = 0;
+        private boolean inContainer = false;
+        private int linkDepth = 0;
+        private int containerDepth = 0;
+
+        public void head(Node node, int depth) {
+            if (node instanceof TextNode) {
+                String nodeText = ((TextNode) node).text();
+                int words = CountWords(nodeText);
+                wordsNum += words;
+                if (linkDepth > 0) {
+                    linkedWordsNum += words;
+                }
+                if (containerDepth > 0 && words > 0) {
+                    inContainer = true;
+                }
+                AppendNormalised(nodeText);
+            } else if (node instanceof Element) {
+                Element element = (Element) node;
+                if (element.isBlock() || "br".equals(element.tagName())) {
+                    Flush();
+                }
+                if ("a".equals(element.tagName())) {
+                    linkDepth++;
+                }
+                if (IsBoilerplateContainer(element)) {
+                    containerDepth++;
+                }
+            }
+        }
+
+        public void tail(Node node, int depth) {
+            if (node instanceof Element) {
+                Element element = (Element) node;
+                if (element.isBlock()) {
+                    Flush();
+                }
+                if ("a".equals(element.tagName())) {
+                    linkDepth--;
+                }
+                if (IsBoilerplateContainer(element)) {
+                    containerDepth--;
+                }
+            }
+        }
+
+        private void AppendNormalised(String nodeText) {
+            for (int i = 0; i < nodeText.length(); i++) {
+                char c = nodeText.charAt(i);
+                if (c == ' ') {
+                    if (text.length() > 0 && text.charAt(text.length() - 1) != ' ') {
+                        text.append(' ');
+                    }
+                } else {
+                    text.append(c);
+                }
+            }
+        }
+
+        private void Flush() {
+            String blockText = text.toString().trim();
+            if (wordsNum > 0 && !"".equals(blockText)) {
+                TextBlock block = new TextBlock();
+                block.text = blockText;
+                block.wordsNum = wordsNum;
+                block.linkedWordsNum = linkedWordsNum;
+                block.inBoilerplateContainer = inContainer;
+                blocks.add(block);
+            }
+            text.setLength(0);
+            wordsNum = 0;
+            linkedWordsNum = 0;
+            inContainer = false;
+        }
+    }
+
+    /*
+     * density rules, a block is decided by itself and its previous and next block
+     */
+    private void Classify() {
+        for (TextBlock block : blocks) {
+            block.linkDensity = (double) block.linkedWordsNum / block.wordsNum;
+            block.textDensity = TextDensity(block);
+        }
+        TextBlock empty = new TextBlock();
+        int size = blocks.size();
+        for (int i = 0; i < size; i++) {
+            TextBlock prev = i > 0 ? blocks.get(i - 1) : empty;
+            TextBlock curr = blocks.get(i);
+            TextBlock next = i < size - 1 ? blocks.get(i + 1) : empty;
+            boolean isContent;
+            if (curr.linkDensity <= 0.333333) {
+                if (prev.linkDensity <= 0.555556) {
+                    if (curr.textDensity <= 9) {
+                        if (next.textDensity <= 10) {
+                            isContent = prev.textDensity > 4;
+                        } else {
+                            isContent = true;
+                        }
+                    } else {
+                        isContent = next.textDensity != 0;
+                    }
+                } else {
+                    isContent = next.textDensity > 11;
+                }
+            } else {
+                isContent = false;
+            }
+            if (curr.inBoilerplateContainer) {
+                isContent = false;
+            }
+            // short blocks at the top or bottom of page are mostly menus, copyright lines...
+            double position = size == 1 ? 0.5 : (double) i / (size - 1);
+            if ((position < EDGE_POSITION || position > 1 - EDGE_POSITION) && curr.wordsNum <= EDGE_MAX_WORDS
+                    && size >= 1 / EDGE_POSITION) {
+                isContent = false;
+            }
+            curr.isContent = isContent;
+        }
+        // a page whose every block looks like boilerplate still has some content,
+        // keep the block with most words instead of returning an empty page
+        boolean hasContent = false;
+        TextBlock longest = null;
+        for (TextBlock block : blocks) {
+            hasContent |= block.isContent;
+            if (longest == null || block.wordsNum > longest.wordsNum) {
+                longest = block;
+            }
+        }
+        if (!hasContent && longest != null) {
+            longest.isContent = true;
+        }
+    }
+
+    /*
+     * number of words in wrapped lines (the last line is not counted when there are several,
+     * because it is usually not full) divided by number of those lines
+     */
+    private static double TextDensity(TextBlock block) {
+        int lines = (block.text.length() + LINE_WIDTH - 1) / LINE_WIDTH;
+        if (lines <= 1) {
+            return block.wordsNum;
+        }
+        int lastLineWords = CountWords(block.text.substring((lines - 1) * LINE_WIDTH));
+        return (double) (block.wordsNum - lastLineWords) / (lines - 1);
+    }
+
+    private static boolean IsBoilerplateContainer(Element element) {
+        String tag = element.tagName();
+        if ("nav".equals(tag) || "footer".equals(tag) || "header".equals(tag) || "aside".equals(tag)) {
+            return true;
+        }
+        String id = element.id();
+        String className = element.className();
+        return (!"".equals(id) && BOILERPLATE_NAME.matcher(id).find())
+                || (!"".equals(className) && BOILERPLATE_NAME.matcher(className).find());
+    }
+
+    private static int CountWords(String text) {
+        int count = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (!inWord) {
+                    count++;
+                    inWord = true;
+                }
+            } else if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                inWord = false;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,193 @@
+package PageCompress;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compress every ".html" file of a directory into a page file of the result directory.
+ *
+ * Files are streamed from the directory into a fixed pool (one thread per core by default)
+ * through a bounded queue, so memory only holds the pages being processed. Each thread reuses
+ * its read buffer and output builder, and pages are extracted by ExtractPageFile().
+ */
+public class BulkCompress {
+    private static final int PROGRESS_STEP = 10000;
+    private static final int QUEUE_PER_THREAD = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // a buffer grown past this by a huge page is dropped after it, so it is not kept by the thread
+    private static final int MAX_KEPT_BUFFER = 1024 * 1024;
+
+    private File dataDir;
+    private File resultDir;
+    private int threadCount;
+
+    private AtomicInteger pageCount = new AtomicInteger(0);
+    private AtomicInteger failCount = new AtomicInteger(0);
+    private AtomicLong byteCount = new AtomicLong(0);
+
+    // buffers reused by every page of the same thread
+    private static final ThreadLocal<byte[][]> READ_BUFFER = new ThreadLocal<byte[][]>() {
+        @Override
+        protected byte[][] initialValue() {
+            return new byte[][]{new byte[BUFFER_SIZE]};
+        }
+    };
+    private static final ThreadLocal<StringBuilder> WRITE_BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(BUFFER_SIZE);
+        }
+    };
+
+    public BulkCompress(File data, File result, int threads) {
+        dataDir = data;
+        resultDir = result;
+        threadCount = threads;
+    }
+
+    /*
+     * process the whole directory, return when every page is saved
+     */
+    public void Run() throws IOException {
+        long startTime = System.currentTimeMillis();
+        // when the queue is full, the reading thread compresses the page itself,
+        // this keeps the number of waiting files bounded
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(threadCount * QUEUE_PER_THREAD),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        DirectoryStream<Path> stream = Files.newDirectoryStream(dataDir.toPath());
+        try {
+            for (Path path : stream) {
+                final File file = path.toFile();
+                final String name = file.getName();
+                if (!"html".equals(GetExtension(name))) {
+                    System.out.println("File \"" + name + "\" is not a web page");
+                    continue;
+                }
+                pool.execute(new Runnable() {
+                    public void run() {
+                        ProcessOneFile(file, name.substring(0, name.length() - 5));
+                    }
+                });
+            }
+        } finally {
+            stream.close();
+            pool.shutdown();
+        }
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            System.out.println("Compression was interrupted");
+        }
+
+        double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+        double megaBytes = byteCount.get() / 1024.0 / 1024.0;
+        System.out.println(String.format("Compressed %d pages (%d failed), %.1f MB in %.1fs, %.1f MB/s",
+                pageCount.get(), failCount.get(), megaBytes, seconds, megaBytes / seconds));
+    }
+
+    /*
+     * read, compress and save one page
+     */
+    private void ProcessOneFile(File file, String pageID) {
+        try {
+            String pageHTML = ReadPage(file);
+            PageFile pf = new PageCompress(pageID, pageHTML).ExtractPageFile();
+            SavePageFile(pf);
+            int count = pageCount.incrementAndGet();
+            if (count % PROGRESS_STEP == 0) {
+                System.out.println("Compressed " + count + " pages");
+            }
+        } catch (Exception e) {
+            failCount.incrementAndGet();
+            System.out.println("Compress page " + file.getName() + " failed: " + e);
+        }
+    }
+
+    /*
+     * read the whole file into the buffer of this thread, grow it for larger files, a buffer grown
+     * past MAX_KEPT_BUFFER is replaced by a default one once the page is read
+     */
+    private String ReadPage(File file) throws IOException {
+        byte[][] holder = READ_BUFFER.get();
+        byte[] buffer = holder[0];
+        int length = 0;
+        InputStream stream = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = stream.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length == buffer.length) {
+                    byte[] larger = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, larger, 0, length);
+                    buffer = larger;
+                    holder[0] = buffer;
+                }
+            }
+        } finally {
+            stream.close();
+        }
+        byteCount.addAndGet(length);
+        String page = new String(buffer, 0, length);
+        if (buffer.length > MAX_KEPT_BUFFER) {
+            holder[0] = new byte[BUFFER_SIZE];
+        }
+        return page;
+    }
+
+    /*
+     * same format as before: #TITLE#, #SUBURLS# and #CONTENT# sections
+     */
+    private void SavePageFile(PageFile pf) throws IOException {
+        StringBuilder fileContent = WRITE_BUFFER.get();
+        fileContent.setLength(0);
+        fileContent.append("#TITLE#\n").append(pf.getTitle()).append("\n\n").append("#SUBURLS#\n");
+        for (String url : pf.getSubURLs()) {
+            fileContent.append(url).append('\n');
+        }
+        fileContent.append("\n#CONTENT#\n");
+        fileContent.append(pf.getContent());
+
+        OutputStream fos = new FileOutputStream(new File(resultDir, pf.getPageID()));
+        try {
+            fos.write(fileContent.toString().getBytes());
+        } finally {
+            fos.close();
+            if (fileContent.capacity() > MAX_KEPT_BUFFER) {
+                WRITE_BUFFER.set(new StringBuilder(BUFFER_SIZE));
+            }
+        }
+    }
+
+    /*
+     * get file extension
+     */
+    static String GetExtension(String filename) {
+        if (filename == null) {
+            return null;
+        }
+        int extensionPos = filename.lastIndexOf('.');
+        int lastUnixPos = filename.lastIndexOf('/');
+        int lastWindowsPos = filename.lastIndexOf('\\');
+        int lastSeparator = Math.max(lastUnixPos, lastWindowsPos);
+
+        int index = lastSeparator > extensionPos ? -1 : extensionPos;
+        if (index == -1) {
+            return "";
+        } else {
+            return filename.substring(index + 1);
+        }
+    }
+}
@@ -0,0 +1,572 @@
+package PageCompress;
+
+import org.jsoup.nodes.Entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Single pass HTML to text extractor, it gives the same title, body text and sub-urls as
+ * PageCompress.GetPageFile() without building a DOM.
+ *
+ * It walks the page once with a small state machine (text, tag, comment, raw text such as
+ * <script> and <style>, and the <code> blocks that GetPageFile() deletes) and writes the
+ * text into StringBuilders which are reused from page to page, so one extractor should be
+ * used by one thread only.
+ */
+public class HtmlTextExtractor {
+    // same block tags as Jsoup, entering one of them separates text by a space
+    private static final Set<String> BLOCK_TAGS = new HashSet<String>(Arrays.asList(
+            "html", "head", "body", "frameset", "script", "noscript", "style", "meta", "link", "title",
+            "frame", "noframes", "section", "nav", "aside", "hgroup", "header", "footer", "p", "h1", "h2",
+            "h3", "h4", "h5", "h6", "ul", "ol", "pre", "div", "blockquote", "hr", "address", "figure",
+            "figcaption", "form", "fieldset", "ins", "del", "s", "dl", "dt", "dd", "li", "table", "caption",
+            "thead", "tfoot", "tbody", "colgroup", "col", "tr", "th", "td", "video", "audio", "canvas",
+            "details", "menu", "plaintext", "template", "article", "main", "svg", "math"));
+    // Jsoup ignores these outside of <table>
+    private static final Set<String> TABLE_TAGS = new HashSet<String>(Arrays.asList(
+            "tr", "td", "th", "tbody", "thead", "tfoot", "caption", "col", "colgroup"));
+    // start tags which close an open <p>
+    private static final Set<String> CLOSE_P_TAGS = new HashSet<String>(Arrays.asList(
+            "address", "article", "aside", "blockquote", "center", "details", "dir", "div", "dl", "fieldset",
+            "figcaption", "figure", "footer", "header", "hgroup", "menu", "nav", "ol", "p", "section",
+            "summary", "ul", "h1", "h2", "h3", "h4", "h5", "h6", "pre", "listing", "form", "li", "dd", "dt",
+            "plaintext", "hr", "xmp"));
+    // tags allowed in <head>, any other tag means we are already in <body>
+    private static final Set<String> HEAD_TAGS = new HashSet<String>(Arrays.asList(
+            "head", "html", "title", "meta", "link", "style", "script", "base", "noscript", "template"));
+    // content of these tags is not text
+    private static final Set<String> DATA_TAGS = new HashSet<String>(Arrays.asList("script", "style"));
+    // content of these tags is text as it is, no tags or character references inside
+    private static final Set<String> RAW_TEXT_TAGS = new HashSet<String>(Arrays.asList(
+            "xmp", "iframe", "noembed", "noframes"));
+
+    private StringBuilder title = new StringBuilder();
+    private StringBuilder body = new StringBuilder();
+    private StringBuilder value = new StringBuilder();
+    private Set<String> subURLs = new HashSet<String>();
+
+    private String html;
+    private int length;
+    private boolean stripCode;
+    private boolean hasBody;
+    private boolean hasSpecialPunc;
+    private boolean inBody;
+    private boolean hasTitle;
+    private int preDepth;
+    private int tableDepth;
+    private boolean pOpen;
+    private int lowerCodeEnd;
+    private int upperCodeEnd;
+    private boolean quirksMode;
+
+    /*
+     * extract title, body text and links from page
+     */
+    public void Extract(String pageHTML) {
+        html = pageHTML;
+        length = pageHTML.length();
+        title.setLength(0);
+        body.setLength(0);
+        subURLs = new HashSet<String>();
+        // GetPageFile() only deletes <code> blocks when the page has a "<code>" tag
+        stripCode = pageHTML.indexOf("<code>") != -1 || pageHTML.indexOf("<CODE>") != -1;
+        hasBody = pageHTML.indexOf("<body") != -1 || pageHTML.indexOf("<BODY") != -1;
+        hasSpecialPunc = pageHTML.indexOf("&lt;") != -1 || pageHTML.indexOf("&gt;") != -1;
+        inBody = false;
+        hasTitle = false;
+        preDepth = 0;
+        tableDepth = 0;
+        pOpen = false;
+        lowerCodeEnd = 0;
+        upperCodeEnd = 0;
+        quirksMode = !pageHTML.regionMatches(true, FirstNonWhitespace(pageHTML), "<!DOCTYPE", 0, 9);
+
+        int i = 0;
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                i = ReadMarkup(i);
+            } else if (c == '&') {
+                i = ReadCharacterReference(i, body, false);
+            } else {
+                AppendText(c);
+                i++;
+            }
+        }
+    }
+
+    public String GetTitle() {
+        return NormaliseWhitespace(title);
+    }
+
+    /*
+     * body text after the same make up as GetPageFile(), "" if page has no <body>
+     */
+    public String GetBodyText() {
+        if (!hasBody) {
+            return "";
+        }
+        return PageCompress.MakeupBodyText(body.toString().trim(), hasSpecialPunc);
+    }
+
+    public List<String> GetSubURLs() {
+        return new ArrayList<String>(subURLs);
+    }
+
+    /*
+     * "<" in text, start with i at "<" and return the position after the markup
+     */
+    private int ReadMarkup(int i) {
+        if (stripCode && (html.startsWith("<code", i) || html.startsWith("<CODE", i))) {
+            return SkipCode(i);
+        }
+        if (i + 1 >= length) {
+            AppendText('<');
+            return i + 1;
+        }
+        char next = html.charAt(i + 1);
+        if (IsAsciiLetter(next)) {
+            return ReadStartTag(i + 1);
+        }
+        if (next == '/') {
+            if (i + 2 < length && IsAsciiLetter(html.charAt(i + 2))) {
+                return ReadEndTag(i + 2);
+            }
+            if (i + 2 < length && html.charAt(i + 2) == '>') {
+                return i + 3;
+            }
+            return SkipTo('>', i + 2);
+        }
+        if (next == '!') {
+            if (html.startsWith("<!--", i)) {
+                int end = html.indexOf("-->", i + 4);
+                return end == -1 ? length : end + 3;
+            }
+            return SkipTo('>', i + 2);
+        }
+        if (next == '?') {
+            return SkipTo('>', i + 2);
+        }
+        AppendText('<');
+        return i + 1;
+    }
+
+    /*
+     * delete <code>...</code> as GetPageFile() does, if there is no end, the rest of page is deleted
+     * but the "<" is kept
+     */
+    private int SkipCode(int i) {
+        int end = IndexOfCodeEnd(i);
+        if (end == -1 || end + 6 >= length) {
+            AppendText('<');
+            return length;
+        }
+        return end + 6;
+    }
+
+    /*
+     * read tag name and attributes, i is the first letter of name
+     */
+    private int ReadStartTag(int i) {
+        int begin = i;
+        while (i < length && !IsTagNameEnd(html.charAt(i))) {
+            i++;
+        }
+        String name = html.substring(begin, i).toLowerCase();
+        boolean selfClosing = false;
+        String href = null;
+        // attributes
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '>') {
+                break;
+            }
+            if (c == '/' || IsWhitespace(c)) {
+                selfClosing = c == '/';
+                i++;
+                continue;
+            }
+            int nameBegin = i;
+            while (i < length && !IsAttributeNameEnd(html.charAt(i))) {
+                i++;
+            }
+            String attribute = html.substring(nameBegin, i);
+            while (i < length && IsWhitespace(html.charAt(i))) {
+                i++;
+            }
+            if (i < length && html.charAt(i) == '=') {
+                i++;
+                while (i < length && IsWhitespace(html.charAt(i))) {
+                    i++;
+                }
+                value.setLength(0);
+                i = ReadAttributeValue(i);
+                if (href == null && "a".equals(name) && attribute.equalsIgnoreCase("href")) {
+                    href = value.toString();
+                }
+            }
+            selfClosing = false;
+        }
+        if (i >= length) {
+            // tag is not closed before end of page, Jsoup drops it
+            return length;
+        }
+        i++;
+
+        // like Jsoup, body begins at the first tag which cannot be in <head>,
+        // and <html>, <head> and <body> never separate text
+        if (!HEAD_TAGS.contains(name)) {
+            inBody = true;
+        }
+        if ("table".equals(name)) {
+            tableDepth++;
+        }
+        if (CLOSE_P_TAGS.contains(name) || ("table".equals(name) && !quirksMode)) {
+            pOpen = "p".equals(name);
+        }
+        if (inBody && (BLOCK_TAGS.contains(name) || "br".equals(name)) && !"html".equals(name)
+                && !"head".equals(name) && !"body".equals(name)
+                && (tableDepth > 0 || !TABLE_TAGS.contains(name))) {
+            AppendBlockSeparator();
+        }
+        if (href != null && !"".equals(href)) {
+            subURLs.add(href);
+        }
+
+        if (DATA_TAGS.contains(name)) {
+            return SkipRawText(i, name, false);
+        }
+        if (RAW_TEXT_TAGS.contains(name)) {
+            return SkipRawText(i, name, true);
+        }
+        if ("title".equals(name)) {
+            return ReadTitle(i);
+        }
+        if ("textarea".equals(name)) {
+            preDepth++;
+            i = ReadEscapableRawText(i, "textarea", body);
+            preDepth--;
+            return i;
+        }
+        if ("plaintext".equals(name)) {
+            preDepth++;
+            while (i < length) {
+                AppendText(html.charAt(i++));
+            }
+            return i;
+        }
+        if ("pre".equals(name) && !selfClosing) {
+            preDepth++;
+        }
+        return i;
+    }
+
+    /*
+     * i is the first letter of name
+     */
+    private int ReadEndTag(int i) {
+        int begin = i - 2;
+        while (i < length && !IsTagNameEnd(html.charAt(i))) {
+            i++;
+        }
+        String name = html.substring(begin + 2, i).toLowerCase();
+        int end = SkipTo('>', i);
+        if ("pre".equals(name) && preDepth > 0) {
+            preDepth--;
+        } else if ("table".equals(name) && tableDepth > 0) {
+            tableDepth--;
+        } else if ("p".equals(name)) {
+            // Jsoup makes an empty <p> for </p> without <p>, which separates text
+            if (!pOpen && inBody) {
+                AppendBlockSeparator();
+            }
+            pOpen = false;
+        }
+        // GetPageFile() puts a space before </option> and </name>
+        if (html.startsWith("</option>", begin) || html.startsWith("</name>", begin)) {
+            AppendText(' ');
+        }
+        return end;
+    }
+
+    /*
+     * value may be double quoted, single quoted or unquoted, it is written to "value"
+     */
+    private int ReadAttributeValue(int i) {
+        if (i >= length) {
+            return i;
+        }
+        char quote = html.charAt(i);
+        if (quote == '"' || quote == '\'') {
+            i++;
+            while (i < length && html.charAt(i) != quote) {
+                if (html.charAt(i) == '&') {
+                    i = ReadCharacterReference(i, value, true);
+                } else {
+                    value.append(html.charAt(i++));
+                }
+            }
+            return i < length ? i + 1 : i;
+        }
+        while (i < length && !IsWhitespace(html.charAt(i)) && html.charAt(i) != '>') {
+            if (html.charAt(i) == '&') {
+                i = ReadCharacterReference(i, value, true);
+            } else {
+                value.append(html.charAt(i++));
+            }
+        }
+        return i;
+    }
+
+    /*
+     * skip content of <script>, <style>... until its end tag, keep it as text if asked
+     */
+    private int SkipRawText(int i, String name, boolean keepText) {
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                if (stripCode && (html.startsWith("<code", i) || html.startsWith("<CODE", i))) {
+                    i = SkipCode(i);
+                    continue;
+                }
+                if (IsEndTagOf(i, name)) {
+                    return i;
+                }
+            }
+            if (keepText) {
+                AppendText(c);
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private int ReadTitle(int i) {
+        if (hasTitle) {
+            return ReadEscapableRawText(i, "title", inBody ? body : null);
+        }
+        hasTitle = true;
+        int begin = title.length();
+        i = ReadEscapableRawText(i, "title", title);
+        // <title> in body is also body text
+        if (inBody) {
+            String text = title.substring(begin);
+            for (int j = 0; j < text.length(); j++) {
+                AppendText(text.charAt(j));
+            }
+        }
+        return i;
+    }
+
+    /*
+     * content of <title> and <textarea>: character references are decoded but no tags inside
+     */
+    private int ReadEscapableRawText(int i, String name, StringBuilder target) {
+        StringBuilder sink = target == null ? value : target;
+        value.setLength(0);
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                if (stripCode && (html.startsWith("<code", i) || html.startsWith("<CODE", i))) {
+                    i = SkipCode(i);
+                    continue;
+                }
+                if (IsEndTagOf(i, name)) {
+                    return i;
+                }
+            }
+            if (c == '&') {
+                if (sink == body) {
+                    i = ReadCharacterReference(i, value, false);
+                    for (int j = 0; j < value.length(); j++) {
+                        AppendText(value.charAt(j));
+                    }
+                    value.setLength(0);
+                } else {
+                    i = ReadCharacterReference(i, sink, false);
+                }
+                continue;
+            }
+            if (sink == body) {
+                AppendText(c);
+            } else {
+                sink.append(c);
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /*
+     * decode character reference the same way as Jsoup, unknown references stay as they are
+     */
+    private int ReadCharacterReference(int i, StringBuilder target, boolean inAttribute) {
+        int pos = i + 1;
+        if (pos < length && html.charAt(pos) == '#') {
+            pos++;
+            boolean hex = pos < length && (html.charAt(pos) == 'x' || html.charAt(pos) == 'X');
+            if (hex) {
+                pos++;
+            }
+            int begin = pos;
+            int codePoint = 0;
+            while (pos < length && Character.digit(html.charAt(pos), hex ? 16 : 10) != -1
+                    && IsAsciiLetterOrDigit(html.charAt(pos))) {
+                if (codePoint <= Character.MAX_CODE_POINT) {
+                    codePoint = codePoint * (hex ? 16 : 10) + Character.digit(html.charAt(pos), hex ? 16 : 10);
+                }
+                pos++;
+            }
+            if (pos == begin) {
+                AppendLiteral('&', target);
+                return i + 1;
+            }
+            if (pos < length && html.charAt(pos) == ';') {
+                pos++;
+            }
+            if (codePoint > Character.MAX_CODE_POINT || (codePoint >= 0xD800 && codePoint <= 0xDFFF)) {
+                AppendLiteral('\uFFFD', target);
+            } else {
+                char[] chars = Character.toChars(codePoint);
+                for (char ch : chars) {
+                    AppendLiteral(ch, target);
+                }
+            }
+            return pos;
+        }
+        int begin = pos;
+        while (pos < length && IsAsciiLetter(html.charAt(pos))) {
+            pos++;
+        }
+        while (pos < length && html.charAt(pos) >= '0' && html.charAt(pos) <= '9') {
+            pos++;
+        }
+        if (pos == begin) {
+            AppendLiteral('&', target);
+            return i + 1;
+        }
+        String name = html.substring(begin, pos);
+        boolean looksLegit = pos < length && html.charAt(pos) == ';';
+        boolean found = Entities.isBaseNamedEntity(name) || (Entities.isNamedEntity(name) && looksLegit);
+        if (!found) {
+            AppendLiteral('&', target);
+            return i + 1;
+        }
+        if (inAttribute && pos < length && !looksLegit
+                && (IsAsciiLetterOrDigit(html.charAt(pos)) || html.charAt(pos) == '=')) {
+            AppendLiteral('&', target);
+            return i + 1;
+        }
+        AppendLiteral(Entities.getCharacterByName(name), target);
+        return looksLegit ? pos + 1 : pos;
+    }
+
+    private void AppendLiteral(char c, StringBuilder target) {
+        if (target == body) {
+            AppendText(c);
+        } else {
+            target.append(c);
+        }
+    }
+
+    /*
+     * append a char of text, whitespace is collapsed to one space except in <pre> and <textarea>
+     */
+    private void AppendText(char c) {
+        if (!inBody) {
+            // text before <body> begins the body, except whitespace
+            if (IsWhitespace(c)) {
+                return;
+            }
+            inBody = true;
+        }
+        if (preDepth > 0 || !IsWhitespace(c)) {
+            body.append(c);
+        } else if (body.length() == 0 || body.charAt(body.length() - 1) != ' ') {
+            body.append(' ');
+        }
+    }
+
+    private void AppendBlockSeparator() {
+        if (body.length() > 0 && body.charAt(body.length() - 1) != ' ') {
+            body.append(' ');
+        }
+    }
+
+    private boolean IsEndTagOf(int i, String name) {
+        if (!html.startsWith("</", i) || !html.regionMatches(true, i + 2, name, 0, name.length())) {
+            return false;
+        }
+        int end = i + 2 + name.length();
+        return end >= length || IsTagNameEnd(html.charAt(end));
+    }
+
+    private int SkipTo(char c, int i) {
+        int end = html.indexOf(c, i);
+        return end == -1 ? length : end + 1;
+    }
+
+    /*
+     * the last positions found are kept, so the page is searched only once for each of them
+     */
+    private int IndexOfCodeEnd(int from) {
+        if (lowerCodeEnd != -1 && lowerCodeEnd < from) {
+            lowerCodeEnd = html.indexOf("/code>", from);
+        }
+        if (upperCodeEnd != -1 && upperCodeEnd < from) {
+            upperCodeEnd = html.indexOf("/CODE>", from);
+        }
+        if (lowerCodeEnd == -1) {
+            return upperCodeEnd;
+        }
+        if (upperCodeEnd == -1) {
+            return lowerCodeEnd;
+        }
+        return Math.min(lowerCodeEnd, upperCodeEnd);
+    }
+
+    private static int FirstNonWhitespace(String text) {
+        int i = 0;
+        while (i < text.length() && IsWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static String NormaliseWhitespace(StringBuilder text) {
+        StringBuilder res = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!IsWhitespace(c)) {
+                res.append(c);
+            } else if (res.length() > 0 && res.charAt(res.length() - 1) != ' ') {
+                res.append(' ');
+            }
+        }
+        return res.toString().trim();
+    }
+
+    private static boolean IsWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+
+    private static boolean IsTagNameEnd(char c) {
+        return IsWhitespace(c) || c == '/' || c == '>';
+    }
+
+    private static boolean IsAttributeNameEnd(char c) {
+        return IsWhitespace(c) || c == '/' || c == '>' || c == '=';
+    }
+
+    private static boolean IsAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean IsAsciiLetterOrDigit(char c) {
+        return IsAsciiLetter(c) || (c >= '0' && c <= '9');
+    }
+}
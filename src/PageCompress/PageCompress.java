@@ -20,12 +20,29 @@ import java.util.List;
 public class PageCompress {
     private String pageID;  // file name
     private String pageHTML;    // page content (tag+text)
+    private boolean removeBoilerplate = false;  // keep only main content of body
+
+    // extractor keeps its buffers between pages, so each thread has its own
+    private static final ThreadLocal<HtmlTextExtractor> EXTRACTOR = new ThreadLocal<HtmlTextExtractor>() {
+        @Override
+        protected HtmlTextExtractor initialValue() {
+            return new HtmlTextExtractor();
+        }
+    };
 
     public PageCompress(String name, String page) {
         pageID = name;
         pageHTML = page;
     }
 
+    /*
+     * when it is on, navigation bars, footers, cookie banners... are dropped from content
+     * and kept separately in PageFile.getBoilerplate(), see BoilerplateFilter
+     */
+    public void SetRemoveBoilerplate(boolean remove) {
+        removeBoilerplate = remove;
+    }
+
     /*
      * We use "Jsoup" to extract data that we need from HTML
      * "Jsoup" is much more efficient and stable then "Jtidy",
@@ -54,9 +71,17 @@ public class PageCompress {
         // get page body text content
         // in some pages, they don't have <body>...</body>
         String bodyText = "";
+        String boilerplateText = "";
         if (pageHTML.indexOf("<body") != -1 || pageHTML.indexOf("<BODY") != -1) {
-            bodyText = doc.body().text();
-            bodyText = MakeupPageBodyContent(bodyText, hasSpecialPunc);
+            if (removeBoilerplate) {
+                BoilerplateFilter filter = new BoilerplateFilter();
+                filter.Process(doc.body());
+                bodyText = MakeupPageBodyContent(filter.GetContent(), hasSpecialPunc);
+                boilerplateText = MakeupPageBodyContent(filter.GetBoilerplate(), hasSpecialPunc);
+            } else {
+                bodyText = doc.body().text();
+                bodyText = MakeupPageBodyContent(bodyText, hasSpecialPunc);
+            }
             // bodyText = bodyText.replace("&nbsp", " ");
         }
 
@@ -72,7 +97,34 @@ public class PageCompress {
         }
         List<String> uniqueSubURLs = new ArrayList<>(subURLs);
 
-        PageFile pageFile = new PageFile(pageID, title, uniqueSubURLs, bodyText);
+        PageFile pageFile = new PageFile(pageID, title, uniqueSubURLs, bodyText, boilerplateText);
+        return pageFile;
+    }
+
+    /*
+     * Same result as GetPageFile(), but use HtmlTextExtractor to walk the page once
+     * instead of Jsoup DOM and string surgery, much faster for large pages
+     * boilerplate removal needs the DOM, so that mode still goes through GetPageFile()
+     */
+    public PageFile ExtractPageFile() throws Exception {
+
+        if (removeBoilerplate) {
+            return GetPageFile();
+        }
+
+        if (pageID == null || pageID.equals("")) {
+            throw new Exception("pageID cannot be empty!");
+        }
+
+        HtmlTextExtractor extractor = EXTRACTOR.get();
+        extractor.Extract(pageHTML);
+
+        String title = extractor.GetTitle();
+        if (title == null || title.equals("")) {
+            title = "NOTITLE";
+        }
+
+        PageFile pageFile = new PageFile(pageID, title, extractor.GetSubURLs(), extractor.GetBodyText());
         return pageFile;
     }
 
@@ -92,23 +144,8 @@ public class PageCompress {
         // delete imbeded <code> tag
         pageHTML = pageHTML.replace("<CODE", "<code");
         pageHTML = pageHTML.replace("/CODE>", "/code>");
-        String res = pageHTML;
-        if (res.indexOf("<code>") != -1) {
-            int index = 0;
-            int iEndCode;
-            while ((index = res.indexOf("<code")) != -1) {
-                iEndCode = res.indexOf("/code>",index) + 5;
-                if (iEndCode < index) {
-                    iEndCode = res.length() - 1;
-                }
-                // delete <code>...</code>
-                if (iEndCode < res.length() - 1) {
-                    res = res.substring(0, index) + res.substring(iEndCode+1);
-                } else {
-                    res = res.substring(0, index+1);
-                }
-            }
-            return res;
+        if (pageHTML.indexOf("<code>") != -1) {
+            return DeleteBlocks(pageHTML, "<code", "/code>");
         } else {
             return pageHTML;
         }
@@ -126,46 +163,29 @@ public class PageCompress {
     }
 
     private String MakeupPageBodyContent(String content, boolean hasSpecialPunc) {
-        // skip<script> and <style>
+        return MakeupBodyText(content, hasSpecialPunc);
+    }
+
+    /*
+     * skip <script> and <style> left in body text,
+     * and delete <...> if text has no special punctuation
+     * shared with HtmlTextExtractor
+     */
+    static String MakeupBodyText(String content, boolean hasSpecialPunc) {
+        if (content.indexOf('<') == -1) {
+            return content;
+        }
         String modifyContent = content;
-        modifyContent.replace("<SCRIPT", "<script");
-        modifyContent.replace("<STYLE", "<style");
-        modifyContent.replace("/SCRIPT>", "/script>");
-        modifyContent.replace("/STYLE>", "/style>");
+        modifyContent = modifyContent.replace("<SCRIPT", "<script");
+        modifyContent = modifyContent.replace("<STYLE", "<style");
+        modifyContent = modifyContent.replace("/SCRIPT>", "/script>");
+        modifyContent = modifyContent.replace("/STYLE>", "/style>");
 
         // delete <script>...</script>
-        if (modifyContent.indexOf("<script") != -1) {
-            int index = 0;
-            int iEnd;
-            while ((index = modifyContent.indexOf("<script")) != -1) {
-                iEnd = modifyContent.indexOf("/script>",index) + 7;
-                if (iEnd < index) {
-                    iEnd = modifyContent.length() - 1;
-                }
-                if (iEnd < modifyContent.length() - 1) {
-                    modifyContent = modifyContent.substring(0, index) + modifyContent.substring(iEnd+1);
-                } else {
-                    modifyContent = modifyContent.substring(0, index+1);
-                }
-            }
-        }
+        modifyContent = DeleteBlocks(modifyContent, "<script", "/script>");
 
         // delete <style>...</style>
-        if (modifyContent.indexOf("<style") != -1) {
-            int index = 0;
-            int iEnd;
-            while ((index = modifyContent.indexOf("<style")) != -1) {
-                iEnd = modifyContent.indexOf("/style>",index) + 6;
-                if (iEnd < index) {
-                    iEnd = modifyContent.length() - 1;
-                }
-                if (iEnd < modifyContent.length() - 1) {
-                    modifyContent = modifyContent.substring(0, index) + modifyContent.substring(iEnd+1);
-                } else {
-                    modifyContent = modifyContent.substring(0, index+1);
-                }
-            }
-        }
+        modifyContent = DeleteBlocks(modifyContent, "<style", "/style>");
 
         // hasSpecialPunc is true means in text has "&lt;" (<) or "&gt;" (>)
         // then we cannot do second <tag> pass
@@ -176,32 +196,56 @@ public class PageCompress {
                 // flag: true means is in <>; false means not in <>
                 boolean flag = false;
                 int count = 0;
-                String res = "";
+                StringBuilder res = new StringBuilder(modifyContent.length());
                 for (int i = 0; i < modifyContent.length(); i++) {
+                    char c = modifyContent.charAt(i);
                     if (flag) {
-                        if (modifyContent.charAt(i) == '>') {
+                        if (c == '>') {
                             count--;
                             if (count == 0) {
                                 flag = false;
                             }
-                        } else if (modifyContent.charAt(i) == '<'){
+                        } else if (c == '<'){
                             count++;
-                        } else {
-                            continue;
                         }
                     } else {
-                        if (modifyContent.charAt(i) == '<') {
+                        if (c == '<') {
                             count++;
                             flag = true;
                         } else {
-                            res += modifyContent.charAt(i);
+                            res.append(c);
                         }
                     }
                 }
-                return res;
+                return res.toString();
             } else {
                 return modifyContent;
             }
         }
     }
+
+    /*
+     * delete every begin...end block in one pass
+     * if the last block has no end (or ends the text), only its first char "<" is kept
+     */
+    static String DeleteBlocks(String text, String begin, String end) {
+        int index = text.indexOf(begin);
+        if (index == -1) {
+            return text;
+        }
+        StringBuilder res = new StringBuilder(text.length());
+        int from = 0;
+        while (index != -1) {
+            res.append(text, from, index);
+            int iEnd = text.indexOf(end, index);
+            if (iEnd == -1 || iEnd + end.length() >= text.length()) {
+                res.append(text.charAt(index));
+                return res.toString();
+            }
+            from = iEnd + end.length();
+            index = text.indexOf(begin, from);
+        }
+        res.append(text, from, text.length());
+        return res.toString();
+    }
 }
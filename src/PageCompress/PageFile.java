@@ -11,6 +11,7 @@ public class PageFile {
     private String title;
     private List<String> subURLs;
     private String content;
+    private String boilerplate;     // text dropped by boilerplate removal, empty if not used
 
     public PageFile() {
         subURLs = new ArrayList<String>();
@@ -21,6 +22,12 @@ public class PageFile {
         title = t;
         subURLs = urls;
         content = c;
+        boilerplate = "";
+    }
+
+    public PageFile(String id, String t, List<String> urls, String c, String b) {
+        this(id, t, urls, c);
+        boilerplate = b;
     }
 
     public String getPageID() {
@@ -35,6 +42,10 @@ public class PageFile {
         return content;
     }
 
+    public String getBoilerplate() {
+        return boilerplate;
+    }
+
     public List<String> getSubURLs() {
         return subURLs;
     }
@@ -0,0 +1,76 @@
+package PageCompress;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keep the original HTML of a crawled page next to its ".page" file, so that
+ * extraction can be re-run later without fetching the web again.
+ *
+ * A raw page file is gzip compressed UTF-8 text, the first line is the url
+ * of the page and the rest is the HTML exactly as it was downloaded.
+ */
+public class RawPageStore {
+    public static final String RAW_EXTENSION = ".html.gz";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /*
+     * save raw page to "path", url at first line and HTML after it
+     */
+    public static void SaveRawPage(String path, String url, String pageHTML) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(path), BUFFER_SIZE), StandardCharsets.UTF_8));
+        try {
+            writer.write(url);
+            writer.write('\n');
+            writer.write(pageHTML);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /*
+     * read raw page from file
+     * return {url, pageHTML}
+     */
+    public static String[] ReadRawPage(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE), StandardCharsets.UTF_8));
+        try {
+            String url = reader.readLine();
+            if (url == null) {
+                throw new IOException("Raw page " + file.getName() + " is empty");
+            }
+            StringBuilder pageHTML = new StringBuilder();
+            char[] buffer = new char[BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                pageHTML.append(buffer, 0, read);
+            }
+            return new String[]{url, pageHTML.toString()};
+        } finally {
+            reader.close();
+        }
+    }
+
+    /*
+     * get pageID from raw page file name, e.g. 1_2_3.html.gz -> 1_2_3
+     */
+    public static String GetPageID(File file) {
+        String name = file.getName();
+        if (!name.endsWith(RAW_EXTENSION)) {
+            return null;
+        }
+        return name.substring(0, name.length() - RAW_EXTENSION.length());
+    }
+}
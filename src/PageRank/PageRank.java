@@ -1,6 +1,14 @@
 package PageRank;
 
+import Indexter.DocRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.BufferedWriter;
@@ -19,7 +27,11 @@ import java.util.HashSet;
  */
 public class PageRank {
     private static final String USAGE =
-            "USAGE: java PageRank [-mapPath MAP_PATH] [-filePath FILE_PATH] [-savePath SAVE_PATH] [-f Parameter_F]";
+            "USAGE: java PageRank [-mapPath MAP_PATH] [-filePath FILE_PATH] [-savePath SAVE_PATH] [-f Parameter_F] " +
+                    "[-docs DOCS_MAP]";
+    // page ranks indexed by the doc IDs of Indexter, written when the doc registry is given
+    public static final String RANK_FILE = "pageRank.bin";
+    private static final int RANK_MAGIC = 0x57534552;   // "WSER"
     private static HashMap<Integer, HashMap<String, String>> urlToId =
             new  HashMap<Integer, HashMap<String, String>>();
     private static HashMap<Integer, HashMap<String, Page>> idToPage =
@@ -31,7 +43,7 @@ public class PageRank {
     /**
      * This method is the overall process
      */
-    private static void run(String mapPath, String filePath, String savePath, double f) {
+    private static void run(String mapPath, String filePath, String savePath, double f, String docsPath) {
         try {
             loadMap(mapPath);
         } catch (IOException e) {
@@ -51,6 +63,14 @@ public class PageRank {
             System.out.println("Write results unsuccessful");
             System.exit(1);
         }
+        if (docsPath != null) {
+            try {
+                saveDocRanks(result, DocRegistry.Read(new File(docsPath)), savePath);
+            } catch (IOException e) {
+                System.out.println("Write ranks by doc ID unsuccessful: " + e.getMessage());
+                System.exit(1);
+            }
+        }
         System.out.println("finished");
     }
 
@@ -211,6 +231,64 @@ public class PageRank {
         }
     }
 
+    /**
+     * This method saves page ranks as one array indexed by doc ID (pages not ranked get 0),
+     * so the retriever can load them into a double[] without any page ID lookup.
+     * Format: [int RANK_MAGIC] [int docCount] [double rank] * docCount
+     */
+    private static void saveDocRanks(double[] result, DocRegistry registry, String savePath)
+            throws IOException {
+        if (!savePath.endsWith(File.separator)) {
+            savePath += File.separator;
+        }
+        double[] docRanks = new double[registry.Size()];
+        int ranked = 0;
+        for (int i = 0; i < pageList.size(); i++) {
+            int docID = registry.GetDocID(pageList.get(i).getId());
+            if (docID >= 0) {
+                docRanks[docID] = result[i];
+                ranked++;
+            }
+        }
+        writeDocRanks(docRanks, savePath + RANK_FILE);
+        System.out.println(ranked + " of " + docRanks.length + " docs have page rank");
+    }
+
+    /**
+     * This method writes the ranks of all docs, indexed by doc ID, in the format of saveDocRanks()
+     */
+    public static void writeDocRanks(double[] docRanks, String rankFile) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(rankFile)));
+        try {
+            out.writeInt(RANK_MAGIC);
+            out.writeInt(docRanks.length);
+            for (double rank: docRanks) {
+                out.writeDouble(rank);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * This method loads the ranks written by saveDocRanks()
+     */
+    public static double[] loadDocRanks(String rankFile) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(rankFile)));
+        try {
+            if (in.readInt() != RANK_MAGIC) {
+                throw new IOException(rankFile + " is not a page rank file");
+            }
+            double[] docRanks = new double[in.readInt()];
+            for (int i = 0; i < docRanks.length; i++) {
+                docRanks[i] = in.readDouble();
+            }
+            return docRanks;
+        } finally {
+            in.close();
+        }
+    }
+
     /**
      * This method saves the parent-child relationship in the page object
      */
@@ -425,7 +503,7 @@ public class PageRank {
     }
 
     private static void checkArgs(String[] args) {
-        if (args.length != 8) {
+        if (args.length != 8 && args.length != 10) {
             System.out.println(USAGE);
             System.exit(1);
         }
@@ -453,6 +531,10 @@ public class PageRank {
             System.out.println(USAGE);
             System.exit(1);
         }
+        if (args.length == 10 && !args[8].equals("-docs")) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
         if (args[6].equals("-f")) {
             double f = 0;
             try {
@@ -491,6 +573,7 @@ public class PageRank {
 
     public static void main(String[] args) {
         checkArgs(args);
-        run(args[1], args[3], args[5], Double.parseDouble(args[7]));
+        String docsPath = args.length == 10 ? args[9] : null;
+        run(args[1], args[3], args[5], Double.parseDouble(args[7]), docsPath);
     }
 }
@@ -1,9 +1,5 @@
 package Parser;
 
-import javax.mail.internet.AddressException;
-import javax.mail.internet.InternetAddress;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -16,261 +12,85 @@ public class Parser {
     private Set<String> StopWordList;
     private List<String> resTokens;
     private List<String> tokensType;
+    private List<Integer> tokensPosition;
+    private List<Integer> tokensOffset;
 
-    private static final int    DIFF_DIGIT_LETTER       = 5;
-    private static final int    TOKEN_LENGTH_THRESHOLD  = 30;
-    private static final String DELIMS_1            = "[ \n\r\t ]+";
-    private static final String DELIMS_2            = "[~#%&*{}\\:<>?/|!$=+;_()\"^]+";
-    private static final String IS_ENGLISH_REGEX    = "^[ \\w \\d \\s \\. \\& \\+ \\- \\, \\! \\@ \\# \\$ \\% \\^ \\* \\( \\) \\; \\\\ \\/ \\| \\< \\> \\\" \\' \\? \\= \\: \\[ \\] ]*$";
+    // tokenizer keeps its buffers between texts, so each thread has its own
+    private static final ThreadLocal<Tokenizer> TOKENIZER = new ThreadLocal<Tokenizer>();
 
     public Parser(String str, Set<String> stopwordlist) {
         content = str;
         StopWordList = stopwordlist;
         resTokens = new ArrayList<String>();
         tokensType = new ArrayList<String>();
-    }
-
-    public void Parse() {
-        // we need use split method twice
-        // first use " " to split whose content
-        // then use special characters to split token
-        // the reason do make this design is that using other character to splic content
-        // might broken a whole token, such as URL
-        // be careful, in DELIMS_1 the first space " " is different with the last space " "
-        String[] tokens = content.split(DELIMS_1);
-        for (String token : tokens) {
-            // delete useless chars at token's head and tail
-            // also can filter those token which are not english word
-            String tempToken = FilterTwoSidePunctuation(token);
-            // it is possible that after filter two side punctuation, temptoken becomes ""
-            if ("".equals(tempToken)) {
-                continue;
-            }
-
-            // stop word list
-            if (StopWordList.contains(tempToken.toLowerCase())) {
-                resTokens.add(tempToken);
-                tokensType.add("STOPWORD");
-                continue;
-            }
-
-            // check if it is URL
-            if (IsValidURL(tempToken)) {
-                resTokens.add(tempToken);
-                tokensType.add("URL");
-                continue;
-            }
-
-            // check if it is email address
-            // if it is email address, store it to a special file
-            // which is only for email
-            // the file name is "EMAIL" and the format is:
-            // email    pageID (same line, seperator: \t)
-            if (IsValidEmailAddress(tempToken)) {
-                resTokens.add(tempToken);
-                tokensType.add("EMAIL");
-                continue;
-            }
-
-            // we can use ldpClass to know the statistic value of token for letter, digit and punctuation
-            LDPClass ldpClass = GetLDPClass(tempToken);
-
-            // check if doesn't has letter
-            // e.g. 12:30
-            if (!ldpClass.hasLetter) {
-                resTokens.add(tempToken);
-                tokensType.add("NUM");
-                continue;
-            }
-
-            // check if token only contains english characters, digits and punctuation
-            if (!IsEnglish(tempToken)) {
-                continue;
-            }
-
-            // skip the case that token only has digit and letter,
-            // and the number of digit is much more than that of letter
-            // or the length of token is over-long
-            if (!ldpClass.hasPunctuation) {
-                int diff = ldpClass.digitNum - ldpClass.letterNum;
-                if (diff >= DIFF_DIGIT_LETTER) {
-                    continue;
-                }
-                if (ldpClass.letterNum + ldpClass.digitNum > TOKEN_LENGTH_THRESHOLD) {
-                    continue;
-                }
-            }
-
-            // second place to use split
-            // since we already make sure that the token is not email and url
-            // use characters are not allowed to use in file or folder name: ~#%&*{}\:<>?/|
-            // and use characters is not valid in english word such as + ;
-            // cannot use ",", because number can have it like 100,000
-            if (ldpClass.hasPunctuation) {
-                String[] smallTokens = tempToken.split(DELIMS_2);
-                if (smallTokens.length > 1) {
-                    for (String smallToken : smallTokens) {
-                        String modifySmallToken = FilterTwoSidePunctuation(smallToken);
-
-                        // stop word list
-                        if (StopWordList.contains(modifySmallToken.toLowerCase())) {
-                            resTokens.add(modifySmallToken);
-                            tokensType.add("STOPWORD");
-                            continue;
-                        }
-
-                        // email
-                        if (IsValidEmailAddress(modifySmallToken)) {
-                            resTokens.add(modifySmallToken);
-                            tokensType.add("EMAIL");
-                            continue;
-                        }
-
-                        LDPClass tempLDPClass = GetLDPClass(modifySmallToken);
-                        if (!tempLDPClass.hasLetter) {
-                            resTokens.add(modifySmallToken);
-                            tokensType.add("NUM");
-                            continue;
-                        }
-
-                        if (!tempLDPClass.hasPunctuation) {
-                            int tempDiff = tempLDPClass.digitNum - tempLDPClass.letterNum;
-                            if (tempDiff >= DIFF_DIGIT_LETTER) {
-                                continue;
-                            }
-                            if (tempLDPClass.letterNum + tempLDPClass.digitNum > TOKEN_LENGTH_THRESHOLD) {
-                                continue;
-                            }
-                        } else {
-                            // if token has punctuation (actually only has "-" or "'" now)
-                            // we just consider diff between num of digits and that of letter
-                            int tempDiff = tempLDPClass.digitNum - tempLDPClass.letterNum;
-                            if (tempDiff >= DIFF_DIGIT_LETTER) {
-                                continue;
-                            }
-                        }
-
-                        resTokens.add(modifySmallToken);
-                        tokensType.add("WORD");
-                    }
-                } else {
-                    // until know, we can sure that punctuations that the token has
-                    // only include "-" or "'"
-                    int tempDiff = ldpClass.digitNum - ldpClass.letterNum;
-                    if (tempDiff >= DIFF_DIGIT_LETTER) {
-                        continue;
-                    }
-                    resTokens.add(smallTokens[0]);
-                    tokensType.add("WORD");
-                }
-            } else {
-                // if second delims doesn't splice the token
-                resTokens.add(tempToken);
-                tokensType.add("WORD");
-            }
-        }
+        tokensPosition = new ArrayList<Integer>();
+        tokensOffset = new ArrayList<Integer>();
     }
 
     /*
-     * filter punctuations at token's head and tail
-     * e.g. tomorrow. -> tomorrow       "aaa" -> aaa
-     * if token only has punctuation or other language character, return ""
+     * Tokens are found by Tokenizer in one pass over the text, the rules are the same as before:
+     * first split content by spaces, then
+     * delete useless chars at token's head and tail, which also filters tokens that are not english words,
+     * then check stop word, URL, email address and number,
+     * skip tokens which have much more digits than letters or are over-long,
+     * and split the rest again by characters which are not allowed in file or folder name: ~#%&*{}\:<>?/|
+     * or not valid in english word such as + ; (but not ",", because number can have it like 100,000)
      */
-    private String FilterTwoSidePunctuation(String token) {
-        int begin = 0;
-        int end = token.length() - 1;
-        while (begin < token.length()) {
-            if (!Character.isLetterOrDigit(token.charAt(begin))) {
-                begin++;
-            } else {
-                break;
-            }
-        }
-        while (end >= 0) {
-            if (!Character.isLetterOrDigit(token.charAt(end))) {
-                end--;
-            } else {
-                break;
-            }
-        }
-        if (begin <= end) {
-            return token.substring(begin, end+1);
-        } else {
-            return "";
+    public void Parse() {
+        Tokenizer tokenizer = GetTokenizer();
+        tokenizer.Tokenize(content);
+        for (int i = 0; i < tokenizer.GetCount(); i++) {
+            resTokens.add(tokenizer.GetToken(i));
+            tokensType.add(tokenizer.GetType(i).name());
+            tokensPosition.add(tokenizer.GetPosition(i));
+            tokensOffset.add(tokenizer.GetOffset(i));
         }
     }
 
     /*
-     * Check whether string is valid URL
+     * same tokens as Parse(), but push them to sink one by one,
+     * the token lists stay empty
      */
-    private boolean IsValidURL(String token) {
-        boolean result = true;
-        try {
-            URL url = new URL(token);
-        } catch (MalformedURLException e) {
-            result = false;
-        }
-        return result;
+    public void Parse(TokenSink sink) {
+        GetTokenizer().Tokenize(content, sink);
     }
 
-    /*
-     * Check whether string is a email address
-     */
-    private boolean IsValidEmailAddress(String token) {
-        boolean result = true;
-        try {
-            InternetAddress emailAddr = new InternetAddress(token);
-            emailAddr.validate();
-        } catch (AddressException ex) {
-            result = false;
-        } catch (Exception e) {
-            result = false;
+    private Tokenizer GetTokenizer() {
+        Tokenizer tokenizer = TOKENIZER.get();
+        if (tokenizer == null || tokenizer.GetStopWords() != StopWordList) {
+            tokenizer = new Tokenizer(StopWordList);
+            TOKENIZER.set(tokenizer);
         }
-        return result;
+        return tokenizer;
     }
 
     /*
-     * do statistic analysis for token
+     * return list contain all token's original format
      */
-    private LDPClass GetLDPClass(String token) {
-        int ln = 0;
-        int dn = 0;
-        int pn = 0;
-        for (int i = 0; i < token.length(); i++) {
-            if (Character.isDigit(token.charAt(i))) {
-                dn++;
-            } else if (Character.isLetter(token.charAt(i))) {
-                ln++;
-            } else {
-                pn++;
-            }
-        }
-        return new LDPClass(ln, dn, pn);
+    public List<String> GetResTokens() {
+        return resTokens;
     }
 
     /*
-     * use regular expression to check whether text only contains letter, digit and punctuation
-     * it can filter other language and too special characters
+     * return list contain all token's type
      */
-    private boolean IsEnglish(String text) {
-        if (text == null) {
-            return false;
-        }
-        return text.matches(IS_ENGLISH_REGEX);
+    public List<String> GetTokensType() {
+        return tokensType;
     }
 
     /*
-     * return list contain all token's original format
+     * return list contain all token's position, see TokenSink
      */
-    public List<String> GetResTokens() {
-        return resTokens;
+    public List<Integer> GetTokensPosition() {
+        return tokensPosition;
     }
 
     /*
-     * return list contain all token's type
+     * return list contain all token's begin char offset in content,
+     * its end offset is begin offset + token length
      */
-    public List<String> GetTokensType() {
-        return tokensType;
+    public List<Integer> GetTokensOffset() {
+        return tokensOffset;
     }
 
     /*
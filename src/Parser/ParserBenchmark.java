@@ -0,0 +1,149 @@
+package Parser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compare the table lookup and the char by char classification of Tokenizer on real pages.
+ *
+ * USAGE: java Parser.ParserBenchmark -d [pages folder] [-s stop words file] [-r rounds]
+ * Every file under the pages folder is read (the content of ".page" files only), then each mode
+ * tokenizes all of them once to warm up and "rounds" times for timing. The tokens of both modes
+ * must be the same, otherwise the benchmark stops.
+ */
+public class ParserBenchmark {
+    public static void main(String[] args) {
+        String pagesPath = "";
+        String stopWordsPath = "";
+        int rounds = 5;
+        for (int i = 0; i < args.length; i++) {
+            if ("-d".equals(args[i])) {
+                pagesPath = args[i + 1];
+                i++;
+            } else if ("-s".equals(args[i])) {
+                stopWordsPath = args[i + 1];
+                i++;
+            } else if ("-r".equals(args[i])) {
+                rounds = Integer.valueOf(args[i + 1]);
+                i++;
+            }
+        }
+        if ("".equals(pagesPath) || !new File(pagesPath).isDirectory()) {
+            System.out.println("USAGE: java Parser.ParserBenchmark -d [pages folder] [-s stop words file] [-r rounds]");
+            System.exit(1);
+        }
+
+        Set<String> stopWordList = new HashSet<String>();
+        List<String> pages = new ArrayList<String>();
+        long chars = 0;
+        try {
+            if (!"".equals(stopWordsPath)) {
+                for (String line : ReadLines(new File(stopWordsPath))) {
+                    if (!line.equals("")) {
+                        stopWordList.add(line);
+                    }
+                }
+            }
+            ReadPages(new File(pagesPath), pages);
+        } catch (IOException e) {
+            System.out.println("Cannot read pages or stop words: " + e.getMessage());
+            System.exit(1);
+        }
+        for (String page : pages) {
+            chars += page.length();
+        }
+        System.out.println("Read " + pages.size() + " pages, " + chars / 1024 / 1024 + "M chars");
+
+        Tokenizer table = new Tokenizer(stopWordList);
+        Tokenizer scalar = new Tokenizer(stopWordList);
+        scalar.SetTableLookup(false);
+        long tableCheck = Run(table, pages);
+        long scalarCheck = Run(scalar, pages);
+        if (tableCheck != scalarCheck) {
+            System.out.println("Table lookup and char by char classification give different tokens!");
+            System.exit(1);
+        }
+
+        for (int round = 1; round <= rounds; round++) {
+            long scalarTime = System.nanoTime();
+            Run(scalar, pages);
+            scalarTime = System.nanoTime() - scalarTime;
+            long tableTime = System.nanoTime();
+            Run(table, pages);
+            tableTime = System.nanoTime() - tableTime;
+            System.out.println(String.format("round %d: char by char %.1f MB/s, table lookup %.1f MB/s",
+                    round, MBPerSecond(chars, scalarTime), MBPerSecond(chars, tableTime)));
+        }
+    }
+
+    /*
+     * tokenize every page, return a checksum of all tokens
+     */
+    private static long Run(Tokenizer tokenizer, List<String> pages) {
+        long check = 0;
+        for (String page : pages) {
+            tokenizer.Tokenize(page);
+            for (int i = 0; i < tokenizer.GetCount(); i++) {
+                check = check * 31 + tokenizer.GetOffset(i);
+                check = check * 31 + tokenizer.GetLength(i);
+                check = check * 31 + tokenizer.GetType(i).ordinal();
+            }
+        }
+        return check;
+    }
+
+    private static double MBPerSecond(long chars, long nanos) {
+        return chars * 2 / 1024.0 / 1024.0 / (nanos / 1e9);
+    }
+
+    private static void ReadPages(File dir, List<String> pages) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                ReadPages(file, pages);
+            } else if (file.getName().endsWith(".page")) {
+                // only the text after "#Content#" is parsed by Indexter
+                StringBuilder content = new StringBuilder();
+                boolean recordFlag = false;
+                for (String line : ReadLines(file)) {
+                    if (recordFlag) {
+                        content.append(line);
+                    } else if (line.equals("#Content#")) {
+                        recordFlag = true;
+                    }
+                }
+                pages.add(content.toString());
+            } else if (!file.getName().startsWith(".")) {
+                StringBuilder content = new StringBuilder();
+                for (String line : ReadLines(file)) {
+                    content.append(line).append('\n');
+                }
+                pages.add(content.toString());
+            }
+        }
+    }
+
+    private static List<String> ReadLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,49 @@
+package Parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Intern terms into int term IDs, IDs start from 0 and follow the order in which terms are first seen.
+ * Lookup of an existing term takes no lock, so it can be shared by all threads.
+ */
+public class TermDictionary {
+    private ConcurrentHashMap<String, Integer> termIDs = new ConcurrentHashMap<String, Integer>();
+    private List<String> terms = new ArrayList<String>();
+
+    /*
+     * return ID of term, add it to dictionary if it is new
+     */
+    public int GetTermID(String term) {
+        Integer id = termIDs.get(term);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = termIDs.get(term);
+            if (id == null) {
+                id = terms.size();
+                terms.add(term);
+                termIDs.put(term, id);
+            }
+            return id;
+        }
+    }
+
+    /*
+     * return ID of term, -1 if term is not in dictionary
+     */
+    public int FindTermID(String term) {
+        Integer id = termIDs.get(term);
+        return id == null ? -1 : id;
+    }
+
+    public synchronized String GetTerm(int id) {
+        return terms.get(id);
+    }
+
+    public int Size() {
+        return termIDs.size();
+    }
+}
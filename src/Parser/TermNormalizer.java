@@ -0,0 +1,103 @@
+package Parser;
+
+import org.tartarus.snowball.ext.englishStemmer;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turn a token into the term saved in index: lower case, then stem by snowball english stemmer,
+ * then intern into a TermDictionary for an int term ID.
+ *
+ * Each thread has its own stemmer. Stems are remembered in a cache shared by all threads, because
+ * of Zipf's law a small cache answers most tokens. When the cache is full, new words are stemmed
+ * every time but not added, so the cache keeps the words seen first, which are also the most frequent.
+ */
+public class TermNormalizer {
+    private static final int STEM_CACHE_LIMIT = 200000;
+    private static final ConcurrentHashMap<String, String> STEM_CACHE = new ConcurrentHashMap<String, String>();
+    private static final ThreadLocal<englishStemmer> STEMMER = new ThreadLocal<englishStemmer>() {
+        @Override
+        protected englishStemmer initialValue() {
+            return new englishStemmer();
+        }
+    };
+
+    private TermDictionary dictionary;
+
+    public TermNormalizer() {
+        dictionary = new TermDictionary();
+    }
+
+    public TermNormalizer(TermDictionary dict) {
+        dictionary = dict;
+    }
+
+    public TermDictionary GetDictionary() {
+        return dictionary;
+    }
+
+    /*
+     * lower case and stem
+     */
+    public String Normalize(String token) {
+        return Stem(token.toLowerCase());
+    }
+
+    /*
+     * lower case and stem buffer[offset, offset + length), e.g. a token from TokenSink
+     */
+    public String Normalize(char[] buffer, int offset, int length) {
+        return Stem(LowerCase(buffer, offset, length));
+    }
+
+    public int NormalizeToID(String token) {
+        return dictionary.GetTermID(Normalize(token));
+    }
+
+    public int NormalizeToID(char[] buffer, int offset, int length) {
+        return dictionary.GetTermID(Normalize(buffer, offset, length));
+    }
+
+    /*
+     * stemming
+     * use snowball.jar to transfer english word back to its prototype
+     */
+    public static String Stem(String lowerCaseToken) {
+        String stem = STEM_CACHE.get(lowerCaseToken);
+        if (stem != null) {
+            return stem;
+        }
+        englishStemmer stemmer = STEMMER.get();
+        stemmer.setCurrent(lowerCaseToken);
+        if (stemmer.stem()) {
+            stem = stemmer.getCurrent();
+        } else {
+            stem = lowerCaseToken;
+        }
+        if (STEM_CACHE.size() < STEM_CACHE_LIMIT) {
+            STEM_CACHE.put(lowerCaseToken, stem);
+        }
+        return stem;
+    }
+
+    /*
+     * same result as new String(...).toLowerCase(), but ASCII text only creates one string
+     */
+    static String LowerCase(char[] buffer, int offset, int length) {
+        char[] lower = null;
+        for (int i = 0; i < length; i++) {
+            char c = buffer[offset + i];
+            if (c >= 128) {
+                return new String(buffer, offset, length).toLowerCase();
+            }
+            if (c >= 'A' && c <= 'Z') {
+                if (lower == null) {
+                    lower = new char[length];
+                    System.arraycopy(buffer, offset, lower, 0, length);
+                }
+                lower[i] = (char) (c + 32);
+            }
+        }
+        return lower == null ? new String(buffer, offset, length) : new String(lower);
+    }
+}
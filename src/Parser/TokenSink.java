@@ -0,0 +1,16 @@
+package Parser;
+
+/**
+ * Receive tokens from Parser.Parse(TokenSink) one by one, without building token lists.
+ *
+ * The token is buffer[offset, offset + length), buffer belongs to the parser and is
+ * overwritten by the next text, so copy the characters if they are kept after Parse().
+ * offset is also the char offset of the token in the parsed text, so offset + length is its end.
+ * position is the index of the word in the text, starting from 0. Stop words and dropped words
+ * (e.g. not english or over-long) take positions too, so positions of the other tokens do not
+ * change when stop words are skipped, and two tokens are next to each other only if their
+ * positions differ by 1.
+ */
+public interface TokenSink {
+    void Token(char[] buffer, int offset, int length, TokenType type, int position);
+}
@@ -0,0 +1,12 @@
+package Parser;
+
+/**
+ * Type of token found by Parser
+ */
+public enum TokenType {
+    URL,
+    EMAIL,
+    NUM,
+    WORD,
+    STOPWORD
+}
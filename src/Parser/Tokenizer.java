@@ -0,0 +1,601 @@
+package Parser;
+
+import javax.mail.internet.InternetAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Scan text once and find the same tokens, with the same types, as the old regex based Parse().
+ *
+ * Tokens are kept as (offset, length, type) in arrays which are reused from one text to the
+ * next, or pushed to a TokenSink, so tokenizing allocates nothing unless the caller asks for
+ * GetToken(i). The buffer from GetBuffer() holds the text, a caller can read the characters of
+ * token i in place.
+ * The tokenizer is not thread safe, use one for each thread.
+ */
+public class Tokenizer {
+    private static final int DIFF_DIGIT_LETTER      = 5;
+    private static final int TOKEN_LENGTH_THRESHOLD = 30;
+
+    // character classes of ASCII chars
+    private static final int SPACE      = 1;    // first delimiter: " \n\r\t" and no-break space
+    private static final int SPLIT      = 2;    // second delimiter: ~#%&*{}:<>?/|!$=+;_()"^
+    private static final int ENGLISH    = 4;    // chars allowed in an english token
+    private static final int LETTER     = 8;
+    private static final int DIGIT      = 16;
+    private static final int AT         = 32;   // '@', only a token which has it can be an email
+    private static final int COLON      = 64;   // ':', only a token which has it can be an URL
+    private static final int NON_ASCII  = 128;  // not in table, use Character methods
+    private static final byte[] CHAR_CLASS = new byte[128];
+
+    static {
+        for (char c : " \n\r\t".toCharArray()) {
+            CHAR_CLASS[c] |= SPACE;
+        }
+        for (char c : "~#%&*{}:<>?/|!$=+;_()\"^".toCharArray()) {
+            CHAR_CLASS[c] |= SPLIT;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASS[c] |= ENGLISH | LETTER;
+            CHAR_CLASS[c - 'a' + 'A'] |= ENGLISH | LETTER;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            CHAR_CLASS[c] |= ENGLISH | DIGIT;
+        }
+        CHAR_CLASS['@'] |= AT;
+        CHAR_CLASS[':'] |= COLON;
+        for (char c : " \t\n\u000B\f\r_.&+-,!@#$%^*();\\/|<>\"'?=:[]".toCharArray()) {
+            CHAR_CLASS[c] |= ENGLISH;
+        }
+    }
+
+    // result of new URL("<protocol>:...") does not depend on the rest of text when protocol is unknown,
+    // remember which protocols have a handler so that normal words never throw an exception
+    private static final int PROTOCOL_CACHE_LIMIT = 10000;
+    private static final ConcurrentHashMap<String, Boolean> KNOWN_PROTOCOL = new ConcurrentHashMap<String, Boolean>();
+
+    private StopWordTable stopWords;
+    private char[] buffer = new char[1024];
+    private int length;
+
+    private int count;
+    private int[] offsets = new int[256];
+    private int[] lengths = new int[256];
+    private TokenType[] types = new TokenType[256];
+    private int[] positions = new int[256];
+    private int position;       // position of next word, counts stop words and dropped words too
+    private TokenSink sink;     // when it is set, tokens go to it instead of the arrays
+
+    // statistic of the current token, same as LDPClass
+    private int letterNum;
+    private int digitNum;
+    private int punctuationNum;
+    // classes of the current token: any char has the class (or), every char has it (and)
+    private int orMask;
+    private int andMask;
+    private boolean tableLookup = true;
+
+    public Tokenizer(Set<String> stopWordList) {
+        stopWords = StopWordTable.Get(stopWordList);
+    }
+
+    /*
+     * on (default): classify each token in one pass with the ASCII class table,
+     * off: check it char by char with Character methods in several passes, kept for comparison
+     * both give the same tokens, see ParserBenchmark
+     */
+    public void SetTableLookup(boolean on) {
+        tableLookup = on;
+    }
+
+    /*
+     * find all tokens of content
+     */
+    public void Tokenize(String content) {
+        Tokenize(content, null);
+    }
+
+    /*
+     * find all tokens of content and push each of them to sink,
+     * nothing is kept in the arrays, so GetCount() is the number of tokens but GetToken(i) is not valid
+     */
+    public void Tokenize(String content, TokenSink tokenSink) {
+        sink = tokenSink;
+        count = 0;
+        position = 0;
+        length = content.length();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+        content.getChars(0, length, buffer, 0);
+
+        int i = 0;
+        while (i < length) {
+            while (i < length && IsSpace(buffer[i])) {
+                i++;
+            }
+            int begin = i;
+            while (i < length && !IsSpace(buffer[i])) {
+                i++;
+            }
+            if (begin < i) {
+                ProcessToken(begin, i);
+            }
+        }
+    }
+
+    /*
+     * same steps as old Parse() for one token split by spaces, [begin, end)
+     */
+    private void ProcessToken(int begin, int end) {
+        // delete useless chars at token's head and tail
+        while (begin < end && !IsLetterOrDigit(buffer[begin])) {
+            begin++;
+        }
+        while (end > begin && !IsLetterOrDigit(buffer[end - 1])) {
+            end--;
+        }
+        if (begin == end) {
+            return;
+        }
+
+        Classify(begin, end);
+        if (IsStopWord(begin, end)) {
+            Add(begin, end, TokenType.STOPWORD);
+            return;
+        }
+        if (MayHave(COLON) && IsValidURL(begin, end)) {
+            Add(begin, end, TokenType.URL);
+            return;
+        }
+        if (MayHave(AT) && IsValidEmailAddress(begin, end)) {
+            Add(begin, end, TokenType.EMAIL);
+            return;
+        }
+
+        if (letterNum == 0) {
+            Add(begin, end, TokenType.NUM);
+            return;
+        }
+        // a word which is dropped still takes its position, so that phrases never match across it
+        if (tableLookup ? (andMask & ENGLISH) == 0 : !IsEnglish(begin, end)) {
+            position++;
+            return;
+        }
+        if (punctuationNum == 0) {
+            if (digitNum - letterNum >= DIFF_DIGIT_LETTER) {
+                position++;
+                return;
+            }
+            if (letterNum + digitNum > TOKEN_LENGTH_THRESHOLD) {
+                position++;
+                return;
+            }
+            Add(begin, end, TokenType.WORD);
+            return;
+        }
+
+        // second split, token never starts or ends with a delimiter here,
+        // so every part between delimiters is non-empty
+        if (tableLookup ? (orMask & SPLIT) == 0 : !HasSplitChar(begin, end)) {
+            // only "-", "'" or such punctuation inside word
+            if (digitNum - letterNum >= DIFF_DIGIT_LETTER) {
+                position++;
+                return;
+            }
+            Add(begin, end, TokenType.WORD);
+            return;
+        }
+        int i = begin;
+        while (i < end) {
+            int partBegin = i;
+            while (i < end && !IsSplit(buffer[i])) {
+                i++;
+            }
+            ProcessSmallToken(partBegin, i);
+            while (i < end && IsSplit(buffer[i])) {
+                i++;
+            }
+        }
+    }
+
+    /*
+     * same steps as old Parse() for one part of the second split, [begin, end)
+     */
+    private void ProcessSmallToken(int begin, int end) {
+        while (begin < end && !IsLetterOrDigit(buffer[begin])) {
+            begin++;
+        }
+        while (end > begin && !IsLetterOrDigit(buffer[end - 1])) {
+            end--;
+        }
+        // a part with only punctuation becomes "", it goes on and is kept as an empty NUM token,
+        // which is what the old Parse() did
+        Classify(begin, end);
+        if (IsStopWord(begin, end)) {
+            Add(begin, end, TokenType.STOPWORD);
+            return;
+        }
+        if (MayHave(AT) && IsValidEmailAddress(begin, end)) {
+            Add(begin, end, TokenType.EMAIL);
+            return;
+        }
+
+        if (letterNum == 0) {
+            Add(begin, end, TokenType.NUM);
+            return;
+        }
+        if (digitNum - letterNum >= DIFF_DIGIT_LETTER) {
+            position++;
+            return;
+        }
+        if (punctuationNum == 0 && letterNum + digitNum > TOKEN_LENGTH_THRESHOLD) {
+            position++;
+            return;
+        }
+        Add(begin, end, TokenType.WORD);
+    }
+
+    private void Add(int begin, int end, TokenType type) {
+        if (sink != null) {
+            sink.Token(buffer, begin, end - begin, type, position);
+            position++;
+            count++;
+            return;
+        }
+        if (count == offsets.length) {
+            int size = count * 2;
+            int[] newOffsets = new int[size];
+            int[] newLengths = new int[size];
+            TokenType[] newTypes = new TokenType[size];
+            int[] newPositions = new int[size];
+            System.arraycopy(offsets, 0, newOffsets, 0, count);
+            System.arraycopy(lengths, 0, newLengths, 0, count);
+            System.arraycopy(types, 0, newTypes, 0, count);
+            System.arraycopy(positions, 0, newPositions, 0, count);
+            offsets = newOffsets;
+            lengths = newLengths;
+            types = newTypes;
+            positions = newPositions;
+        }
+        offsets[count] = begin;
+        lengths[count] = end - begin;
+        types[count] = type;
+        positions[count] = position;
+        position++;
+        count++;
+    }
+
+    private static boolean IsSpace(char c) {
+        return c < 128 ? (CHAR_CLASS[c] & SPACE) != 0 : c == '\u00A0';
+    }
+
+    private static boolean IsSplit(char c) {
+        return c < 128 && (CHAR_CLASS[c] & SPLIT) != 0;
+    }
+
+    private boolean HasSplitChar(int begin, int end) {
+        for (int i = begin; i < end; i++) {
+            if (IsSplit(buffer[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean IsLetterOrDigit(char c) {
+        if (tableLookup && c < 128) {
+            return (CHAR_CLASS[c] & (LETTER | DIGIT)) != 0;
+        }
+        return Character.isLetterOrDigit(c);
+    }
+
+    /*
+     * without table lookup every token may have every class, and the checks scan the token themselves
+     */
+    private boolean MayHave(int charClass) {
+        return !tableLookup || (orMask & charClass) != 0;
+    }
+
+    /*
+     * letter, digit and punctuation count of token, and its class masks
+     * ASCII chars are counted without branches, each one is a single table lookup
+     */
+    private void Classify(int begin, int end) {
+        if (!tableLookup) {
+            CountLDP(begin, end);
+            return;
+        }
+        int letters = 0;
+        int digits = 0;
+        int or = 0;
+        int and = ENGLISH;
+        for (int i = begin; i < end; i++) {
+            char c = buffer[i];
+            if (c < 128) {
+                int charClass = CHAR_CLASS[c];
+                letters += (charClass & LETTER) >>> 3;
+                digits += (charClass & DIGIT) >>> 4;
+                or |= charClass;
+                and &= charClass;
+            } else {
+                or |= NON_ASCII;
+                and = 0;
+                if (Character.isDigit(c)) {
+                    digits++;
+                } else if (Character.isLetter(c)) {
+                    letters++;
+                }
+            }
+        }
+        letterNum = letters;
+        digitNum = digits;
+        punctuationNum = end - begin - letters - digits;
+        orMask = or;
+        andMask = and;
+    }
+
+    /*
+     * letter, digit and punctuation count of token
+     */
+    private void CountLDP(int begin, int end) {
+        letterNum = 0;
+        digitNum = 0;
+        punctuationNum = 0;
+        for (int i = begin; i < end; i++) {
+            char c = buffer[i];
+            if (c < 128) {
+                if (c >= '0' && c <= '9') {
+                    digitNum++;
+                } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                    letterNum++;
+                } else {
+                    punctuationNum++;
+                }
+            } else if (Character.isDigit(c)) {
+                digitNum++;
+            } else if (Character.isLetter(c)) {
+                letterNum++;
+            } else {
+                punctuationNum++;
+            }
+        }
+    }
+
+    /*
+     * token only contains english letters, digits and punctuation
+     */
+    private boolean IsEnglish(int begin, int end) {
+        for (int i = begin; i < end; i++) {
+            char c = buffer[i];
+            if (c >= 128 || (CHAR_CLASS[c] & ENGLISH) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * lower case of token is in stop word list
+     */
+    private boolean IsStopWord(int begin, int end) {
+        if (MayHave(NON_ASCII)) {
+            for (int i = begin; i < end; i++) {
+                if (buffer[i] >= 128) {
+                    // String.toLowerCase() may change the length of non-ASCII text
+                    return stopWords.ContainsString(new String(buffer, begin, end - begin).toLowerCase());
+                }
+            }
+        }
+        return stopWords.ContainsLowerCase(buffer, begin, end);
+    }
+
+    /*
+     * new URL(token) only succeeds when token starts with a protocol which has a handler,
+     * so the real check is only run for those tokens
+     */
+    private boolean IsValidURL(int begin, int end) {
+        int start = begin;
+        if (end - start >= 4 && RegionMatchesIgnoreCase(start, "url:")) {
+            start += 4;
+        }
+        // scheme is letter, then letters, digits, '.', '+' or '-', ended by ':' before any '/'
+        int i = start;
+        while (i < end && buffer[i] != '/' && buffer[i] != ':' && buffer[i] != '#') {
+            i++;
+        }
+        if (i == end || buffer[i] != ':' || i == start || !Character.isLetter(buffer[start])) {
+            return false;
+        }
+        for (int j = start + 1; j < i; j++) {
+            char c = buffer[j];
+            if (!Character.isLetterOrDigit(c) && c != '.' && c != '+' && c != '-') {
+                return false;
+            }
+        }
+        if (!IsKnownProtocol(new String(buffer, start, i - start).toLowerCase())) {
+            return false;
+        }
+        try {
+            new URL(new String(buffer, begin, end - begin));
+            return true;
+        } catch (MalformedURLException e) {
+            return false;
+        }
+    }
+
+    private static boolean IsKnownProtocol(String protocol) {
+        Boolean known = KNOWN_PROTOCOL.get(protocol);
+        if (known == null) {
+            try {
+                new URL(protocol, "", "");
+                known = true;
+            } catch (MalformedURLException e) {
+                known = false;
+            }
+            if (KNOWN_PROTOCOL.size() < PROTOCOL_CACHE_LIMIT) {
+                KNOWN_PROTOCOL.put(protocol, known);
+            }
+        }
+        return known;
+    }
+
+    /*
+     * every valid address has a "@", InternetAddress is only run for tokens which have it
+     */
+    private boolean IsValidEmailAddress(int begin, int end) {
+        int i = begin;
+        while (i < end && buffer[i] != '@') {
+            i++;
+        }
+        if (i == end) {
+            return false;
+        }
+        try {
+            InternetAddress emailAddr = new InternetAddress(new String(buffer, begin, end - begin));
+            emailAddr.validate();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private boolean RegionMatchesIgnoreCase(int begin, String lowerCase) {
+        for (int i = 0; i < lowerCase.length(); i++) {
+            if (Character.toLowerCase(buffer[begin + i]) != lowerCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Set<String> GetStopWords() {
+        return stopWords.words;
+    }
+
+    /*
+     * number of tokens found by last Tokenize()
+     */
+    public int GetCount() {
+        return count;
+    }
+
+    public int GetOffset(int index) {
+        return offsets[index];
+    }
+
+    public int GetLength(int index) {
+        return lengths[index];
+    }
+
+    /*
+     * position of token in text, stop words and dropped words (e.g. not english or over-long) take
+     * positions as well, so removing stop words keeps the distance between the other tokens
+     */
+    public int GetPosition(int index) {
+        return positions[index];
+    }
+
+    public TokenType GetType(int index) {
+        return types[index];
+    }
+
+    /*
+     * text of the last Tokenize(), only [0, GetTextLength()) is valid
+     */
+    public char[] GetBuffer() {
+        return buffer;
+    }
+
+    public int GetTextLength() {
+        return length;
+    }
+
+    /*
+     * original format of token, this is the only method which creates a string
+     */
+    public String GetToken(int index) {
+        return new String(buffer, offsets[index], lengths[index]);
+    }
+
+    /**
+     * Open addressing hash set of stop words, which can be looked up with a part of a char array.
+     * Tables are shared by every tokenizer built from the same stop word set.
+     */
+    static class StopWordTable {
+        private static volatile StopWordTable last;
+
+        private final Set<String> words;
+        private final char[][] table;
+        private final int mask;
+
+        private StopWordTable(Set<String> stopWordList) {
+            words = stopWordList;
+            int size = 16;
+            while (size < stopWordList.size() * 2) {
+                size <<= 1;
+            }
+            table = new char[size][];
+            mask = size - 1;
+            for (String word : stopWordList) {
+                int slot = Hash(word.toCharArray(), 0, word.length()) & mask;
+                while (table[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = word.toCharArray();
+            }
+        }
+
+        static StopWordTable Get(Set<String> stopWordList) {
+            StopWordTable current = last;
+            if (current == null || current.words != stopWordList || current.words.size() != stopWordList.size()) {
+                current = new StopWordTable(stopWordList);
+                last = current;
+            }
+            return current;
+        }
+
+        /*
+         * token is ASCII, compare its lower case with stop words
+         */
+        boolean ContainsLowerCase(char[] text, int begin, int end) {
+            int hash = 0;
+            for (int i = begin; i < end; i++) {
+                hash = 31 * hash + LowerCase(text[i]);
+            }
+            int slot = hash & mask;
+            while (table[slot] != null) {
+                char[] word = table[slot];
+                if (word.length == end - begin) {
+                    int i = 0;
+                    while (i < word.length && word[i] == LowerCase(text[begin + i])) {
+                        i++;
+                    }
+                    if (i == word.length) {
+                        return true;
+                    }
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        boolean ContainsString(String word) {
+            return words.contains(word);
+        }
+
+        private static int Hash(char[] text, int begin, int end) {
+            int hash = 0;
+            for (int i = begin; i < end; i++) {
+                hash = 31 * hash + text[i];
+            }
+            return hash;
+        }
+
+        private static char LowerCase(char c) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+        }
+    }
+}
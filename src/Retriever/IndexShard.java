@@ -0,0 +1,362 @@
+package Retriever;
+
+import Indexter.DocRegistry;
+import Indexter.Field;
+import Indexter.IndexReader;
+import Indexter.PhraseMatcher;
+import Indexter.PostingsIterator;
+import Indexter.TermPositions;
+import PageRank.PageRank;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * One index searched by Retriever: a segment, the segments of an incremental index, one shard of an
+ * index split by ShardSplitter, or the hot tier of IndexPruner kept in memory. The scores of the docs
+ * seen by the current query are kept here by doc ID, so the shards of an index can be searched by
+ * different threads at the same time.
+ * The word weights are given by Retriever from the document frequencies of all shards, so a page scores
+ * the same whichever shard it is in
+ */
+class IndexShard {
+    private IndexReader reader;
+    private String pagePath;
+    private double[] docRanks;
+    // match (length of the longest sequence found, 0 if none), title flag and score of each doc
+    // for the current query, allocated at the first query
+    private int[] docMatch;
+    private boolean[] docTitle;
+    private double[] docScore;
+    private int[] touchedDocs = new int[1024];
+    private int touchedCount = 0;
+    private HashMap<Sequence, SeqPostings> postings = new HashMap<Sequence, SeqPostings>();
+
+    IndexShard(String indexPath, String pagePath, boolean inMemory) throws IOException {
+        reader = new IndexReader(indexPath, inMemory);
+        this.pagePath = pagePath;
+        docRanks = new double[reader.GetDocCount()];
+    }
+
+    /**
+     * Give each doc its page rank, from docRankFile ("pageRank.bin" of PageRank) if it exists,
+     * or from the ".rank" files in rankPath when PageRank was run without the doc registry
+     * (pages without rank get 0)
+     */
+    void loadRanks(File docRankFile, String rankPath) {
+        if (docRankFile.isFile()) {
+            try {
+                double[] ranks = PageRank.loadDocRanks(docRankFile.getPath());
+                System.arraycopy(ranks, 0, docRanks, 0, Math.min(ranks.length, docRanks.length));
+                return;
+            } catch (IOException e) {
+                System.out.println("Read page rank not successful for " + docRankFile.getName());
+            }
+        }
+        DocRegistry registry = reader.GetRegistry();
+        File[] rankFiles = rankPath == null ? null : new File(rankPath).listFiles();
+        if (rankFiles == null) {
+            System.out.println("No page rank found, all pages have rank 0");
+            return;
+        }
+        for (File rankFile: rankFiles) {
+            if (!rankFile.getName().endsWith(".rank")) {
+                continue;
+            }
+            try {
+                BufferedReader rankReader = new BufferedReader(new FileReader(rankFile));
+                String pageID = null;
+                while ((pageID = rankReader.readLine()) != null) {
+                    double pageRank = Double.parseDouble(rankReader.readLine());
+                    int doc = registry.GetDocID(pageID);
+                    if (doc >= 0) {
+                        docRanks[doc] = pageRank;
+                    }
+                }
+                rankReader.close();
+            } catch (IOException e) {
+                System.out.println("Read page rank not successful for " + rankFile.getName());
+            }
+        }
+    }
+
+    int getDocCount() {
+        return reader.GetDocCount();
+    }
+
+    int getDocFreq(String term) {
+        return reader.GetDocFreq(term);
+    }
+
+    /**
+     * The number of pages the last query matched in this shard, of which search() returned at most
+     * Retriever.CUSTOM_MAX
+     */
+    int getMatchCount() {
+        return touchedCount;
+    }
+
+    /**
+     * Forget the pages of the last query
+     */
+    void clear() {
+        for (int i = 0; i < touchedCount; i++) {
+            int doc = touchedDocs[i];
+            docMatch[doc] = 0;
+            docTitle[doc] = false;
+            docScore[doc] = 0;
+        }
+        touchedCount = 0;
+        postings = new HashMap<Sequence, SeqPostings>();
+    }
+
+    /**
+     * Find the pages of every sequence in this shard and score them, same as getPages() and
+     * calculate() of Retriever, but the scores come from the counts in the index, so no page
+     * file is read. terms are the normalized queryWords.
+     * A page is only a doc ID while it is scored: its match, title flag and score are kept in
+     * arrays by doc ID, and only the best Retriever.CUSTOM_MAX docs, in the order of PageComp,
+     * become pages. Returns them, the best first
+     */
+    List<Page> search(List<Sequence> seqList, List<String> queryWords, List<String> terms) {
+        // the sequence list is sorted by length, so the shorter sequences inside a phrase are read first
+        for (Sequence seq: seqList) {
+            if (postings.containsKey(seq)) {
+                continue;
+            }
+            if (seq.getRight() == seq.getLeft()) {
+                postings.put(seq, readSegment(terms.get(seq.getLeft())));
+            }
+            else {
+                postings.put(seq, readPhrase(seq, queryWords, terms));
+            }
+        }
+        if (docScore == null) {
+            docScore = new double[reader.GetDocCount()];
+            docMatch = new int[reader.GetDocCount()];
+            docTitle = new boolean[reader.GetDocCount()];
+        }
+        HashSet<Sequence> seenSeqs = new HashSet<Sequence>();
+        // the longest sequences first, same as calculate() of Retriever: a page is scored by the
+        // longest sequences it has, and only by them
+        for (int i = seqList.size() - 1; i >= 0; i--) {
+            Sequence seq = seqList.get(i);
+            if (!seenSeqs.add(seq)) {
+                continue;
+            }
+            int size = seq.getRight() - seq.getLeft() + 1;
+            SeqPostings found = postings.get(seq);
+            double weight = found.size == 0 ? 0 : Retriever.getWeight(seq);
+            for (int j = 0; j < found.size; j++) {
+                int doc = found.docs[j];
+                if (docMatch[doc] == 0) {
+                    if (touchedCount == touchedDocs.length) {
+                        touchedDocs = Arrays.copyOf(touchedDocs, touchedCount * 2);
+                    }
+                    touchedDocs[touchedCount++] = doc;
+                    docMatch[doc] = size;
+                }
+                else if (docMatch[doc] != size) {
+                    continue;
+                }
+                if (found.titleCounts[j] != 0) {
+                    docTitle[doc] = true;
+                }
+                docScore[doc] += Page.formula(weight, found.bodyCounts[j]);
+            }
+        }
+        return topPages();
+    }
+
+    /**
+     * The best Retriever.CUSTOM_MAX scored docs as pages, the best first, ties by doc ID
+     */
+    private List<Page> topPages() {
+        Comparator<Integer> better = new Comparator<Integer>() {
+            public int compare(Integer one, Integer two) {
+                return compareDocs(one, two);
+            }
+        };
+        // the worst kept doc on top, so a better doc takes its place
+        PriorityQueue<Integer> top = new PriorityQueue<Integer>(16, Collections.reverseOrder(better));
+        for (int i = 0; i < touchedCount; i++) {
+            int doc = touchedDocs[i];
+            if (top.size() < Retriever.CUSTOM_MAX) {
+                top.add(doc);
+            }
+            else if (compareDocs(doc, top.peek()) < 0) {
+                top.poll();
+                top.add(doc);
+            }
+        }
+        Integer[] docs = top.toArray(new Integer[top.size()]);
+        Arrays.sort(docs, better);
+        List<Page> results = new ArrayList<Page>(docs.length);
+        for (int doc : docs) {
+            Page page = new Page(reader.GetPageID(doc), docRanks[doc], pagePath);
+            page.setIndexScore(docMatch[doc], docTitle[doc], docScore[doc]);
+            results.add(page);
+        }
+        return results;
+    }
+
+    /**
+     * Same order as Retriever.PageComp, on the arrays of the docs
+     */
+    private int compareDocs(int one, int two) {
+        if (docMatch[one] != docMatch[two]) {
+            return docMatch[one] > docMatch[two] ? -1 : 1;
+        }
+        if (docTitle[one] != docTitle[two]) {
+            return docTitle[one] ? -1 : 1;
+        }
+        int diff = Double.compare(docScore[two], docScore[one]);
+        return diff != 0 ? diff : one - two;
+    }
+
+    /**
+     * Same as readIndex() of Retriever, but the page IDs come from the postings of the segment,
+     * which are decoded into doc IDs at once instead of parsing one line for each page.
+     * The times the word appears in the body and the title of each page are kept by doc
+     */
+    private SeqPostings readSegment(String word) {
+        TermPositions termPostings = null;
+        try {
+            termPostings = reader.GetFreqs(word);
+        } catch (IOException e) {
+//            System.out.println("Read index not successful for word " + word);
+        }
+        if (termPostings == null) {
+            return new SeqPostings(0);
+        }
+        SeqPostings found = new SeqPostings(termPostings.Size());
+        for (int i = 0; i < termPostings.Size(); i++) {
+            found.add(termPostings.GetDoc(i), termPostings.GetFreq(i, Field.BODY),
+                    termPostings.GetFreq(i, Field.TITLE));
+        }
+        return found;
+    }
+
+    /**
+     * The pages of a sequence of several words are only the pages where the words really
+     * appear one after another, found from the positions in the index by PhraseMatcher,
+     * instead of all the pages containing every word. The phrase is matched in the body and
+     * in the title apart. The sequence list is sorted by length, so the shorter sequences
+     * inside this one have already been read.
+     * The words are intersected first by their postings iterators, which skip the blocks of
+     * the common words that hold none of the docs of the rarest word, so only the positions
+     * of the common docs are read.
+     * An index without positions (converted from ".word" files) is checked in the page files
+     * of the common docs instead, same as the ".word" files by Retriever
+     */
+    private SeqPostings readPhrase(Sequence seq, List<String> queryWords, List<String> terms) {
+        Sequence partOne = new Sequence(queryWords, seq.getLeft(), seq.getRight() - 1);
+        Sequence partTwo = new Sequence(queryWords, seq.getRight(), seq.getRight());
+        if (postings.get(partOne).size == 0 || postings.get(partTwo).size == 0) {
+            return new SeqPostings(0);
+        }
+        PostingsIterator[] iterators = new PostingsIterator[seq.getRight() - seq.getLeft() + 1];
+        TermPositions[] phrase = null;
+        try {
+            for (int i = seq.getLeft(); i <= seq.getRight(); i++) {
+                iterators[i - seq.getLeft()] = reader.GetIterator(terms.get(i));
+                if (iterators[i - seq.getLeft()] == null) {
+                    return new SeqPostings(0);
+                }
+            }
+            phrase = PostingsIterator.Intersect(iterators);
+        } catch (IOException e) {
+//            System.out.println("Read positions not successful for " + seq.getToken());
+            return new SeqPostings(0);
+        }
+        if (!reader.HasPositions()) {
+            return readPhraseInPages(seq, phrase[0]);
+        }
+        PhraseMatcher body = new PhraseMatcher(phrase, Field.BODY);
+        PhraseMatcher title = new PhraseMatcher(phrase, Field.TITLE);
+        SeqPostings found = new SeqPostings(Math.max(body.Size(), title.Size()));
+        // walk both matched doc lists in doc order
+        int i = 0;
+        int j = 0;
+        while (i < body.Size() || j < title.Size()) {
+            int doc;
+            int bodyCount = 0;
+            int titleCount = 0;
+            if (j == title.Size() || (i < body.Size() && body.GetDoc(i) <= title.GetDoc(j))) {
+                doc = body.GetDoc(i);
+                bodyCount = body.GetCount(i);
+                i++;
+                if (j < title.Size() && title.GetDoc(j) == doc) {
+                    titleCount = title.GetCount(j);
+                    j++;
+                }
+            }
+            else {
+                doc = title.GetDoc(j);
+                titleCount = title.GetCount(j);
+                j++;
+            }
+            found.add(doc, bodyCount, titleCount);
+        }
+        return found;
+    }
+
+    /**
+     * The docs of common that have the phrase of seq in their page file, with its counts in the
+     * body and the title. At most Retriever.CUSTOM_MAX page files are read for a phrase
+     */
+    private SeqPostings readPhraseInPages(Sequence seq, TermPositions common) {
+        int checked = Math.min(common.Size(), Retriever.CUSTOM_MAX);
+        SeqPostings found = new SeqPostings(checked);
+        for (int i = 0; i < checked; i++) {
+            int doc = common.GetDoc(i);
+            int[] counts = new Page(reader.GetPageID(doc), docRanks[doc], pagePath).countPhrase(seq.getToken());
+            if (counts != null && (counts[0] != 0 || counts[1] != 0)) {
+                found.add(doc, counts[0], counts[1]);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * The docs of one sequence in doc order, with the times it appears in their body and title
+     */
+    private static class SeqPostings {
+        private int[] docs;
+        private int[] bodyCounts;
+        private int[] titleCounts;
+        private int size = 0;
+
+        SeqPostings(int capacity) {
+            docs = new int[Math.max(capacity, 1)];
+            bodyCounts = new int[docs.length];
+            titleCounts = new int[docs.length];
+        }
+
+        void add(int doc, int bodyCount, int titleCount) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                bodyCounts = Arrays.copyOf(bodyCounts, size * 2);
+                titleCounts = Arrays.copyOf(titleCounts, size * 2);
+            }
+            docs[size] = doc;
+            bodyCounts[size] = bodyCount;
+            titleCounts[size] = titleCount;
+            size++;
+        }
+    }
+
+    void close() {
+        reader.Close();
+    }
+}
@@ -3,11 +3,15 @@ package Retriever;
 import java.io.*;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.ArrayList;
 import java.net.URLEncoder;
 import java.io.UnsupportedEncodingException;
 
+import Parser.TermNormalizer;
+
 /**
  * Created by Wenzhao on 4/22/16.
  */
@@ -48,8 +52,6 @@ public class Page {
         return title + "\n" + url + "\n" + preview + "\n";
     }
 
-    public String getPreview() { return preview;}
-
     public String getID() {
         return id;
     }
@@ -115,6 +117,16 @@ public class Page {
         return titleContains;
     }
 
+    /**
+     * Set the score of this page as it was scored from the counts in the index by IndexShard,
+     * so the page file is not needed
+     */
+    public void setIndexScore(int match, boolean titleContains, double score) {
+        setMatch(match);
+        setTitleContains(titleContains);
+        dependencyScore = score;
+    }
+
     /**
      * This method calculates the score based on the given sequence (because the same page will
      * have different scores for different sequences (i.e. word combination))
@@ -150,6 +162,51 @@ public class Page {
         currentSeq.clear();
     }
 
+    /**
+     * Only used with the index, read the page file for its url, title and preview,
+     * once the page is among the top results. The index keeps stemmed terms, so the
+     * preview starts at the first word of the content with the same stem as one of
+     * the query terms, or at the start of the content when only the title has them
+     */
+    public void parseForResult(Set<String> queryTerms) {
+        parsePage();
+        if (!valid) {
+            return;
+        }
+        int start = 0;
+        int i = 0;
+        while (i < lowerContent.length()) {
+            if (!Character.isLetterOrDigit(lowerContent.charAt(i))) {
+                i++;
+                continue;
+            }
+            int end = i;
+            while (end < lowerContent.length() && Character.isLetterOrDigit(lowerContent.charAt(end))) {
+                end++;
+            }
+            if (queryTerms.contains(TermNormalizer.Stem(lowerContent.substring(i, end)))) {
+                start = i;
+                break;
+            }
+            i = end;
+        }
+        setPreview(start);
+    }
+
+    /**
+     * Only used with an index without positions, the times a phrase appears in the body and in
+     * the title of the page file, in lower case, null if the page file cannot be read
+     */
+    int[] countPhrase(String phrase) {
+        parsePage();
+        if (!valid) {
+            return null;
+        }
+        String lowerPhrase = phrase.toLowerCase();
+        String lowerTitle = title == null ? "" : title.toLowerCase();
+        return new int[] {getCount(lowerPhrase, lowerContent), getCount(lowerPhrase, lowerTitle)};
+    }
+
     public double finalScore() {
 //        final double weight = 0;
 //        totalScore = dependencyScore + weight * pageRank;
@@ -237,11 +294,7 @@ public class Page {
         boolean hasPreview = false;
         while ((index = content.indexOf(token, index)) != -1) {
             if (!hasPreview) {
-                int end = Math.min(content.length(), index + 200);
-                while (end < content.length() && content.charAt(end) != ' ') {
-                    end++;
-                }
-                preview = content.substring(index, end);
+                setPreview(index);
                 hasPreview = true;
             }
             count++;
@@ -250,6 +303,17 @@ public class Page {
         return count;
     }
 
+    /**
+     * The preview is about 200 characters of the content from start, up to the end of a word
+     */
+    private void setPreview(int start) {
+        int end = Math.min(content.length(), start + 200);
+        while (end < content.length() && content.charAt(end) != ' ') {
+            end++;
+        }
+        preview = content.substring(start, end);
+    }
+
     private void setMatch(int match) {
         this.match = match;
     }
@@ -258,7 +322,7 @@ public class Page {
         this.titleContains = titleContains;
     }
 
-    private double formula(double wordWeight, int count) {
+    static double formula(double wordWeight, int count) {
         if (count == 0) {
             return 0;
         }
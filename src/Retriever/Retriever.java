@@ -1,7 +1,12 @@
 package Retriever;
 
+import Indexter.CorpusStats;
+import Indexter.RankJoiner;
+import Indexter.IndexPruner;
+import Indexter.IndexReader;
+import Indexter.ShardSplitter;
+import PageRank.PageRank;
 import Parser.*;
-import org.tartarus.snowball.ext.englishStemmer;
 
 import java.io.FileReader;
 import java.io.BufferedReader;
@@ -18,6 +23,12 @@ import java.util.HashMap;
 import java.util.Comparator;
 import java.util.Collections;
 import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.net.URI;
 
 
@@ -27,13 +38,33 @@ import java.net.URI;
 public class Retriever {
     private static final String USAGE =
             "USAGE: java Retriever [-query QUERY] [-index INDEX_PATH] [-page PAGE_PATH] " +
-                    "[-total TOTAL_PAGE] [-max MAX_RESULT] [-stop STOP_PATH]";
+                    "[-total TOTAL_PAGE] [-max MAX_RESULT] [-stop STOP_PATH] [-rank RANK_PATH] [-hot HOT_PATH]";
 
 
     private static int n;
     private static int max;
+    // at most this many pages are scored for a query, in each shard with a segment
+    static final int CUSTOM_MAX = 10000;
     private static String indexPath = null;
     private static String pagePath;
+    // page rank files written by PageRank, only read when the index is a segment
+    private static String rankPath = null;
+    // the segments built by Indexter, one shard for each "shard_[i]" folder of ShardSplitter,
+    // null when the index is one ".word" file for each word
+    private static IndexShard[] shards = null;
+    // searches the shards in parallel, null with a single shard
+    private static ExecutorService shardPool = null;
+    // the pruned index of IndexPruner kept in memory, searched before the shards, null if there is none
+    private static String hotPath = null;
+    private static IndexShard hotShard = null;
+    private static IndexPruner.PrunedTerms prunedTerms = null;
+    // the scored pages of each shard, the best first, merged by returnResults()
+    private static List<List<Page>> shardResults = new ArrayList<List<Page>>();
+    // the pages matched in all shards, shardResults only keeps the best of each shard
+    private static int shardMatches = 0;
+    // number of pages, document frequencies and length norms of the whole index, written by the
+    // indexer, null if the index has none (n is then given, and the document frequencies counted)
+    private static CorpusStats corpusStats = null;
     private static List<String> queryWords = new ArrayList<String>();
     private static HashMap<Integer, Double> wordWeights =
             new HashMap<Integer, Double>();
@@ -49,6 +80,8 @@ public class Retriever {
     private static HashSet<String> stopList =
             new HashSet<String>();
     private static String warning = null;
+    // converts word to its basic form, because the index files are named using the basic form
+    private static TermNormalizer normalizer = new TermNormalizer();
 
     /**
      * This is the overall run process, which is used by queryHandler
@@ -71,9 +104,7 @@ public class Retriever {
         if (warning != null) {
             return new ArrayList<Page>();
         }
-        getPages();
-        calculate();
-        return returnResults();
+        return searchAndReturn();
     }
 
     /*
@@ -91,12 +122,104 @@ public class Retriever {
     * all following queries share the same stop list
     */
     private static void overallInitialize() {
+        // only used when the index has no corpus stats
         n = 960000;
         max = 50;
         indexPath = "../results/indexWithRank/";
         pagePath = "../results/pages/";
+        rankPath = "../results/pageRank/";
+        hotPath = "../results/hotIndex/";
         String stopFile = "../data/ShotStopList.txt";
         loadStop(stopFile);
+        openSegment();
+    }
+
+    /*
+    * If the index path holds a segment (or the segments of an incremental index), open it once
+    * as the only shard, if it holds the "shard_[i]" folders of ShardSplitter, open each of them.
+    * Each doc gets its page rank from "pageRank.bin" of PageRank (of the shard folder for a
+    * split index), or from the ".rank" files when PageRank was run without the doc registry
+    */
+    private static void openSegment() {
+        loadCorpusStats();
+        List<String> shardPaths = ShardSplitter.GetShardPaths(indexPath);
+        boolean split = !shardPaths.isEmpty();
+        if (!split) {
+            if (!IndexReader.Exists(indexPath)) {
+                return;
+            }
+            shardPaths.add(indexPath);
+        }
+        IndexShard[] opened = new IndexShard[shardPaths.size()];
+        int docCount = 0;
+        for (int i = 0; i < opened.length; i++) {
+            try {
+                opened[i] = new IndexShard(shardPaths.get(i), pagePath, false);
+            } catch (IOException e) {
+                System.out.println("Open segment not successful: " + e.getMessage());
+                for (int j = 0; j < i; j++) {
+                    opened[j].close();
+                }
+                return;
+            }
+            File docRankFile = split ? new File(shardPaths.get(i), PageRank.RANK_FILE)
+                    : new File(rankPath == null ? "" : rankPath, PageRank.RANK_FILE);
+            opened[i].loadRanks(docRankFile, rankPath);
+            docCount += opened[i].getDocCount();
+        }
+        shards = opened;
+        if (shards.length > 1) {
+            int threads = Math.min(shards.length, Runtime.getRuntime().availableProcessors());
+            shardPool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                public Thread newThread(Runnable task) {
+                    // never keeps the program running after main() returns
+                    Thread thread = new Thread(task, "shard search");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        System.out.println("Open segment successful, with " + docCount + " pages in "
+                + shards.length + " shards");
+        openHotTier();
+    }
+
+    /*
+    * Load "corpus.stats" of the index once, its number of pages replaces n
+    */
+    private static void loadCorpusStats() {
+        if (!CorpusStats.Exists(indexPath)) {
+            return;
+        }
+        try {
+            corpusStats = CorpusStats.Read(new File(indexPath, CorpusStats.FILE));
+        } catch (IOException e) {
+            System.out.println("Read corpus stats not successful: " + e.getMessage());
+            return;
+        }
+        n = corpusStats.GetDocCount();
+        System.out.println("Read corpus stats successful, with " + n + " pages and "
+                + corpusStats.GetTermCount() + " words");
+    }
+
+    /*
+    * Load the hot tier of IndexPruner into memory, it holds the same docs as the index, so
+    * it takes the page ranks of the index
+    */
+    private static void openHotTier() {
+        if (hotPath == null || !IndexPruner.Exists(hotPath)) {
+            return;
+        }
+        try {
+            prunedTerms = IndexPruner.ReadPrunedTerms(hotPath);
+            hotShard = new IndexShard(hotPath, pagePath, true);
+        } catch (IOException e) {
+            System.out.println("Open hot tier not successful: " + e.getMessage());
+            prunedTerms = null;
+            return;
+        }
+        hotShard.loadRanks(new File(rankPath == null ? "" : rankPath, PageRank.RANK_FILE), rankPath);
+        System.out.println("Open hot tier successful, with " + prunedTerms.Size() + " pruned words");
     }
 
     /*
@@ -109,6 +232,16 @@ public class Retriever {
         seqList = new ArrayList<Sequence>();
         seqWeight = new HashMap<Sequence, Double>();
         seenPages = new HashMap<String, Page>();
+        if (shards != null) {
+            for (IndexShard shard : shards) {
+                shard.clear();
+            }
+        }
+        if (hotShard != null) {
+            hotShard.clear();
+        }
+        shardResults = new ArrayList<List<Page>>();
+        shardMatches = 0;
         pages = new HashMap<Sequence, HashSet<Page>>();
         results = new PriorityQueue<Page>(new PageComp());
         warning = null;
@@ -131,9 +264,7 @@ public class Retriever {
         if (warning != null) {
             System.exit(1);
         }
-        getPages();
-        calculate();
-        returnResults();
+        searchAndReturn();
     }
 
     /*
@@ -143,32 +274,24 @@ public class Retriever {
     */
     private static void parseQuery(String query) {
         Parser parser = new Parser(query, stopList);
-        parser.Parse();
-        List<String> tokens = parser.GetResTokens();
-        List<String> types = parser.GetTokensType();
-        int lastPartition = -1;
-        for (int i = 0; i < tokens.size(); i++) {
-            String type = types.get(i);
-            if (type.equals("WORD")) {
-                queryWords.add(tokens.get(i));
-            }
-            else if (type.equals("EMAIL")) {
-                List<Sequence> temp = genSeq(lastPartition + 1, queryWords.size() - 1);
-                for (Sequence seq: temp) {
-                    seqList.add(seq);
+        final int[] lastPartition = {-1};
+        parser.Parse(new TokenSink() {
+            public void Token(char[] buffer, int offset, int length, TokenType type, int position) {
+                if (type == TokenType.WORD) {
+                    queryWords.add(new String(buffer, offset, length));
+                    return;
                 }
-                queryWords.add(tokens.get(i));
-                lastPartition = queryWords.size() - 1;
-            }
-            else {
-                List<Sequence> temp = genSeq(lastPartition + 1, queryWords.size() - 1);
-                for (Sequence seq: temp) {
+                // other tokens end the current partition, sequences never cross them
+                for (Sequence seq: genSeq(lastPartition[0] + 1, queryWords.size() - 1)) {
                     seqList.add(seq);
                 }
-                lastPartition = queryWords.size() - 1;
+                if (type == TokenType.EMAIL) {
+                    queryWords.add(new String(buffer, offset, length));
+                }
+                lastPartition[0] = queryWords.size() - 1;
             }
-        }
-        List<Sequence> temp = genSeq(lastPartition + 1, queryWords.size() - 1);
+        });
+        List<Sequence> temp = genSeq(lastPartition[0] + 1, queryWords.size() - 1);
         for (Sequence seq: temp) {
             seqList.add(seq);
         }
@@ -203,6 +326,111 @@ public class Retriever {
         return result;
     }
 
+    /**
+     * Find, score and return the pages of the query. With a hot tier, a query whose words
+     * were all kept whole by IndexPruner is answered by the hot tier alone, and so is a one
+     * word query whose word was pruned, because the hot tier keeps the best pages of the word.
+     * Any other query may get other pages from the full index, so it is searched there.
+     * If the pages of a pruned word give fewer than max results once duplicates are removed,
+     * some pages may be missing, and the full index is searched again
+     */
+    private static List<Page> searchAndReturn() {
+        if (hotShard != null && shards != null) {
+            boolean pruned = false;
+            for (String word: queryWords) {
+                pruned |= prunedTerms.IsPruned(normalizer.Normalize(word));
+            }
+            if (!pruned || (queryWords.size() == 1 && prunedTerms.GetKeep() >= max)) {
+                searchShards(new IndexShard[] {hotShard});
+                int total = countResults();
+                List<Page> found = collectResults();
+                if (!pruned || found.size() >= max) {
+                    return printResults(found, total);
+                }
+                System.out.println("Hot tier may miss pages, search the full index");
+                shardResults = new ArrayList<List<Page>>();
+                shardMatches = 0;
+            }
+        }
+        search();
+        return returnResults();
+    }
+
+    /**
+     * Find and score the pages of the query, from the ".word" files by getPages() and
+     * calculate(), or from the shards of the segment by searchShards()
+     */
+    private static void search() {
+        if (shards != null) {
+            searchShards(shards);
+            return;
+        }
+        getPages();
+        calculate();
+    }
+
+    /**
+     * With a segment, the document frequency of each word is summed over all shards first, so
+     * a word has the same weight in every shard and the scores of pages from different shards
+     * can be compared. Then each shard finds and scores its own pages in a thread of its own,
+     * and returnResults() merges the best pages of all shards.
+     * The document frequency comes from the corpus stats when the index has them, otherwise
+     * the hot tier gives the document frequency of a pruned word in the full index
+     */
+    private static void searchShards(IndexShard[] searched) {
+        final List<String> terms = new ArrayList<String>();
+        for (int i = 0; i < queryWords.size(); i++) {
+            String term = normalizer.Normalize(queryWords.get(i));
+            terms.add(term);
+            int docFreq = corpusStats == null ? 0 : corpusStats.GetDocFreq(term);
+            if (docFreq == 0 && searched[0] == hotShard && prunedTerms.IsPruned(term)) {
+                docFreq = prunedTerms.GetDocFreq(term);
+            }
+            else if (docFreq == 0) {
+                for (IndexShard shard : searched) {
+                    docFreq += shard.getDocFreq(term);
+                }
+            }
+            if (docFreq > 0) {
+                wordWeights.put(i, calculateWeight(docFreq));
+            }
+        }
+        // set every weight the pages may ask for now, the shard threads only read seqWeight
+        for (Sequence seq: seqList) {
+            boolean found = true;
+            for (int i = seq.getLeft(); i <= seq.getRight(); i++) {
+                found &= wordWeights.containsKey(i);
+            }
+            if (found) {
+                getWeight(seq);
+            }
+        }
+        if (searched.length == 1) {
+            shardResults.add(searched[0].search(seqList, queryWords, terms));
+            shardMatches += searched[0].getMatchCount();
+            return;
+        }
+        List<Future<List<Page>>> futures = new ArrayList<Future<List<Page>>>();
+        for (final IndexShard shard : searched) {
+            futures.add(shardPool.submit(new Callable<List<Page>>() {
+                public List<Page> call() {
+                    return shard.search(seqList, queryWords, terms);
+                }
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                shardResults.add(futures.get(i).get());
+                shardMatches += searched[i].getMatchCount();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                System.out.println("Search shard not successful: " + e.getCause());
+            }
+        }
+    }
+
     /**
      * This method visits the index files and get the page IDs and page ranks for each word. For
      * sequence of length 1 (corresponding to single word), the method will invoke readIndex()
@@ -258,11 +486,14 @@ public class Retriever {
      * it will first search pages containing 'New York University', because it is the most
      * relevant. It gets all the pages containing these three words together, rank them based on
      * their page rank, and then calculate their scores one by one.
+     * Once a group of sequences of the same length has given max pages, the shorter
+     * sequences are not searched, since their pages can only rank after these ones.
      * There is a time limit, for example 3 seconds, so after the timeout, the calculation
      * will stop, and all the pages which already have score calculated will be returned (so
      * some pages which have low page rank will not be seen because there's no time),
      * and in the returnResults() method next, the top 50 pages among them will be returned to
-     * the queryHandler
+     * the queryHandler.
+     * With a segment, each shard scores its pages the same way in IndexShard.search()
      */
     private static void calculate() {
 //        System.out.println("Calculating...");
@@ -270,7 +501,6 @@ public class Retriever {
         HashSet<Sequence> seenSeqs = new HashSet<Sequence>();
         HashSet<URI> seenUrls = new HashSet<URI>();
         HashSet<String> seenTitles = new HashSet<String>();
-        final int customMax = 10000;
         int i = seqList.size() - 1;
         // group the same length seq together
         while (i >= 0) {
@@ -310,28 +540,10 @@ public class Retriever {
                     if (!page.isValid()) {
                         continue;
                     }
-                    URI url = null;
-                    try {
-                        url = new URI(page.getUrl());
-                    } catch (URISyntaxException e) {
-//                        System.out.println("not a url: " + page.getUrl());
+                    if (isDuplicate(page, seenUrls, seenTitles)) {
                         page.setValid(false);
                         continue;
                     }
-                    if (seenUrls.contains(url)) {
-                        page.setValid(false);
-                        continue;
-                    }
-                    else {
-                        seenUrls.add(url);
-                    }
-                    if (seenTitles.contains(page.getTitle())) {
-                        page.setValid(false);
-                        continue;
-                    }
-                    else {
-                        seenTitles.add(page.getTitle());
-                    }
                 }
                 page.calculateScore();
 //                for (int index = i; index >= 0; index--) {
@@ -344,30 +556,89 @@ public class Retriever {
                     results.add(page);
                     //System.out.println("Calculate score finished for page " + page.getID());
                 }
-                if (results.size() >= customMax) {
+                if (results.size() >= CUSTOM_MAX) {
                     return;
                 }
                 if (System.currentTimeMillis() - startTime > 3000) {
                     return;
                 }
             }
+            // pages of the next groups match shorter sequences, so they all rank after
+            // the pages found so far, and the top results can no longer change
+            if (results.size() >= max) {
+                return;
+            }
         }
     }
 
+    /**
+     * A page is a duplicate if its url has a wrong syntax, or another page with the same url
+     * or title has been kept
+     */
+    private static boolean isDuplicate(Page page, HashSet<URI> seenUrls, HashSet<String> seenTitles) {
+        URI url = null;
+        try {
+            url = new URI(page.getUrl());
+        } catch (URISyntaxException e) {
+//            System.out.println("not a url: " + page.getUrl());
+            return true;
+        }
+        if (seenUrls.contains(url)) {
+            return true;
+        }
+        else {
+            seenUrls.add(url);
+        }
+        if (seenTitles.contains(page.getTitle())) {
+            return true;
+        }
+        else {
+            seenTitles.add(page.getTitle());
+        }
+        return false;
+    }
+
     /**
      * This method is the final method, returning the top 50 pages
      * (or all pages if there're less than 50)
      * to the queryHandler, or display them directly in console
      */
     private static List<Page> returnResults() {
-        System.out.println("Return " + results.size() + " pages");
-        List<Page> finalResults = new ArrayList<Page>();
-        if (results.size() == 0) {
+        // counted first, collectResults() takes the pages of the ".word" files out of results
+        int total = countResults();
+        return printResults(collectResults(), total);
+    }
+
+    /**
+     * The number of pages found, before any of them is returned
+     */
+    private static int countResults() {
+        return results.size() + shardMatches;
+    }
+
+    /**
+     * Display the pages returned in console, after the number of pages found (total)
+     */
+    private static List<Page> printResults(List<Page> finalResults, int total) {
+        System.out.println("Return " + total + " pages");
+        if (total == 0) {
             warning = "No relevant results are available, sorry, " +
                     "please try something else";
             System.out.println(warning);
             return finalResults;
         }
+        for (Page page: finalResults) {
+            System.out.println(page);
+        }
+        return finalResults;
+    }
+
+    /**
+     * The top pages of the search, without displaying them, so the hot tier can
+     * give up on its pages before any of them is displayed
+     */
+    private static List<Page> collectResults() {
+        List<Page> finalResults = new ArrayList<Page>();
         int count = 0;
 //        Collections.sort(results, new PageComp());
 //        for (Page page: results) {
@@ -378,9 +649,22 @@ public class Retriever {
 //                return;
 //            }
 //        }
-        while (!results.isEmpty()) {
-            Page page = results.poll();
-            System.out.println(page);
+        HashSet<URI> seenUrls = new HashSet<URI>();
+        HashSet<String> seenTitles = new HashSet<String>();
+        HashSet<String> queryTerms = new HashSet<String>();
+        for (String word: queryWords) {
+            queryTerms.add(normalizer.Normalize(word));
+        }
+        int[] heads = new int[shardResults.size()];
+        Page page;
+        while ((page = nextResult(heads)) != null) {
+            // with a segment, only the pages returned are read from their files
+            if (shards != null) {
+                page.parseForResult(queryTerms);
+                if (!page.isValid() || isDuplicate(page, seenUrls, seenTitles)) {
+                    continue;
+                }
+            }
 //            System.out.println(results.poll().getScoreInfo());
             count++;
             finalResults.add(page);
@@ -391,6 +675,26 @@ public class Retriever {
         return finalResults;
     }
 
+    /**
+     * The best page not returned yet: the head of results for the ".word" files, or the best
+     * of the next pages of the shards, heads[i] being the next page in the sorted pages of shard i
+     */
+    private static Page nextResult(int[] heads) {
+        if (shards == null) {
+            return results.poll();
+        }
+        PageComp comp = new PageComp();
+        int best = -1;
+        for (int i = 0; i < heads.length; i++) {
+            List<Page> shardPages = shardResults.get(i);
+            if (heads[i] < shardPages.size() && (best == -1
+                    || comp.compare(shardPages.get(heads[i]), shardResults.get(best).get(heads[best])) < 0)) {
+                best = i;
+            }
+        }
+        return best == -1 ? null : shardResults.get(best).get(heads[best]++);
+    }
+
     /**
      * Each word (or combinations of words, all represented as sequences here)
      * has a weight, and this method calculates this weight using the same method
@@ -413,7 +717,10 @@ public class Retriever {
     // by Guo Min
     /**
      * This method visits the actual index file, and read in the contents
-     * (including page ID and page rank), although the input is of type sequence,
+     * (including page ID and page rank). Files written by RankJoiner start with the
+     * number of pages of the word and list the pages by decreasing page rank, so for
+     * a query of one word only the first CUSTOM_MAX pages are read, the pages after
+     * them would never be scored. Although the input is of type sequence,
      * it should be gunranteed by the caller of this method that the sequence should
      * be of length 1 (so it must be a single word), because all index files
      * are only for single words. (The calculation of sequence of more than 1 are in the
@@ -422,7 +729,7 @@ public class Retriever {
     private static HashSet<Page> readIndex(Sequence seq) {
         HashSet<Page> pageSet = new HashSet<Page>();
         String word = seq.getToken();
-        word = StemEnglishWord(word.toLowerCase());
+        word = normalizer.Normalize(word);
 //        System.out.println("stemmed is " + word);
         int count = 0;
         try {
@@ -432,7 +739,15 @@ public class Retriever {
             File file = new File(indexPath + wordHash + File.separator + word + ".word");
             BufferedReader reader = new BufferedReader(new FileReader(file));
             String line = null;
+            int total = -1;
             while((line = reader.readLine()) != null) {
+                if (line.equals(RankJoiner.COUNT_TAG)) {
+                    total = Integer.parseInt(reader.readLine());
+                    continue;
+                }
+                if (total >= 0 && seqList.size() == 1 && count >= CUSTOM_MAX) {
+                    break;
+                }
                 String pageID = line;
                 double pageRank = Double.parseDouble(reader.readLine());
                 if (seenPages.containsKey(pageID)) {
@@ -449,7 +764,11 @@ public class Retriever {
             }
             reader.close();
             int index = seq.getLeft();
-            wordWeights.put(index, calculateWeight(count));
+            int docFreq = corpusStats == null ? 0 : corpusStats.GetDocFreq(word);
+            if (docFreq == 0) {
+                docFreq = total >= 0 ? total : count;
+            }
+            wordWeights.put(index, calculateWeight(docFreq));
         } catch (IOException e) {
 //            System.out.println("Read index not successful for word " + seq.getToken());
         }
@@ -487,7 +806,7 @@ public class Retriever {
      * it involves multiple comparison, but it does not compare page rank,
      * since page rank only determines the initial order (in calculate() method)
      */
-    private static class PageComp implements Comparator<Page> {
+    static class PageComp implements Comparator<Page> {
         public int compare(Page one, Page two) {
             double oneScore = one.finalScore();
             double twoScore = two.finalScore();
@@ -542,20 +861,6 @@ public class Retriever {
         return 1 + Math.log((double)n / count) / Math.log(2);
     }
 
-    // by Chen Chen
-    /**
-     * Convert word to its basic form, because the index files
-     * are named using the basic form
-     */
-    private static String StemEnglishWord(String token) {
-        englishStemmer stemmer = new englishStemmer();
-        stemmer.setCurrent(token);
-        if (stemmer.stem()) {
-            return stemmer.getCurrent();
-        }
-        return token;
-    }
-
     /**
      * Load in the stop word list
      */
@@ -678,6 +983,13 @@ public class Retriever {
         n = Integer.parseInt(args[7]);
         max = Integer.parseInt(args[9]);
         String stopFile = args[11];
+        if (args.length > 13) {
+            rankPath = args[13];
+        }
+        if (args.length > 15) {
+            hotPath = args[15];
+        }
+        openSegment();
         runMain(query, stopFile);
     }
 }
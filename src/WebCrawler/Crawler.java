@@ -25,23 +25,33 @@ import java.nio.file.Paths;
  * a directory called 'roots', containing url root files named as 'root_1', 'root_2'... the number of such files
  * should be the same with the number of rounds the program to be run, so if we plan to run the program
  * 200 times, then the files 'root_1' - 'root_200' (no extensions) should all exist in this directory
+ *
+ * 5) Optional parameter [-raw on] keeps the downloaded HTML of each page as '<pageID>.html.gz' next to its
+ * '.page' file, so that ReExtract can rebuild the '.page' files later without crawling again
+ *
+ * 6) Optional parameter [-memory MB] is the memory budget of the extracted links waiting to be checked against
+ * the external hashsets (default 256), beyond it the links are spilled to 'savePath/spill' and merged back later
+ *
+ * 7) Optional parameter [-boiler on] drops navigation bars, footers, cookie banners... from the saved content,
+ * see PageCompress/BoilerplateFilter, the links inside them are still followed
  */
 
 public class Crawler {
-    private static final String USAGE = "USAGE: java Crawler [-path savePath] [-time duration] [-id jobID]";
+    private static final String USAGE =
+            "USAGE: java Crawler [-path savePath] [-time duration] [-id jobID] [-raw on/off] [-memory MB]"
+                    + " [-boiler on/off]";
     private static String savePath;
     private static int jobID;
     private static final int MAX_DEPTH = 4;
     private static UrlQueue urlQueue =
             new UrlQueue();
-    private static HashMap<Integer, HashSet<MyURI>> internalHashMap =
-            new HashMap<Integer, HashSet<MyURI>>();
+    private static LinkBuffer linkBuffer;
+    private static long linkBufferBudget = 256L * 1024 * 1024;
     private static List<MyURI> nextRoots = new ArrayList<MyURI>();
     private static int searchLimit = 20000;
     private static int pageCount = 0;
     private static final int THREAD_COUNT = 1500;
     private static final int EXTERNAL_HASHSET_COUNT = 1000;
-    private static final Object[] INTERNAL_HASHSET_LOCK = new Object[EXTERNAL_HASHSET_COUNT];
     private static final Object NEXT_ROOTS_LOCK = new Object();
     private static long startTime;
     private static long duration;
@@ -49,6 +59,8 @@ public class Crawler {
     private static final Object LOG_WRITER_LOCK = new Object();
     private static BufferedWriter[] urlWriter = new BufferedWriter[EXTERNAL_HASHSET_COUNT];
     private static final Object[] URI_WRITER_LOCK = new Object[EXTERNAL_HASHSET_COUNT];
+    private static boolean keepRawPage = false;
+    private static boolean removeBoilerplate = false;
 
     /**
      * This method is the overall running process
@@ -68,7 +80,6 @@ public class Crawler {
     private static void initialize(Scanner readFile) {
         // initialize locks
         for (int i = 0; i < EXTERNAL_HASHSET_COUNT; i++) {
-            INTERNAL_HASHSET_LOCK[i] = new Object[i];
             URI_WRITER_LOCK[i] = new Object[i];
         }
         while (readFile.hasNextLine()) {
@@ -82,23 +93,16 @@ public class Crawler {
     }
 
     /**
-     * This method adds the newly extracted urls (or root urls) to the internal hashmap,
+     * This method adds the newly extracted urls (or root urls) to the internal link buffer,
      * if the url is duplicated, just ignore. It also indexes the urls by calculating
-     * its hashCode
+     * its hashCode. When the buffer is over its memory budget, the oldest shards are spilled
      */
     private static void addToInternalHashMap(MyURI url) {
         int hashValue = hash(url);
-        HashSet<MyURI> hashSet = null;
-        synchronized (INTERNAL_HASHSET_LOCK[hashValue]) {
-            if (internalHashMap.containsKey(hashValue)) {
-                hashSet = internalHashMap.get(hashValue);
-            }
-            else {
-                hashSet = new HashSet<MyURI>();
-                internalHashMap.put(hashValue, hashSet);
-            }
-            hashSet.add(url);
+        synchronized (linkBuffer.getLock(hashValue)) {
+            linkBuffer.add(hashValue, url);
         }
+        linkBuffer.spillIfNeeded();
     }
 
     /**
@@ -148,18 +152,17 @@ public class Crawler {
         // so after this, urlQueue.isEmpty() may still be true, but more threads will come
         int index = (int)(Math.random() * EXTERNAL_HASHSET_COUNT);
         // only save URI to disk, removing depth and avoiding serializable
-        synchronized (INTERNAL_HASHSET_LOCK[index]) {
+        synchronized (linkBuffer.getLock(index)) {
             if (!urlQueue.isEmpty()) {
                 return;
             }
-            if (!internalHashMap.containsKey(index)) {
+            if (!linkBuffer.hasLinks(index)) {
                 return;
             }
             String dirPath = savePath + "hashSets" + File.separator;
             // index corresponds to the id of the external hashset
             String externalName = "External" + index + ".ser";
             File file = new File(dirPath + externalName);
-            HashSet<MyURI> internalHashSet = internalHashMap.get(index);
             HashSet<URI> externalHashSet = null;
             if (file.exists()) {
                 // load external hashset
@@ -180,10 +183,19 @@ public class Crawler {
             if (externalHashSet == null) {
                 externalHashSet = new HashSet<URI>();
             }
-            // iterate through the internal hashset, if the url is duplicated, just ignore,
+            // iterate through the internal shard (including the spilled part),
+            // if the url is duplicated, just ignore,
             // if the url is new, add it to both the queue and external hashset
-            for (MyURI url: internalHashSet) {
-                if (!externalHashSet.contains(url)) {
+            List<MyURI> links;
+            try {
+                links = linkBuffer.drain(index);
+            } catch (IOException e) {
+                // the shard keeps its links and run files, another thread tries again
+                output("Drain links of shard " + index + " not successfully");
+                return;
+            }
+            for (MyURI url: links) {
+                if (!externalHashSet.contains(url.getURI())) {
                     externalHashSet.add(url.getURI());
                     urlQueue.add(url);
                 }
@@ -198,8 +210,6 @@ public class Crawler {
             } catch (IOException e) {
                 output("Save external hashset " + index + " not successfully");
             }
-            // clear the current hashset, not the entire hashmap
-            internalHashSet.clear();
         }
     }
 
@@ -240,9 +250,10 @@ public class Crawler {
                     String fileName = jobID + "_" + threadID + "_" + (downloadCount + 1);
                     // generate PageFile object, including pageID, title, subURLs and body text
                     PageCompress pc = new PageCompress(fileName, page);
+                    pc.SetRemoveBoilerplate(removeBoilerplate);
                     PageFile pageFile = null;
                     try {
-                        pageFile = pc.GetPageFile();
+                        pageFile = pc.ExtractPageFile();
                     } catch (Exception e) {
                         output("process page " + fileName + " not successfully");
                         continue;
@@ -267,6 +278,13 @@ public class Crawler {
                         output("save page " + fileName + " not successfully");
                         continue;
                     }
+                    if (keepRawPage) {
+                        try {
+                            saveRawPage(fileName, url, page, threadID);
+                        } catch (IOException e) {
+                            output("save raw page " + fileName + " not successfully");
+                        }
+                    }
                     downloadCount++;
                     //output("thread " + threadID + " downloaded page " + fileName + " with depth " + url.getDepth());
                     try {
@@ -459,7 +477,7 @@ public class Crawler {
     /*
      * This method removes invalid sub urls and assembles valid sub urls (by Chen Chen)
      */
-    private static List<MyURI> rmInvalidUrls(MyURI myUrl, List<String> subURLs) {
+    static List<MyURI> rmInvalidUrls(MyURI myUrl, List<String> subURLs) {
         URI url = myUrl.getURI();
         int depth = myUrl.getDepth();
         List<MyURI> results = new ArrayList<MyURI>();
@@ -484,7 +502,7 @@ public class Crawler {
     /**
      * This method discards some of the urls with very frequent domains
      */
-    private static List<MyURI> rmSameDomain(List<MyURI> urlList) {
+    static List<MyURI> rmSameDomain(List<MyURI> urlList) {
         List<MyURI> newUrlList = new ArrayList<MyURI>();
         final int MAX_TOLERANCE = 10;
         HashMap<String, Integer> repeat = new HashMap<String, Integer>();
@@ -513,7 +531,17 @@ public class Crawler {
             throws IOException {
         String filePath = savePath + "pages" + File.separator + "result_" + jobID + File.separator;
         filePath = filePath + jobID + "_" + threadID + File.separator;
-        FileWriter writer = new FileWriter(filePath + fileName + ".page");
+        writePageFile(filePath + fileName + ".page", thisUrl, newUrls, length, title, content);
+    }
+
+    /**
+     * This method writes the page file in the format read by Indexter, PageRank and Retriever,
+     * it is shared with ReExtract
+     */
+    static void writePageFile(String pagePath, MyURI thisUrl, List<MyURI> newUrls, int length,
+                              String title, String content)
+            throws IOException {
+        FileWriter writer = new FileWriter(pagePath);
         BufferedWriter bufferedWriter = new BufferedWriter(writer);
         // write its own url
         bufferedWriter.write("#ThisURL#" + "\n" + thisUrl.getURI().toString() + "\n");
@@ -531,6 +559,17 @@ public class Crawler {
         bufferedWriter.close();
     }
 
+    /**
+     * This method saves the downloaded HTML of the page (compressed) besides the page file
+     */
+    private static void saveRawPage(String fileName, MyURI thisUrl, String page, int threadID)
+            throws IOException {
+        String filePath = savePath + "pages" + File.separator + "result_" + jobID + File.separator;
+        filePath = filePath + jobID + "_" + threadID + File.separator;
+        RawPageStore.SaveRawPage(filePath + fileName + RawPageStore.RAW_EXTENSION,
+                thisUrl.getURI().toString(), page);
+    }
+
     /**
      * This method saves the pageID - url pair to disk
      */
@@ -654,7 +693,7 @@ public class Crawler {
     /**
      * This class adds depth value to URI class
      */
-    private static class MyURI {
+    static class MyURI {
         private URI url;
         private int depth;
 
@@ -683,7 +722,7 @@ public class Crawler {
             // ignore
         }
         final int ARG_COUNT = 6;
-        if (args.length != ARG_COUNT) {
+        if (args.length < ARG_COUNT || args.length % 2 != 0) {
             System.out.println(USAGE);
             System.exit(1);
         }
@@ -729,6 +768,23 @@ public class Crawler {
                     System.exit(1);
                 }
             }
+            else if (args[index].equals("-memory")) {
+                try {
+                    linkBufferBudget = Long.parseLong(args[index + 1]) * 1024 * 1024;
+                    index += 2;
+                } catch (NumberFormatException e) {
+                    System.out.println("Please provide an integer value for memory");
+                    System.exit(1);
+                }
+            }
+            else if (args[index].equals("-raw")) {
+                keepRawPage = args[index + 1].equals("on");
+                index += 2;
+            }
+            else if (args[index].equals("-boiler")) {
+                removeBoilerplate = args[index + 1].equals("on");
+                index += 2;
+            }
             else {
                 System.out.println(USAGE);
                 System.exit(1);
@@ -767,6 +823,15 @@ public class Crawler {
         if (!mappingDir.exists()) {
             mappingDir.mkdir();
         }
+        // links over the memory budget are spilled here, runs of the last round are useless
+        String spillPath = savePath + "spill" + File.separator;
+        File spillDir = new File(spillPath);
+        if (spillDir.exists()) {
+            for (File run: spillDir.listFiles()) {
+                run.delete();
+            }
+        }
+        linkBuffer = new LinkBuffer(EXTERNAL_HASHSET_COUNT, linkBufferBudget, spillPath);
         // create a work_log directory (if haven't) and create the work_log file
         String dirPath = savePath + "work_log" + File.separator;
         File dir = new File(dirPath);
@@ -0,0 +1,277 @@
+package WebCrawler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class replaces the internal hashmap of Crawler, it holds the newly extracted urls
+ * (grouped into the same shards as the external hashsets) until addToUrlQueue() drains a shard.
+ *
+ * The memory used by each shard is estimated, and when the total exceeds the budget, the shards
+ * which have been waiting the longest are written to disk as sorted run files (one url per line,
+ * followed by its depth) and removed from memory. When a shard is drained, its in-memory urls and
+ * all of its runs are merged back in url order, so duplicates are removed on the way.
+ */
+class LinkBuffer {
+    // rough cost of one buffered url besides its characters: map entry, key object and boxed depth
+    private static final int ENTRY_OVERHEAD = 96;
+    // after a spill fails (disk full or read only), no spill is tried for this long
+    private static final long SPILL_RETRY_MS = 60 * 1000;
+    private final int shardCount;
+    private final long byteBudget;
+    private final String spillPath;
+    private final List<HashMap<String, Integer>> shards = new ArrayList<HashMap<String, Integer>>();
+    private final long[] shardBytes;
+    private final long[] shardAge;
+    private final List<List<File>> shardRuns = new ArrayList<List<File>>();
+    private final Object[] shardLock;
+    private final Object spillLock = new Object();
+    private final AtomicLong totalBytes = new AtomicLong(0);
+    private final AtomicLong clock = new AtomicLong(0);
+    private long runCount = 0;
+    private volatile long nextSpillTime = 0;
+
+    /**
+     * The caller should hold the lock of a shard (see getLock()) while calling add() or drain()
+     * on it, spillIfNeeded() takes the locks itself and must be called without holding any of them
+     */
+    public LinkBuffer(int shardCount, long byteBudget, String spillPath) {
+        this.shardCount = shardCount;
+        this.byteBudget = byteBudget;
+        this.spillPath = spillPath;
+        shardBytes = new long[shardCount];
+        shardAge = new long[shardCount];
+        shardLock = new Object[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new HashMap<String, Integer>());
+            shardRuns.add(new ArrayList<File>());
+            shardLock[i] = new Object();
+        }
+        File dir = new File(spillPath);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+    }
+
+    public Object getLock(int shard) {
+        return shardLock[shard];
+    }
+
+    /**
+     * This method adds a url to its shard, if the url is already buffered in memory,
+     * only the smaller depth is kept
+     */
+    public void add(int shard, Crawler.MyURI url) {
+        String key = url.getURI().toString();
+        HashMap<String, Integer> current = shards.get(shard);
+        Integer depth = current.get(key);
+        if (depth == null) {
+            if (current.isEmpty() && shardRuns.get(shard).isEmpty()) {
+                shardAge[shard] = clock.incrementAndGet();
+            }
+            current.put(key, url.getDepth());
+            long bytes = entryBytes(key);
+            shardBytes[shard] += bytes;
+            totalBytes.addAndGet(bytes);
+        }
+        else if (url.getDepth() < depth) {
+            current.put(key, url.getDepth());
+        }
+    }
+
+    public boolean hasLinks(int shard) {
+        return !shards.get(shard).isEmpty() || !shardRuns.get(shard).isEmpty();
+    }
+
+    /**
+     * This method removes all urls of a shard, both in memory and spilled, and returns them
+     * in url order without duplicates. If a run cannot be read, the shard is kept as it was
+     * (the runs are only deleted once all of them are merged) and the IOException is thrown
+     */
+    public List<Crawler.MyURI> drain(int shard) throws IOException {
+        List<Crawler.MyURI> result = new ArrayList<Crawler.MyURI>();
+        HashMap<String, Integer> current = shards.get(shard);
+        List<String> urls = new ArrayList<String>(current.keySet());
+        Collections.sort(urls);
+        List<File> runs = shardRuns.get(shard);
+        List<RunReader> readers = new ArrayList<RunReader>();
+        try {
+            for (File run: runs) {
+                readers.add(new RunReader(run));
+            }
+            // k-way merge of the sorted in-memory urls and the sorted runs
+            int memoryPos = 0;
+            while (true) {
+                String smallest = memoryPos < urls.size() ? urls.get(memoryPos) : null;
+                for (RunReader reader: readers) {
+                    if (reader.url != null && (smallest == null || reader.url.compareTo(smallest) < 0)) {
+                        smallest = reader.url;
+                    }
+                }
+                if (smallest == null) {
+                    break;
+                }
+                int depth = Integer.MAX_VALUE;
+                if (memoryPos < urls.size() && urls.get(memoryPos).equals(smallest)) {
+                    depth = current.get(smallest);
+                    memoryPos++;
+                }
+                for (RunReader reader: readers) {
+                    while (reader.url != null && reader.url.equals(smallest)) {
+                        depth = Math.min(depth, reader.depth);
+                        reader.next();
+                    }
+                }
+                try {
+                    result.add(new Crawler.MyURI(new URI(smallest), depth));
+                } catch (URISyntaxException e) {
+                    // ignore invalid urls
+                }
+            }
+        } finally {
+            for (RunReader reader: readers) {
+                reader.close();
+            }
+        }
+        for (File run: runs) {
+            run.delete();
+        }
+        runs.clear();
+        totalBytes.addAndGet(-shardBytes[shard]);
+        shardBytes[shard] = 0;
+        shards.set(shard, new HashMap<String, Integer>());
+        return result;
+    }
+
+    /**
+     * This method spills the oldest shards to disk until the buffer is back under
+     * three quarters of its budget, only one thread spills at a time. When a spill fails, the
+     * urls stay in memory and spilling is given up for SPILL_RETRY_MS, so a full disk costs
+     * one failed write and one message, not one for each new url
+     */
+    public void spillIfNeeded() {
+        if (totalBytes.get() <= byteBudget || System.currentTimeMillis() < nextSpillTime) {
+            return;
+        }
+        synchronized (spillLock) {
+            long target = byteBudget / 4 * 3;
+            while (totalBytes.get() > target) {
+                // the counters of a shard are written under its lock, so they are read under it too
+                int oldest = -1;
+                long oldestAge = 0;
+                for (int i = 0; i < shardCount; i++) {
+                    synchronized (shardLock[i]) {
+                        if (shardBytes[i] > 0 && (oldest == -1 || shardAge[i] < oldestAge)) {
+                            oldest = i;
+                            oldestAge = shardAge[i];
+                        }
+                    }
+                }
+                if (oldest == -1) {
+                    return;
+                }
+                synchronized (shardLock[oldest]) {
+                    try {
+                        spill(oldest);
+                    } catch (IOException e) {
+                        nextSpillTime = System.currentTimeMillis() + SPILL_RETRY_MS;
+                        System.out.println("Spill links of shard " + oldest + " not successfully, keep them in "
+                                + "memory for " + SPILL_RETRY_MS / 1000 + " s: " + e.getMessage());
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This method writes the in-memory urls of a shard to a new sorted run file, the shard
+     * then counts as the youngest, so the next spill picks another shard instead of writing
+     * many tiny runs of this one
+     */
+    private void spill(int shard) throws IOException {
+        HashMap<String, Integer> current = shards.get(shard);
+        if (current.isEmpty()) {
+            return;
+        }
+        List<String> urls = new ArrayList<String>(current.keySet());
+        Collections.sort(urls);
+        File run = new File(spillPath + "shard_" + shard + "_" + (runCount++) + ".run");
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(run));
+            try {
+                for (String url: urls) {
+                    writer.write(url + "\n" + current.get(url) + "\n");
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            // a partly written run is never merged, so it is not left on the disk
+            run.delete();
+            throw e;
+        }
+        shardRuns.get(shard).add(run);
+        totalBytes.addAndGet(-shardBytes[shard]);
+        shardBytes[shard] = 0;
+        shardAge[shard] = clock.incrementAndGet();
+        shards.set(shard, new HashMap<String, Integer>());
+    }
+
+    private static long entryBytes(String url) {
+        return 2L * url.length() + ENTRY_OVERHEAD;
+    }
+
+    /**
+     * Reads one run file, holding the current url and its depth
+     */
+    private static class RunReader {
+        private BufferedReader reader;
+        private String url;
+        private int depth;
+
+        public RunReader(File run) throws IOException {
+            reader = new BufferedReader(new FileReader(run));
+            next();
+        }
+
+        /**
+         * Move to the next url, a run that cannot be read or is cut off throws an IOException
+         * instead of ending early, so no spilled url is lost without notice
+         */
+        public void next() throws IOException {
+            url = reader.readLine();
+            if (url == null) {
+                return;
+            }
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("Run file is cut off");
+            }
+            try {
+                depth = Integer.parseInt(line);
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad depth in run file: " + line);
+            }
+        }
+
+        public void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package WebCrawler;
+
+import PageCompress.*;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 1) USAGE: java ReExtract [-path savePath] [-id jobID] [-threads threadCount] [-boiler on/off]
+ *
+ * 2) This program replays the raw pages kept by Crawler (started with [-raw on]) through PageCompress
+ * and rewrites the '.page' file of each of them, so an improvement to extraction only needs a local
+ * batch job instead of a new crawl. After it finishes, Indexter and PageRank can be run again on the
+ * same 'pages' directory. A page whose content is now empty (e.g. it is all boilerplate) has its '.page'
+ * file deleted, as Crawler never writes one for such a page.
+ *
+ * 3) [-id jobID] is optional, without it every 'result_*' directory under 'savePath/pages' is processed.
+ * [-threads threadCount] is optional, the default is the number of available processors.
+ * [-boiler on] is optional, it removes boilerplate from the content as Crawler does with the same parameter.
+ */
+public class ReExtract {
+    private static final String USAGE =
+            "USAGE: java ReExtract [-path savePath] [-id jobID] [-threads threadCount] [-boiler on/off]";
+    private static String savePath;
+    private static int jobID = -1;
+    private static int threadCount = Runtime.getRuntime().availableProcessors();
+    private static boolean removeBoilerplate = false;
+    private static AtomicInteger pageCount = new AtomicInteger(0);
+    private static AtomicInteger failCount = new AtomicInteger(0);
+    private static AtomicInteger removeCount = new AtomicInteger(0);
+    private static AtomicLong byteCount = new AtomicLong(0);
+
+    /**
+     * This method is the overall running process, every raw page is one task of the thread pool
+     */
+    private static void run() {
+        long startTime = System.currentTimeMillis();
+        List<File> rawPages = findRawPages();
+        System.out.println("Found " + rawPages.size() + " raw pages, re-extracting with "
+                + threadCount + " threads");
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        for (final File rawPage: rawPages) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    reExtract(rawPage);
+                }
+            });
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            System.out.println("Re-extraction was interrupted");
+        }
+        long seconds = Math.max(1, (System.currentTimeMillis() - startTime) / 1000);
+        System.out.println("Re-extracted " + pageCount.get() + " pages (" + removeCount.get() + " removed as empty, "
+                + failCount.get() + " failed) in " + seconds + "s, "
+                + (byteCount.get() / seconds / 1024 / 1024) + " MB/s");
+    }
+
+    /**
+     * This method lists raw pages under pages/result_<job>/<job>_<thread>/
+     */
+    private static List<File> findRawPages() {
+        List<File> rawPages = new ArrayList<File>();
+        File pagesDir = new File(savePath + "pages");
+        File[] jobDirs = pagesDir.listFiles();
+        if (jobDirs == null) {
+            return rawPages;
+        }
+        for (File job: jobDirs) {
+            if (jobID != -1 && !job.getName().equals("result_" + jobID)) {
+                continue;
+            }
+            File[] threadDirs = job.listFiles();
+            if (threadDirs == null) {
+                continue;
+            }
+            for (File thread: threadDirs) {
+                File[] files = thread.listFiles();
+                if (files == null) {
+                    continue;
+                }
+                for (File file: files) {
+                    if (file.getName().endsWith(RawPageStore.RAW_EXTENSION)) {
+                        rawPages.add(file);
+                    }
+                }
+            }
+        }
+        return rawPages;
+    }
+
+    /**
+     * This method runs one raw page through the same steps as Crawler does after downloading it,
+     * and overwrites the page file, or deletes it if the page has no content now
+     */
+    private static void reExtract(File rawPage) {
+        String fileName = RawPageStore.GetPageID(rawPage);
+        try {
+            String[] raw = RawPageStore.ReadRawPage(rawPage);
+            byteCount.addAndGet(raw[1].getBytes(StandardCharsets.UTF_8).length);
+            Crawler.MyURI url = new Crawler.MyURI(new URI(raw[0]), 0);
+            PageCompress pc = new PageCompress(fileName, raw[1]);
+            pc.SetRemoveBoilerplate(removeBoilerplate);
+            PageFile pageFile = pc.ExtractPageFile();
+            File page = new File(rawPage.getParent(), fileName + ".page");
+            if (pageFile == null || pageFile.getContent().matches("^\\s*$")) {
+                if (page.exists()) {
+                    if (!page.delete()) {
+                        throw new IOException("Cannot delete " + page.getPath());
+                    }
+                    removeCount.incrementAndGet();
+                }
+                return;
+            }
+            List<Crawler.MyURI> newUrls = Crawler.rmInvalidUrls(url, pageFile.getSubURLs());
+            newUrls = Crawler.rmSameDomain(newUrls);
+            String pagePath = page.getPath();
+            Crawler.writePageFile(pagePath, url, newUrls, pageFile.getWordsCount(), pageFile.getTitle(),
+                    pageFile.getContent());
+            int count = pageCount.incrementAndGet();
+            if (count % 10000 == 0) {
+                System.out.println("processed " + count + " pages");
+            }
+        } catch (URISyntaxException e) {
+            System.out.println("page " + fileName + " has invalid url, ignore");
+            failCount.incrementAndGet();
+        } catch (IOException e) {
+            System.out.println("read or save page " + fileName + " not successfully");
+            failCount.incrementAndGet();
+        } catch (Exception e) {
+            System.out.println("process page " + fileName + " not successfully");
+            failCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * This method checks the inputs and exits the program if inputs are not valid
+     */
+    private static void checkArgs(String[] args) {
+        if (args.length % 2 != 0) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+        int index = 0;
+        while (index < args.length) {
+            try {
+                if (args[index].equals("-path")) {
+                    savePath = args[index + 1];
+                    if (!savePath.endsWith(File.separator)) {
+                        savePath += File.separator;
+                    }
+                }
+                else if (args[index].equals("-id")) {
+                    jobID = Integer.parseInt(args[index + 1]);
+                }
+                else if (args[index].equals("-threads")) {
+                    threadCount = Integer.parseInt(args[index + 1]);
+                }
+                else if (args[index].equals("-boiler")) {
+                    removeBoilerplate = args[index + 1].equals("on");
+                }
+                else {
+                    System.out.println(USAGE);
+                    System.exit(1);
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Please provide an integer value for " + args[index]);
+                System.exit(1);
+            }
+            index += 2;
+        }
+        if (savePath == null || !new File(savePath + "pages").isDirectory() || threadCount <= 0) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+    }
+
+    public static void main(String[] args) {
+        checkArgs(args);
+        run();
+    }
+}